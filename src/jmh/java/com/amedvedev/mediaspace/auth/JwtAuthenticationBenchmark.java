@@ -0,0 +1,60 @@
+package com.amedvedev.mediaspace.auth;
+
+import com.amedvedev.mediaspace.user.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.SecretKey;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Per-request cost of turning a bearer token into an authenticated principal.
+ * <p>
+ * {@code threeParsesWithNewParser} mirrors the filter before the claims cache: username extraction and
+ * {@code isTokenValid} parsed the token three times, each time building a new parser and re-checking the HMAC.
+ * {@code cachedClaims} is the current request path, {@code singleParseWithPrebuiltParser} is its cost on a cache miss.
+ */
+@State(Scope.Benchmark)
+public class JwtAuthenticationBenchmark {
+
+    private SecretKey secretKey;
+    private JwtParser prebuiltParser;
+    private JwtService jwtService;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        secretKey = Jwts.SIG.HS256.key().build();
+        prebuiltParser = Jwts.parser().verifyWith(secretKey).build();
+        jwtService = new JwtService(Base64.getEncoder().encodeToString(secretKey.getEncoded()));
+
+        var user = User.builder().id(1L).username("benchmark-user").password("password").tokenVersion(3).build();
+        token = jwtService.generateToken(user);
+        jwtService.extractPrincipal(token);
+    }
+
+    @Benchmark
+    public Object threeParsesWithNewParser() {
+        var username = parseWithNewParser().getSubject();
+        var usernameToValidate = parseWithNewParser().getSubject();
+        var isExpired = parseWithNewParser().getExpiration().before(new Date());
+        return username.equals(usernameToValidate) && !isExpired;
+    }
+
+    @Benchmark
+    public Object singleParseWithPrebuiltParser() {
+        return prebuiltParser.parseSignedClaims(token).getPayload();
+    }
+
+    @Benchmark
+    public Object cachedClaims() {
+        return jwtService.extractPrincipal(token);
+    }
+
+    private Claims parseWithNewParser() {
+        return Jwts.parser().verifyWith(secretKey).build().parseSignedClaims(token).getPayload();
+    }
+}
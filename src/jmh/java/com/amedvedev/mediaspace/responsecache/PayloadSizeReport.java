@@ -0,0 +1,45 @@
+package com.amedvedev.mediaspace.responsecache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Payload sizes of the {@link ResponseFixtures} in each format, plain and gzipped as the response cache stores them,
+ * relative to JSON. Sizes don't vary between runs, so they are reported once here rather than measured by the
+ * benchmark. Run it with {@code ./gradlew jmhPayloadSizes}.
+ */
+public final class PayloadSizeReport {
+
+    private PayloadSizeReport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.printf("%-12s %-6s %10s %8s %10s %8s%n",
+                "response", "format", "bytes", "vs json", "gzipped", "vs json");
+        for (var response : ResponseFixtures.RESPONSES) {
+            var value = ResponseFixtures.response(response);
+            long jsonSize = 0;
+            long jsonGzippedSize = 0;
+            for (var format : ResponseFixtures.FORMATS) {
+                var serialized = ResponseFixtures.objectMapper(format).writeValueAsBytes(value);
+                var gzipped = gzip(serialized);
+                if (jsonSize == 0) {
+                    jsonSize = serialized.length;
+                    jsonGzippedSize = gzipped.length;
+                }
+                System.out.printf("%-12s %-6s %10d %7.0f%% %10d %7.0f%%%n", response, format,
+                        serialized.length, 100.0 * serialized.length / jsonSize,
+                        gzipped.length, 100.0 * gzipped.length / jsonGzippedSize);
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        var compressed = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,78 @@
+package com.amedvedev.mediaspace.responsecache;
+
+import com.amedvedev.mediaspace.post.comment.dto.ViewCommentResponse;
+import com.amedvedev.mediaspace.post.comment.dto.ViewPostCommentsResponse;
+import com.amedvedev.mediaspace.post.dto.UserProfilePostResponse;
+import com.amedvedev.mediaspace.story.dto.StoriesFeedEntry;
+import com.amedvedev.mediaspace.user.dto.ViewUserProfileResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Representative responses and the mappers of the formats the API negotiates, shared by the benchmark and the
+ * payload size report.
+ * <p>
+ * The comments page is 20 top-level comments with 3 replies each, the profile has 60 posts,
+ * the stories feed has 100 entries.
+ */
+final class ResponseFixtures {
+
+    static final List<String> FORMATS = List.of("json", "cbor", "smile");
+    static final List<String> RESPONSES = List.of("comments", "profile", "storiesFeed");
+
+    private ResponseFixtures() {
+    }
+
+    static ObjectMapper objectMapper(String format) {
+        return switch (format) {
+            case "cbor" -> Jackson2ObjectMapperBuilder.cbor().build();
+            case "smile" -> Jackson2ObjectMapperBuilder.smile().build();
+            default -> Jackson2ObjectMapperBuilder.json().build();
+        };
+    }
+
+    static Object response(String response) {
+        return switch (response) {
+            case "profile" -> profile();
+            case "storiesFeed" -> storiesFeed();
+            default -> commentsPage();
+        };
+    }
+
+    private static ViewPostCommentsResponse commentsPage() {
+        var writtenAt = LocalDateTime.of(2024, 11, 5, 18, 30);
+        var comments = IntStream.range(0, 20)
+                .mapToObj(i -> comment(i * 10L, writtenAt, IntStream.range(1, 4)
+                        .mapToObj(j -> comment(i * 10L + j, writtenAt.plusMinutes(j), List.of()))
+                        .toList()))
+                .toList();
+        return new ViewPostCommentsResponse(42L, comments, "eyJ3cml0dGVuQXQiOiIyMDI0LTExLTA1VDE4OjMwIiwiaWQiOjE5MH0");
+    }
+
+    private static ViewCommentResponse comment(long id, LocalDateTime writtenAt, List<ViewCommentResponse> replies) {
+        return new ViewCommentResponse(id, "Comment number " + id + ", looks great, where was this taken?",
+                "commenter" + id % 7, writtenAt, replies.size(), replies);
+    }
+
+    private static ViewUserProfileResponse profile() {
+        var posts = LongStream.range(0, 60)
+                .mapToObj(id -> new UserProfilePostResponse(id, "Post title " + id,
+                        "https://cdn.mediaspace.example/media/" + id + "/cover.jpg", id % 3 == 0))
+                .toList();
+        return new ViewUserProfileResponse("benchmark-user", "https://cdn.mediaspace.example/avatars/1.jpg",
+                posts, List.of(101L, 102L, 103L), 1523, 312);
+    }
+
+    private static LinkedHashSet<StoriesFeedEntry> storiesFeed() {
+        var feed = new LinkedHashSet<StoriesFeedEntry>();
+        IntStream.range(0, 100).forEach(i -> feed.add(new StoriesFeedEntry("followed-user-" + i,
+                "https://cdn.mediaspace.example/avatars/" + i + ".jpg")));
+        return feed;
+    }
+}
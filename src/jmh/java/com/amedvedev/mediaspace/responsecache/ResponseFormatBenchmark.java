@@ -0,0 +1,41 @@
+package com.amedvedev.mediaspace.responsecache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+
+/**
+ * Serialization time of the {@link ResponseFixtures} in each format the API negotiates. Their payload sizes are
+ * compared by {@link PayloadSizeReport}.
+ */
+@State(Scope.Benchmark)
+public class ResponseFormatBenchmark {
+
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    @Param({"comments", "profile", "storiesFeed"})
+    private String response;
+
+    private ObjectMapper objectMapper;
+    private Object value;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = ResponseFixtures.objectMapper(format);
+        value = ResponseFixtures.response(response);
+        serialized = objectMapper.writeValueAsBytes(value);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return objectMapper.writeValueAsBytes(value);
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException {
+        return objectMapper.readValue(serialized, value.getClass());
+    }
+}
@@ -9,9 +9,8 @@ import com.amedvedev.mediaspace.user.service.UserService;
 import com.amedvedev.mediaspace.user.exception.UsernameAlreadyExistsException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.DisabledException;
 import org.springframework.stereotype.Service;
 
 @Slf4j
@@ -20,9 +19,8 @@ import org.springframework.stereotype.Service;
 public class AuthenticationService {
 
     private final UserService userService;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final JwtService jwtService;
-    private final AuthenticationManager authenticationManager;
 
     public RegisterResponse register(RegisterRequest request) {
         log.info("Registering user: {}", request.getUsername());
@@ -31,7 +29,7 @@ public class AuthenticationService {
 
         var user = User.builder()
                 .username(request.getUsername())
-                .password(passwordEncoder.encode(request.getPassword()))
+                .password(passwordHashingService.hash(request.getPassword()))
                 .build();
         userService.save(user);
 
@@ -48,15 +46,40 @@ public class AuthenticationService {
     public LoginResponse login(LoginRequest request) {
         log.info("Logging in user: {}", request.getUsername());
 
-        // Throws BadCredentialsException or InternalAuthenticationServiceException if authentication fails
-        // (Handled by GlobalExceptionHandler)
-        authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(request.getUsername(), request.getPassword())
-        );
+        var user = userService.findUserForLogin(request.getUsername()).orElseThrow(() -> {
+            log.warn("Login attempt for non-existing username: {}", request.getUsername());
+            passwordHashingService.matchAgainstDummyHash(request.getPassword());
+            return new BadCredentialsException("Bad credentials");
+        });
 
-        var user = userService.findByUsernameIgnoreCaseAndIncludeSoftDeleted(request.getUsername());
+        verifyUserIsNotDeleted(user);
+        verifyPasswordIsCorrect(request.getPassword(), user);
+        rehashPasswordIfNeeded(request.getPassword(), user);
 
         var token = jwtService.generateToken(user);
         return new LoginResponse(token);
     }
+
+    private void verifyUserIsNotDeleted(User user) {
+        if (user.isDeleted()) {
+            log.warn("Deleted user attempted to log in: {}", user.getUsername());
+            throw new DisabledException("User is deleted");
+        }
+    }
+
+    private void verifyPasswordIsCorrect(String password, User user) {
+        if (!passwordHashingService.matches(password, user.getPassword())) {
+            log.warn("Incorrect password for user: {}", user.getUsername());
+            throw new BadCredentialsException("Bad credentials");
+        }
+    }
+
+    private void rehashPasswordIfNeeded(String password, User user) {
+        if (passwordHashingService.needsRehash(user.getPassword())) {
+            log.debug("Password hash of user {} uses an outdated work factor, rehashing", user.getUsername());
+            var verifiedPasswordHash = user.getPassword();
+            passwordHashingService.rehashInBackground(password,
+                    passwordHash -> userService.updatePasswordHash(user.getId(), verifiedPasswordHash, passwordHash));
+        }
+    }
 }
@@ -10,9 +10,6 @@ import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.DisabledException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -25,7 +22,7 @@ import java.io.IOException;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
-    private final UserDetailsService userDetailsService;
+    private final TokenVersionService tokenVersionService;
 
     @Override
     protected void doFilterInternal(
@@ -41,46 +38,47 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         var jwt = authHeader.substring(7);
-        var username = jwtService.extractUsername(jwt);
+        var principal = jwtService.extractPrincipal(jwt);
 
         log.debug("JWT Received");
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails;
-            try {
-                userDetails = getUserDetails(username);
-            } catch (UsernameNotFoundException e) {
-                log.warn("Username not found: {}", username);
-                filterChain.doFilter(request, response);
-                return;
-            }
-            if (jwtService.isTokenValid(jwt, userDetails)) {
-                setSecurityContext(request, userDetails);
-            }
+        if (principal.isEmpty()) {
+            log.warn("JWT does not contain user id or token version");
+        } else if (SecurityContextHolder.getContext().getAuthentication() == null && isTokenActive(principal.get())) {
+            setSecurityContext(request, principal.get());
         }
         filterChain.doFilter(request, response);
     }
 
-    private void setSecurityContext(HttpServletRequest request, UserDetails userDetails) {
+    private boolean isTokenActive(JwtPrincipal principal) {
+        var tokenState = tokenVersionService.getTokenState(principal.getId());
+        if (tokenState.isEmpty()) {
+            log.warn("User not found with id: {}", principal.getId());
+            return false;
+        }
+
+        if (tokenState.get().isDeleted()) {
+            log.warn("User is disabled");
+            throw new DisabledException("Your account is deleted. If you want to restore it - use /api/users/restore endpoint.");
+        }
+
+        if (tokenState.get().getTokenVersion() != principal.getTokenVersion()) {
+            log.warn("Revoked token used by user with id: {}", principal.getId());
+            return false;
+        }
+        return true;
+    }
+
+    private void setSecurityContext(HttpServletRequest request, JwtPrincipal principal) {
         log.debug("Setting security context");
         UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(
-                userDetails,
+                principal,
                 null,
-                userDetails.getAuthorities()
+                principal.getAuthorities()
         );
         token.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
         SecurityContextHolder.getContext().setAuthentication(token);
     }
 
-    private UserDetails getUserDetails(String username) {
-        log.debug("Getting user details for: {}", username);
-        UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-        if (!userDetails.isEnabled()) {
-            log.warn("User is disabled");
-            throw new DisabledException("Your account is deleted. If you want to restore it - use /api/users/restore endpoint.");
-        }
-        return userDetails;
-    }
-
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request) {
         String path = request.getRequestURI();
@@ -0,0 +1,36 @@
+package com.amedvedev.mediaspace.auth;
+
+import lombok.*;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Principal built from verified JWT claims, so that authenticated requests don't need to load the user.
+ */
+@Getter
+@Builder
+@ToString
+@AllArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+public class JwtPrincipal implements UserDetails {
+
+    @EqualsAndHashCode.Include
+    private final Long id;
+
+    private final String username;
+
+    private final long tokenVersion;
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return List.of();
+    }
+
+    @Override
+    public String getPassword() {
+        return null;
+    }
+}
@@ -1,6 +1,11 @@
 package com.amedvedev.mediaspace.auth;
 
+import com.amedvedev.mediaspace.user.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
@@ -10,10 +15,16 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.function.Function;
 
 @Slf4j
@@ -21,12 +32,25 @@ import java.util.function.Function;
 public class JwtService {
 
     private final SecretKey secretKey;
+    private final JwtParser jwtParser;
+
+    // Verified claims keyed by the SHA-256 digest of the token, each entry lives until the token expires
+    private final Cache<String, Claims> verifiedClaimsCache;
 
     private static final int DEFAULT_TOKEN_EXPIRATION_MILLIS = 1000 * 60 * 60;  // one hour
+    private static final long VERIFIED_CLAIMS_CACHE_MAX_SIZE = 10_000;
+
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String TOKEN_VERSION_CLAIM = "ver";
 
     public JwtService(@Value("${jwt.secret-key}") String secretKey) {
         byte[] keyBytes = Decoders.BASE64.decode(secretKey);
         this.secretKey = Keys.hmacShaKeyFor(keyBytes);
+        this.jwtParser = Jwts.parser().verifyWith(this.secretKey).build();
+        this.verifiedClaimsCache = Caffeine.newBuilder()
+                .maximumSize(VERIFIED_CLAIMS_CACHE_MAX_SIZE)
+                .expireAfter(Expiry.<String, Claims>creating(JwtService::getTimeToExpiration))
+                .build();
     }
 
     public String generateToken(Map<String, Object> extraClaims, UserDetails userDetails, int expiration) {
@@ -55,6 +79,35 @@ public class JwtService {
         return generateToken(new HashMap<>(), userDetails, DEFAULT_TOKEN_EXPIRATION_MILLIS);
     }
 
+    public String generateToken(User user) {
+        log.info("Generating token for user: {}", user.getUsername());
+        var claims = new HashMap<String, Object>();
+        claims.put(USER_ID_CLAIM, user.getId());
+        claims.put(TOKEN_VERSION_CLAIM, user.getTokenVersion());
+        return generateToken(claims, user, DEFAULT_TOKEN_EXPIRATION_MILLIS);
+    }
+
+    /**
+     * Verifies the token and builds the principal from its claims.
+     * Returns an empty optional for tokens issued without the user id or token version claims.
+     */
+    public Optional<JwtPrincipal> extractPrincipal(String token) {
+        log.debug("Extracting principal from token");
+        var claims = extractAllClaims(token);
+
+        if (!(claims.get(USER_ID_CLAIM) instanceof Number userId)
+                || !(claims.get(TOKEN_VERSION_CLAIM) instanceof Number tokenVersion)) {
+            log.debug("Token does not contain user id or token version");
+            return Optional.empty();
+        }
+
+        return Optional.of(JwtPrincipal.builder()
+                .id(userId.longValue())
+                .username(claims.getSubject())
+                .tokenVersion(tokenVersion.longValue())
+                .build());
+    }
+
     public boolean isTokenValid(String token, UserDetails userDetails) {
         log.debug("Verifying token");
         final String username = extractUsername(token);
@@ -79,13 +132,26 @@ public class JwtService {
         return claimsResolver.apply(claims);
     }
 
+    // Parsing throws for malformed, tampered or expired tokens, so only verified claims end up in the cache
     private Claims extractAllClaims(String token) {
-        return Jwts
-                .parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return verifiedClaimsCache.get(digest(token), ignored -> jwtParser.parseSignedClaims(token).getPayload());
+    }
+
+    private static Duration getTimeToExpiration(String ignored, Claims claims) {
+        if (claims.getExpiration() == null) {
+            return Duration.ofMillis(DEFAULT_TOKEN_EXPIRATION_MILLIS);
+        }
+        var millisToExpiration = claims.getExpiration().getTime() - System.currentTimeMillis();
+        return Duration.ofMillis(Math.max(millisToExpiration, 0));
+    }
+
+    private static String digest(String token) {
+        try {
+            var hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
     }
 
     private SecretKey getSigningKey() {
@@ -0,0 +1,97 @@
+package com.amedvedev.mediaspace.auth;
+
+import com.amedvedev.mediaspace.exception.ServiceOverloadedException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Runs BCrypt hashing and verification on a dedicated, size-bounded pool, so that a login storm
+ * cannot occupy every request thread. When the pool and its queue are full, requests fail fast
+ * with {@link ServiceOverloadedException} instead of piling up.
+ */
+@Slf4j
+@Service
+public class PasswordHashingService {
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+
+    // Verified against for unknown usernames, so that they take as long as a wrong password
+    private final String dummyPasswordHash;
+
+    public PasswordHashingService(
+            PasswordEncoder passwordEncoder,
+            @Value("${password-hashing.pool-size}") int poolSize,
+            @Value("${password-hashing.queue-capacity}") int queueCapacity) {
+        this.passwordEncoder = passwordEncoder;
+        this.executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("password-hashing-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.dummyPasswordHash = passwordEncoder.encode("dummy-password");
+    }
+
+    public String hash(String rawPassword) {
+        return runOnHashingPool(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    public boolean matches(String rawPassword, String passwordHash) {
+        return runOnHashingPool(() -> passwordEncoder.matches(rawPassword, passwordHash));
+    }
+
+    public void matchAgainstDummyHash(String rawPassword) {
+        matches(rawPassword, dummyPasswordHash);
+    }
+
+    public boolean needsRehash(String passwordHash) {
+        return passwordEncoder.upgradeEncoding(passwordHash);
+    }
+
+    /**
+     * Best effort: if the pool is busy the rehash is skipped and retried on the next successful login.
+     */
+    public void rehashInBackground(String rawPassword, Consumer<String> onRehashed) {
+        try {
+            executor.execute(() -> onRehashed.accept(passwordEncoder.encode(rawPassword)));
+        } catch (RejectedExecutionException e) {
+            log.debug("Password hashing pool is busy, skipping rehash");
+        }
+    }
+
+    private <T> T runOnHashingPool(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            log.warn("Password hashing pool is saturated, rejecting request");
+            throw new ServiceOverloadedException("Too many authentication requests, please try again later");
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IllegalStateException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,133 @@
+package com.amedvedev.mediaspace.auth;
+
+import com.amedvedev.mediaspace.auth.dto.TokenState;
+import com.amedvedev.mediaspace.user.User;
+import com.amedvedev.mediaspace.user.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps track of the token version and deletion flag of every user, so that JWTs can be revoked
+ * without loading the user on each request. Lookups go local cache -> Redis -> database.
+ * The local cache is short-lived, which bounds how long a revoked token is accepted by other instances.
+ * <p>
+ * Every change of the state bumps the token version, so Redis only ever moves to a newer version: a request that
+ * read the database before a change committed can't put its older state back over the new one.
+ */
+@Slf4j
+@Service
+public class TokenVersionService {
+
+    private final UserRepository userRepository;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final Cache<Long, TokenState> localCache;
+
+    private static final String USER_PREFIX = "user:";
+    private static final String TOKEN_STATE_SUFFIX = ":token_state";
+
+    private static final Duration DEFAULT_TOKEN_STATE_TTL = Duration.ofHours(24);
+    private static final Duration LOCAL_CACHE_TTL = Duration.ofSeconds(5);
+    private static final long LOCAL_CACHE_MAX_SIZE = 100_000;
+
+    private static final RedisScript<Long> CACHE_IF_NOT_OLDER_SCRIPT = new DefaultRedisScript<>("""
+            local current = redis.call('GET', KEYS[1])
+            if current and cjson.decode(current).tokenVersion > tonumber(ARGV[2]) then
+                return 0
+            end
+            redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[3])
+            return 1
+            """, Long.class);
+
+    public TokenVersionService(UserRepository userRepository, RedisTemplate<String, Object> redisTemplate) {
+        this.userRepository = userRepository;
+        this.redisTemplate = redisTemplate;
+        this.localCache = Caffeine.newBuilder()
+                .expireAfterWrite(LOCAL_CACHE_TTL)
+                .maximumSize(LOCAL_CACHE_MAX_SIZE)
+                .build();
+    }
+
+    public Optional<TokenState> getTokenState(Long userId) {
+        var tokenState = localCache.getIfPresent(userId);
+        if (tokenState != null) {
+            return Optional.of(tokenState);
+        }
+
+        var loadedTokenState = getCachedTokenState(userId).or(() -> loadAndCacheTokenState(userId));
+        loadedTokenState.ifPresent(state -> localCache.put(userId, state));
+        return loadedTokenState;
+    }
+
+    /**
+     * Caches the new state once the surrounding transaction commits, so no request can read it from Redis
+     * while the database still holds the previous one.
+     */
+    public void cacheTokenState(User user) {
+        var userId = user.getId();
+        var tokenState = TokenState.builder()
+                .tokenVersion(user.getTokenVersion())
+                .deleted(user.isDeleted())
+                .build();
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            executeCacheTokenState(userId, tokenState);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                executeCacheTokenState(userId, tokenState);
+            }
+        });
+    }
+
+    private void executeCacheTokenState(Long userId, TokenState tokenState) {
+        log.debug("Caching token state of user with id: {}", userId);
+        cacheIfNotOlder(userId, tokenState);
+        localCache.invalidate(userId);
+    }
+
+    public void clearLocalCache() {
+        log.debug("Clearing local token state cache");
+        localCache.invalidateAll();
+    }
+
+    private Optional<TokenState> getCachedTokenState(Long userId) {
+        var tokenState = (TokenState) redisTemplate.opsForValue().get(constructTokenStateKey(userId));
+        if (tokenState == null) {
+            log.debug("Token state not found in cache for user with id: {}", userId);
+        }
+        return Optional.ofNullable(tokenState);
+    }
+
+    private Optional<TokenState> loadAndCacheTokenState(Long userId) {
+        log.debug("Fetching token state from database for user with id: {}", userId);
+        var tokenState = userRepository.findTokenStateById(userId).map(projection -> TokenState.builder()
+                .tokenVersion(projection.getTokenVersion())
+                .deleted(Boolean.TRUE.equals(projection.getDeleted()))
+                .build());
+
+        tokenState.ifPresent(state -> cacheIfNotOlder(userId, state));
+        return tokenState;
+    }
+
+    private void cacheIfNotOlder(Long userId, TokenState tokenState) {
+        redisTemplate.execute(CACHE_IF_NOT_OLDER_SCRIPT, List.of(constructTokenStateKey(userId)),
+                tokenState, tokenState.getTokenVersion(), DEFAULT_TOKEN_STATE_TTL.toMillis());
+    }
+
+    private String constructTokenStateKey(Long userId) {
+        return USER_PREFIX + userId + TOKEN_STATE_SUFFIX;
+    }
+}
@@ -0,0 +1,17 @@
+package com.amedvedev.mediaspace.auth.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TokenState {
+
+    private long tokenVersion;
+
+    private boolean deleted;
+}
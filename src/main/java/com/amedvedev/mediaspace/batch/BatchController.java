@@ -0,0 +1,56 @@
+package com.amedvedev.mediaspace.batch;
+
+import com.amedvedev.mediaspace.batch.dto.BatchRequest;
+import com.amedvedev.mediaspace.batch.dto.BatchResponse;
+import com.amedvedev.mediaspace.exception.dto.GeneralErrorResponse;
+import com.amedvedev.mediaspace.exception.dto.ValidationErrorResponse;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/batch")
+@Tag(name = "Batch", description = "Endpoint for executing several requests in one round trip")
+public class BatchController {
+
+    private final BatchService batchService;
+
+    @Operation(summary = "Execute a batch of requests",
+            description = "Executes up to 10 GET requests concurrently as the authenticated user and returns "
+                    + "all responses at once, in the order of the requests. Every response keeps its own status code, "
+                    + "a request gets 503 if the server is executing too many batched requests to take it on.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200", description = "All requests executed, see the status of each response",
+                    content = @Content(schema = @Schema(implementation = BatchResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400", description = "Invalid input",
+                    content = @Content(schema = @Schema(implementation = ValidationErrorResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401", description = "Unauthorized",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            )
+    })
+    @PostMapping
+    @ResponseStatus(HttpStatus.OK)
+    public BatchResponse executeBatch(@Valid @RequestBody BatchRequest batchRequest, HttpServletRequest request,
+                                      HttpServletResponse response) {
+        return batchService.executeBatch(batchRequest, request, response);
+    }
+}
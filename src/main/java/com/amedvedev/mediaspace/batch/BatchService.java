@@ -0,0 +1,148 @@
+package com.amedvedev.mediaspace.batch;
+
+import com.amedvedev.mediaspace.batch.dto.BatchRequest;
+import com.amedvedev.mediaspace.batch.dto.BatchResponse;
+import com.amedvedev.mediaspace.batch.dto.BatchSubRequest;
+import com.amedvedev.mediaspace.batch.dto.BatchSubResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes the sub-requests of a batch concurrently, each on its own virtual thread, by dispatching them through
+ * the {@link DispatcherServlet} like regular requests. Controllers, exception handlers and request-scoped beans
+ * behave as they would for separate requests, the JWT filter is skipped and the caller's security context is
+ * propagated to every thread instead.
+ * <p>
+ * Sub-requests of all batches share a fixed number of permits, so batches can't multiply the load on the server
+ * beyond what that many concurrent requests would put on it. A sub-request that doesn't get a permit in time is
+ * answered with 503.
+ */
+@Slf4j
+@Service
+public class BatchService {
+
+    // Embedded into the batch response as is, so sub-responses are always uncompressed JSON
+    private static final Map<String, String> FIXED_HEADERS = Map.of(
+            HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE,
+            HttpHeaders.ACCEPT_ENCODING, "identity");
+
+    private final DispatcherServlet dispatcherServlet;
+    private final ObjectMapper objectMapper;
+    private final Semaphore permits;
+    private final long permitTimeoutMs;
+
+    public BatchService(DispatcherServlet dispatcherServlet,
+                        ObjectMapper objectMapper,
+                        @Value("${batch.max-concurrent-requests}") int maxConcurrentRequests,
+                        @Value("${batch.permit-timeout-ms}") long permitTimeoutMs) {
+        this.dispatcherServlet = dispatcherServlet;
+        this.objectMapper = objectMapper;
+        this.permits = new Semaphore(maxConcurrentRequests, true);
+        this.permitTimeoutMs = permitTimeoutMs;
+    }
+
+    public BatchResponse executeBatch(BatchRequest batchRequest, HttpServletRequest request,
+                                      HttpServletResponse response) {
+        log.info("Executing batch of {} requests", batchRequest.getRequests().size());
+        // Created here, as the batch request can only be read on this thread
+        var subRequests = batchRequest.getRequests().stream()
+                .map(subRequest -> new SubRequest(request, subRequest.getPath(), toHeaders(subRequest)))
+                .toList();
+        try (var executor = new DelegatingSecurityContextExecutorService(Executors.newVirtualThreadPerTaskExecutor())) {
+            var futures = subRequests.stream()
+                    .map(subRequest -> executor.submit(() -> execute(subRequest, new SubResponse(response))))
+                    .toList();
+            return new BatchResponse(futures.stream().map(this::getResult).toList());
+        }
+    }
+
+    private static HttpHeaders toHeaders(BatchSubRequest subRequest) {
+        var headers = new HttpHeaders();
+        if (subRequest.getHeaders() != null) {
+            subRequest.getHeaders().forEach(headers::set);
+        }
+        FIXED_HEADERS.forEach(headers::set);
+        return headers;
+    }
+
+    private BatchSubResponse execute(SubRequest subRequest, SubResponse subResponse) {
+        try {
+            if (!permits.tryAcquire(permitTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("No permit for batched request to {} within {} ms", subRequest.getRequestURI(),
+                        permitTimeoutMs);
+                return errorResponse(HttpStatus.SERVICE_UNAVAILABLE);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return internalServerError();
+        }
+        try {
+            dispatcherServlet.service(subRequest, subResponse);
+        } catch (Exception e) {
+            log.error("Failed to execute batched request to {}: {}", subRequest.getRequestURI(), e.getMessage(), e);
+            return internalServerError();
+        } finally {
+            permits.release();
+        }
+        log.debug("Batched request to {} completed with status {}", subRequest.getRequestURI(),
+                subResponse.getStatus());
+        return new BatchSubResponse(subResponse.getStatus(), new LinkedHashMap<>(subResponse.getBufferedHeaders()),
+                readBody(subResponse));
+    }
+
+    private JsonNode readBody(SubResponse subResponse) {
+        var body = subResponse.getBody();
+        if (body.length == 0) {
+            return null;
+        }
+        var contentType = subResponse.getContentType();
+        if (contentType != null && MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.APPLICATION_JSON)) {
+            try {
+                return objectMapper.readTree(body);
+            } catch (IOException e) {
+                log.warn("Batched response is not valid JSON, returning it as text: {}", e.getMessage());
+            }
+        }
+        return TextNode.valueOf(new String(body, subResponse.getCharset()));
+    }
+
+    private BatchSubResponse getResult(Future<BatchSubResponse> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return internalServerError();
+        } catch (ExecutionException e) {
+            log.error("Batched request failed: {}", e.getCause().getMessage(), e.getCause());
+            return internalServerError();
+        }
+    }
+
+    private static BatchSubResponse internalServerError() {
+        return errorResponse(HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    private static BatchSubResponse errorResponse(HttpStatus status) {
+        return new BatchSubResponse(status.value(), Map.of(), null);
+    }
+}
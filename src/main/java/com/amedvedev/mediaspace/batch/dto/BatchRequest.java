@@ -0,0 +1,25 @@
+package com.amedvedev.mediaspace.batch.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchRequest {
+
+    @Valid
+    @NotEmpty(message = "Batch must contain at least one request")
+    @Size(max = 10, message = "Cannot execute more than 10 requests at once")
+    @Schema(description = "The requests to execute, responses are returned in the same order")
+    private List<BatchSubRequest> requests;
+}
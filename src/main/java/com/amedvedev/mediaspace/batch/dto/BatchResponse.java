@@ -0,0 +1,19 @@
+package com.amedvedev.mediaspace.batch.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchResponse {
+
+    @Schema(description = "Responses in the order of the requests")
+    private List<BatchSubResponse> responses;
+}
@@ -0,0 +1,27 @@
+package com.amedvedev.mediaspace.batch.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchSubRequest {
+
+    @NotBlank(message = "Path is required")
+    @Pattern(regexp = "^/api/(?!batch\\b)\\S*$", message = "Path must be an API path other than the batch endpoint")
+    @Schema(description = "The path of a GET endpoint, with the query string if any", example = "/api/posts/1")
+    private String path;
+
+    @Schema(description = "Headers of the request, e.g. If-None-Match. Accept and Accept-Encoding are ignored, "
+            + "responses are always embedded as JSON", nullable = true)
+    private Map<String, String> headers;
+}
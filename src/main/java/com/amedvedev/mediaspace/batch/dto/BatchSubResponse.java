@@ -0,0 +1,27 @@
+package com.amedvedev.mediaspace.batch.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchSubResponse {
+
+    @Schema(description = "The status code the request would get on its own", example = "200")
+    private int status;
+
+    @Schema(description = "Headers of the response, e.g. ETag, with every value of a repeated header")
+    private Map<String, List<String>> headers;
+
+    @Schema(description = "The JSON body of the response, a string for other content types, null if empty")
+    private JsonNode body;
+}
@@ -0,0 +1,45 @@
+package com.amedvedev.mediaspace.config;
+
+import graphql.analysis.FieldComplexityCalculator;
+import graphql.analysis.MaxQueryComplexityInstrumentation;
+import graphql.analysis.MaxQueryDepthInstrumentation;
+import graphql.schema.GraphQLTypeUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * Rejects queries that are too deep or would resolve too many objects before any of their fields is fetched.
+ * A list field counts as many objects as the ids it asks for, or {@link #ESTIMATED_LIST_SIZE} when its size
+ * is decided by the server, e.g. comments of a post.
+ */
+@Configuration
+public class GraphQlConfig {
+
+    private static final int ESTIMATED_LIST_SIZE = 20;
+
+    @Bean
+    public MaxQueryDepthInstrumentation maxQueryDepthInstrumentation(
+            @Value("${graphql.max-query-depth}") int maxQueryDepth) {
+        return new MaxQueryDepthInstrumentation(maxQueryDepth);
+    }
+
+    @Bean
+    public MaxQueryComplexityInstrumentation maxQueryComplexityInstrumentation(
+            @Value("${graphql.max-query-complexity}") int maxQueryComplexity) {
+        return new MaxQueryComplexityInstrumentation(maxQueryComplexity, fieldComplexityCalculator());
+    }
+
+    private static FieldComplexityCalculator fieldComplexityCalculator() {
+        return (environment, childComplexity) -> {
+            var type = GraphQLTypeUtil.unwrapNonNull(environment.getFieldDefinition().getType());
+            if (!GraphQLTypeUtil.isList(type)) {
+                return 1 + childComplexity;
+            }
+            var size = environment.getArguments().get("ids") instanceof List<?> ids ? ids.size() : ESTIMATED_LIST_SIZE;
+            return size * (1 + childComplexity);
+        };
+    }
+}
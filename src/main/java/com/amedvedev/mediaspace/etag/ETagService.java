@@ -0,0 +1,44 @@
+package com.amedvedev.mediaspace.etag;
+
+import com.amedvedev.mediaspace.user.service.CurrentUserContext;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+/**
+ * Builds ETags from version counters instead of response bodies, so a matching {@code If-None-Match} is answered
+ * before the response is computed. The tags are weak since equal versions mean equal content, not equal bytes.
+ */
+@Service
+@RequiredArgsConstructor
+public class ETagService {
+
+    private final EntityVersionRedisService entityVersionRedisService;
+    private final CurrentUserContext currentUserContext;
+
+    /**
+     * The posts on a profile carry the viewer's like flags, so the viewer is part of the tag.
+     */
+    public EntityETag getProfileETag(String username) {
+        var viewerId = currentUserContext.getId();
+        return eTag(entityVersionRedisService.getProfileVersion(username, viewerId), "-" + viewerId);
+    }
+
+    public EntityETag getCurrentUserProfileETag() {
+        return getProfileETag(currentUserContext.getUsername());
+    }
+
+    public EntityETag getStoriesFeedETag() {
+        return eTag(entityVersionRedisService.getStoriesFeedVersion(currentUserContext.getId()), "");
+    }
+
+    /**
+     * The response carries the viewer's like flag, so the viewer is part of the tag.
+     */
+    public EntityETag getPostETag(Long postId) {
+        return eTag(entityVersionRedisService.getPostVersion(postId), "-" + currentUserContext.getId());
+    }
+
+    private EntityETag eTag(EntityVersion version, String suffix) {
+        return new EntityETag(version, suffix, entityVersionRedisService);
+    }
+}
@@ -0,0 +1,33 @@
+package com.amedvedev.mediaspace.etag;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.Optional;
+
+/**
+ * ETag of a response, built from the version read before the response is loaded. Reading never starts a counter,
+ * so a request for an entity that doesn't exist has no tag to match and gets its 404. A missing counter is only
+ * started by {@link #start()}, once the response has been loaded.
+ */
+@RequiredArgsConstructor
+public class EntityETag {
+
+    private final EntityVersion version;
+    private final String suffix;
+    private final EntityVersionRedisService entityVersionRedisService;
+
+    public Optional<String> current() {
+        return version.current().map(this::weakETag);
+    }
+
+    /**
+     * Empty if a write started a missing counter since it was read, as the loaded response may be older than that.
+     */
+    public Optional<String> start() {
+        return entityVersionRedisService.startMissingCounters(version).map(this::weakETag);
+    }
+
+    private String weakETag(String value) {
+        return "W/\"" + value + suffix + "\"";
+    }
+}
@@ -0,0 +1,22 @@
+package com.amedvedev.mediaspace.etag;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The counters a response is versioned by, as read before the response is loaded. A {@code null} value stands
+ * for a counter that doesn't exist (yet).
+ */
+public record EntityVersion(List<String> keys, List<String> values) {
+
+    /**
+     * Versions of several counters are joined with '-' into one. Empty if any of the counters is missing.
+     */
+    public Optional<String> current() {
+        if (values.stream().anyMatch(Objects::isNull)) {
+            return Optional.empty();
+        }
+        return Optional.of(String.join("-", values));
+    }
+}
@@ -0,0 +1,184 @@
+package com.amedvedev.mediaspace.etag;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Keeps a version counter per user profile, stories tray, post and the likes of a user, so that conditional
+ * requests can be answered with a single Redis read. Write paths bump the counters of everything they change.
+ * <p>
+ * Reads never start a counter, only a response that was loaded successfully does, so entities that don't exist
+ * never get one. A missing counter is started from the current time in milliseconds rather than from zero.
+ * Counters only grow by one per change, so a counter that expired or was evicted never comes back with a version
+ * a client still holds.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EntityVersionRedisService {
+
+    private static final String USERNAME_PREFIX = "username:";
+    private static final String PROFILE_VERSION_SUFFIX = ":profile_version";
+    private static final String USER_PREFIX = "user:";
+    private static final String STORIES_FEED_VERSION_SUFFIX = ":stories_feed_version";
+    private static final String LIKES_VERSION_SUFFIX = ":likes_version";
+    private static final String POST_PREFIX = "post:";
+    private static final String VERSION_SUFFIX = ":version";
+
+    private static final Duration VERSION_TTL = Duration.ofDays(7);
+
+    // A counter that was read before the response was loaded keeps the version that was read. One that was missing
+    // and has been started by a write since may be newer than the loaded response, so nothing is returned then
+    private static final RedisScript<String> START_MISSING_COUNTERS_SCRIPT = new DefaultRedisScript<>("""
+            local versions = {}
+            for i, key in ipairs(KEYS) do
+                local version = ARGV[i + 2]
+                if version == '' then
+                    if not redis.call('SET', key, ARGV[1], 'NX', 'PX', ARGV[2]) then
+                        return false
+                    end
+                    version = ARGV[1]
+                end
+                versions[i] = version
+            end
+            return table.concat(versions, '-')
+            """, String.class);
+
+    // Missing counters are left missing, the next loaded response starts them past any earlier value
+    private static final RedisScript<Long> BUMP_VERSIONS_SCRIPT = new DefaultRedisScript<>("""
+            local bumped = 0
+            for _, key in ipairs(KEYS) do
+                if redis.call('EXISTS', key) == 1 then
+                    redis.call('INCR', key)
+                    redis.call('PEXPIRE', key, ARGV[1])
+                    bumped = bumped + 1
+                end
+            end
+            return bumped
+            """, Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * Profiles carry the like flags of the viewer, so their version includes the version of the viewer's likes.
+     */
+    public EntityVersion getProfileVersion(String username, Long viewerId) {
+        return getVersion(constructProfileVersionKey(username), constructLikesVersionKey(viewerId));
+    }
+
+    public EntityVersion getStoriesFeedVersion(Long userId) {
+        return getVersion(constructStoriesFeedVersionKey(userId));
+    }
+
+    public EntityVersion getPostVersion(Long postId) {
+        return getVersion(constructPostVersionKey(postId));
+    }
+
+    public void bumpProfiles(String... usernames) {
+        log.debug("Bumping profile versions of {} users", usernames.length);
+        bump(Arrays.stream(usernames).map(EntityVersionRedisService::constructProfileVersionKey).toList());
+    }
+
+    public void bumpStoriesFeeds(Collection<Long> userIds) {
+        log.debug("Bumping stories feed versions of {} users", userIds.size());
+        bump(userIds.stream().map(EntityVersionRedisService::constructStoriesFeedVersionKey).toList());
+    }
+
+    public void bumpPosts(Collection<Long> postIds) {
+        log.debug("Bumping versions of {} posts", postIds.size());
+        bump(postIds.stream().map(EntityVersionRedisService::constructPostVersionKey).toList());
+    }
+
+    public void bumpLike(Long postId, Long userId) {
+        log.debug("Bumping versions of post with id: {} and likes of user with id: {}", postId, userId);
+        bump(List.of(constructPostVersionKey(postId), constructLikesVersionKey(userId)));
+    }
+
+    /**
+     * Meant to be called once the response versioned by {@code version} has been loaded, i.e. once the entity is
+     * known to exist.
+     *
+     * @return the version of the loaded response, or empty if it can't be told
+     */
+    public Optional<String> startMissingCounters(EntityVersion version) {
+        var current = version.current();
+        if (current.isPresent()) {
+            return current;
+        }
+        var args = new ArrayList<String>();
+        args.add(String.valueOf(System.currentTimeMillis()));
+        args.add(String.valueOf(VERSION_TTL.toMillis()));
+        version.values().forEach(value -> args.add(value == null ? "" : value));
+        return Optional.ofNullable(
+                stringRedisTemplate.execute(START_MISSING_COUNTERS_SCRIPT, version.keys(), args.toArray()));
+    }
+
+    private EntityVersion getVersion(String... keys) {
+        var keyList = List.of(keys);
+        var values = stringRedisTemplate.opsForValue().multiGet(keyList);
+        return new EntityVersion(keyList, values != null ? values : Collections.nCopies(keys.length, null));
+    }
+
+    /**
+     * Bumps the counters once the surrounding transaction commits, so a client can't get the new version along
+     * with the old data. After-commit {@code @TransactionalEventListener}s run on completion as well, and the
+     * ones refreshing caches are published before the bump, so the caches are refreshed before the version changes.
+     */
+    private void bump(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            executeBump(keys);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    executeBump(keys);
+                }
+            }
+        });
+    }
+
+    private void executeBump(List<String> keys) {
+        try {
+            stringRedisTemplate.execute(BUMP_VERSIONS_SCRIPT, keys, String.valueOf(VERSION_TTL.toMillis()));
+        } catch (Exception e) {
+            // The change is already committed, a lost bump only keeps clients on the previous version until the next one
+            log.error("Failed to bump versions of {} keys: {}", keys.size(), e.getMessage(), e);
+        }
+    }
+
+    private static String constructProfileVersionKey(String username) {
+        return USERNAME_PREFIX + username.toLowerCase(Locale.ROOT) + PROFILE_VERSION_SUFFIX;
+    }
+
+    private static String constructStoriesFeedVersionKey(Long userId) {
+        return USER_PREFIX + userId + STORIES_FEED_VERSION_SUFFIX;
+    }
+
+    private static String constructLikesVersionKey(Long userId) {
+        return USER_PREFIX + userId + LIKES_VERSION_SUFFIX;
+    }
+
+    private static String constructPostVersionKey(Long postId) {
+        return POST_PREFIX + postId + VERSION_SUFFIX;
+    }
+}
@@ -3,6 +3,7 @@ package com.amedvedev.mediaspace.exception.handler;
 import com.amedvedev.mediaspace.exception.BadRequestActionException;
 import com.amedvedev.mediaspace.exception.ElementNotFoundException;
 import com.amedvedev.mediaspace.exception.ForbiddenActionException;
+import com.amedvedev.mediaspace.exception.ServiceOverloadedException;
 import com.amedvedev.mediaspace.exception.dto.GeneralErrorResponse;
 import com.amedvedev.mediaspace.exception.dto.ValidationErrorResponse;
 import com.amedvedev.mediaspace.user.exception.UsernameAlreadyExistsException;
@@ -90,6 +91,12 @@ public class GlobalExceptionHandler {
         return new GeneralErrorResponse(ex.getMessage(), LocalDateTime.now());
     }
 
+    @ExceptionHandler(ServiceOverloadedException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public GeneralErrorResponse handleServiceOverloadedException(ServiceOverloadedException ex) {
+        return new GeneralErrorResponse(ex.getMessage(), LocalDateTime.now());
+    }
+
     @ExceptionHandler({HttpRequestMethodNotSupportedException.class, NoHandlerFoundException.class})
     @ResponseStatus(HttpStatus.METHOD_NOT_ALLOWED)
     public GeneralErrorResponse handleHttpRequestMethodNotSupportedException(HttpRequestMethodNotSupportedException ex) {
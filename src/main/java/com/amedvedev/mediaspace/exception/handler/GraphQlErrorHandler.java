@@ -0,0 +1,60 @@
+package com.amedvedev.mediaspace.exception.handler;
+
+import com.amedvedev.mediaspace.exception.BadRequestActionException;
+import com.amedvedev.mediaspace.exception.ElementNotFoundException;
+import com.amedvedev.mediaspace.exception.ForbiddenActionException;
+import graphql.GraphQLError;
+import graphql.GraphqlErrorBuilder;
+import graphql.schema.DataFetchingEnvironment;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import org.springframework.graphql.data.method.annotation.GraphQlExceptionHandler;
+import org.springframework.graphql.execution.ErrorType;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+
+import java.util.stream.Collectors;
+
+/**
+ * Reports the application exceptions thrown while resolving a GraphQL field as errors of that field,
+ * the rest of the query is still answered.
+ */
+@ControllerAdvice
+public class GraphQlErrorHandler {
+
+    @GraphQlExceptionHandler
+    public GraphQLError handleElementNotFoundException(ElementNotFoundException ex,
+                                                       DataFetchingEnvironment environment) {
+        return buildError(ErrorType.NOT_FOUND, ex, environment);
+    }
+
+    @GraphQlExceptionHandler
+    public GraphQLError handleForbiddenActionException(ForbiddenActionException ex,
+                                                       DataFetchingEnvironment environment) {
+        return buildError(ErrorType.FORBIDDEN, ex, environment);
+    }
+
+    @GraphQlExceptionHandler
+    public GraphQLError handleBadRequestActionException(BadRequestActionException ex,
+                                                        DataFetchingEnvironment environment) {
+        return buildError(ErrorType.BAD_REQUEST, ex, environment);
+    }
+
+    @GraphQlExceptionHandler
+    public GraphQLError handleConstraintViolationException(ConstraintViolationException ex,
+                                                           DataFetchingEnvironment environment) {
+        var message = ex.getConstraintViolations().stream()
+                .map(ConstraintViolation::getMessage)
+                .collect(Collectors.joining(", "));
+        return GraphqlErrorBuilder.newError(environment)
+                .errorType(ErrorType.BAD_REQUEST)
+                .message(message)
+                .build();
+    }
+
+    private GraphQLError buildError(ErrorType errorType, RuntimeException ex, DataFetchingEnvironment environment) {
+        return GraphqlErrorBuilder.newError(environment)
+                .errorType(errorType)
+                .message(ex.getMessage())
+                .build();
+    }
+}
@@ -1,18 +1,33 @@
 package com.amedvedev.mediaspace.feed;
 
+import com.amedvedev.mediaspace.etag.ETagService;
+import com.amedvedev.mediaspace.exception.dto.GeneralErrorResponse;
 import com.amedvedev.mediaspace.post.PostService;
+import com.amedvedev.mediaspace.post.dto.ViewPostResponse;
+import com.amedvedev.mediaspace.post.hashtag.HashtagService;
+import com.amedvedev.mediaspace.post.hashtag.dto.TrendingHashtagResponse;
+import com.amedvedev.mediaspace.responsecache.ResponseBytesCache;
+import com.amedvedev.mediaspace.story.dto.StoriesFeedChangesResponse;
 import com.amedvedev.mediaspace.story.dto.StoriesFeedEntry;
 import com.amedvedev.mediaspace.story.service.StoryViewService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.util.List;
-import java.util.Set;
 
 @RestController
 @RequiredArgsConstructor
@@ -22,11 +37,95 @@ public class FeedController {
 
     private final PostService postService;
     private final StoryViewService storyViewService;
+    private final TrendingPostsService trendingPostsService;
+    private final HashtagService hashtagService;
+    private final ETagService eTagService;
+    private final ResponseBytesCache responseBytesCache;
 
+    @Operation(summary = "Get stories feed",
+            description = "Returns the users followed by the authenticated user who have active stories. "
+                    + "Supports conditional requests, the feed is not loaded if the ETag in If-None-Match is current.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200", description = "Stories feed retrieved successfully",
+                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = StoriesFeedEntry.class)))
+            ),
+            @ApiResponse(
+                    responseCode = "304", description = "Not modified since the version in If-None-Match"
+            ),
+            @ApiResponse(
+                    responseCode = "401", description = "Unauthorized",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            )
+    })
     @GetMapping("/stories")
+    public void getStoriesFeed(ServletWebRequest request) {
+        var eTag = eTagService.getStoriesFeedETag();
+        if (eTag.current().map(request::checkNotModified).orElse(false)) {
+            return;
+        }
+        responseBytesCache.writePerViewer("stories_feed", eTag, storyViewService::getStoriesFeed, request);
+    }
+
+    @Operation(summary = "Get stories feed changes",
+            description = "Returns the entries added to and removed from the stories feed since the given version. "
+                    + "If the changes are no longer known, returns a snapshot of the whole feed instead. "
+                    + "Pass 0 to start with a snapshot.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200", description = "Changes or snapshot retrieved successfully",
+                    content = @Content(schema = @Schema(implementation = StoriesFeedChangesResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401", description = "Unauthorized",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            )
+    })
+    @GetMapping(value = "/stories", params = "since")
+    @ResponseStatus(HttpStatus.OK)
+    public StoriesFeedChangesResponse getStoriesFeedChanges(
+            @Parameter(description = "The feed version from the previous response") @RequestParam long since) {
+        return storyViewService.getStoriesFeedChanges(since);
+    }
+
+    @Operation(summary = "Get trending posts",
+            description = "Returns the posts with the most recent likes and comments, most trending first.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200", description = "Trending posts retrieved successfully",
+                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = ViewPostResponse.class)))
+            ),
+            @ApiResponse(
+                    responseCode = "401", description = "Unauthorized",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            )
+    })
+    @GetMapping("/trending")
+    @ResponseStatus(HttpStatus.OK)
+    public List<ViewPostResponse> getTrendingPosts(
+            @Parameter(description = "The number of posts, at most 100")
+            @RequestParam(defaultValue = "20") int limit) {
+        return trendingPostsService.getTrendingPosts(limit);
+    }
+
+    @Operation(summary = "Get trending hashtags",
+            description = "Returns the hashtags used in the most posts within the trending window, most used first.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200", description = "Trending hashtags retrieved successfully",
+                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = TrendingHashtagResponse.class)))
+            ),
+            @ApiResponse(
+                    responseCode = "401", description = "Unauthorized",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            )
+    })
+    @GetMapping("/trending/tags")
     @ResponseStatus(HttpStatus.OK)
-    public Set<StoriesFeedEntry> getStoriesFeed() {
-        return storyViewService.getStoriesFeed();
+    public List<TrendingHashtagResponse> getTrendingHashtags(
+            @Parameter(description = "The number of hashtags, at most 50")
+            @RequestParam(defaultValue = "10") int limit) {
+        return hashtagService.getTrendingHashtags(limit);
     }
 
 //    @GetMapping("/posts")
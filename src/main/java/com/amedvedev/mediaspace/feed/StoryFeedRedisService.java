@@ -4,30 +4,114 @@ import com.amedvedev.mediaspace.story.StoryMapper;
 import com.amedvedev.mediaspace.story.dto.StoriesFeedEntry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
+/**
+ * Caches the stories tray of each user together with a log of the entries added to and removed from it.
+ * <p>
+ * Every change of a cached tray gets the next tray version and is appended to the log in the same script,
+ * so a client that knows the version it has seen can ask for just the changes after it. The log keeps the last
+ * {@link #CHANGE_LOG_SIZE} changes and remembers the oldest version it can still serve changes from.
+ * A missing log starts from the current time in milliseconds, so versions a client got before never appear again.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class StoryFeedRedisService {
 
+    public static final int CHANGE_LOG_SIZE = 100;
+
     private static final String USER_PREFIX = "user:";
     private static final String STORIES_FEED_SUFFIX = ":stories_feed";
+    private static final String STORIES_FEED_LOG_SUFFIX = ":stories_feed_log";
+    private static final String STORIES_FEED_CHANGES_SUFFIX = ":stories_feed_changes";
     private static final String EMPTY_FEED_MARKER = "EMPTY_FEED";
     private static final Optional<Set<StoriesFeedEntry>> EMPTY_FEED = Optional.of(Set.of());
-    
+
+    private static final String ADDED = "add";
+    private static final String REMOVED = "remove";
+
+    private static final String INIT_LOG = """
+            if redis.call('EXISTS', KEYS[2]) == 0 then
+                redis.call('HSET', KEYS[2], 'version', ARGV[1], 'floor', ARGV[1])
+            end
+            """;
+
+    // Returns 1 if the tray changed and the change was logged, 0 if the entry was already there or already gone
+    private static final byte[] CHANGE_FEED_SCRIPT = (INIT_LOG + """
+            local operation, entry = ARGV[2], ARGV[3]
+            local changed
+            if operation == 'add' then
+                changed = redis.call('ZADD', KEYS[1], ARGV[1], entry)
+            else
+                changed = redis.call('ZREM', KEYS[1], entry)
+            end
+            if changed == 0 then
+                return 0
+            end
+            local version = redis.call('HINCRBY', KEYS[2], 'version', 1)
+            redis.call('RPUSH', KEYS[3], version .. ':' .. operation .. ':' .. entry)
+            if redis.call('LLEN', KEYS[3]) > tonumber(ARGV[4]) then
+                local oldest = redis.call('LPOP', KEYS[3])
+                redis.call('HSET', KEYS[2], 'floor', string.match(oldest, '^%d+'))
+            end
+            return 1
+            """).getBytes(StandardCharsets.UTF_8);
+
+    // Returns the current version, then 1 and the logged changes after the given version if the log still has
+    // all of them, otherwise 0
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisScript<List> GET_CHANGES_SCRIPT = new DefaultRedisScript<>(INIT_LOG + """
+            local version = redis.call('HGET', KEYS[2], 'version')
+            local since = tonumber(ARGV[2])
+            if since < tonumber(redis.call('HGET', KEYS[2], 'floor')) or since > tonumber(version) then
+                return {version, '0'}
+            end
+            local result = {version, '1'}
+            for _, change in ipairs(redis.call('LRANGE', KEYS[3], 0, -1)) do
+                if tonumber(string.match(change, '^%d+')) > since then
+                    table.insert(result, change)
+                end
+            end
+            return result
+            """, List.class);
+
+    // Returns the new version, changes up to it are no longer served
+    private static final RedisScript<Long> RESET_LOG_SCRIPT = new DefaultRedisScript<>(INIT_LOG + """
+            local version = redis.call('HINCRBY', KEYS[2], 'version', 1)
+            redis.call('HSET', KEYS[2], 'floor', version)
+            redis.call('DEL', KEYS[3])
+            return version
+            """, Long.class);
+
     private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
     private final StoryMapper storyMapper;
-    
+
+    public record FeedChange(boolean added, StoriesFeedEntry entry) {
+    }
+
+    /**
+     * @param complete whether {@code changes} are all changes after the requested version, if not the client
+     *                 has to start over from a snapshot
+     */
+    public record FeedChanges(long version, boolean complete, List<FeedChange> changes) {
+    }
+
     public void cacheStoriesFeedByUserId(Long id, Set<StoriesFeedEntry> storiesFeedEntries) {
         var key = constructStoriesFeedKey(id);
 
@@ -42,6 +126,41 @@ public class StoryFeedRedisService {
         redisTemplate.opsForZSet().add(key, tuples);
     }
 
+    /**
+     * Drops the logged changes before the tray is reloaded from the database, since the reloaded tray may differ
+     * from what the log describes. Clients that saw an older version are sent a snapshot.
+     *
+     * @return the version of the reloaded tray
+     */
+    public long resetFeedChanges(Long id) {
+        log.debug("Resetting stories feed changes for user with id: {}", id);
+        var version = stringRedisTemplate.execute(RESET_LOG_SCRIPT, constructLogKeys(id),
+                String.valueOf(System.currentTimeMillis()));
+        return version == null ? 0 : version;
+    }
+
+    public FeedChanges getFeedChangesSince(Long id, long since) {
+        log.debug("Looking for stories feed changes since version {} for user with id: {}", since, id);
+        List<String> result = stringRedisTemplate.execute(GET_CHANGES_SCRIPT, constructLogKeys(id),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(since));
+
+        var version = Long.parseLong(result.get(0));
+        if ("0".equals(result.get(1))) {
+            log.debug("Stories feed changes since version {} are no longer logged for user with id: {}", since, id);
+            return new FeedChanges(version, false, List.of());
+        }
+
+        var valueSerializer = new GenericJackson2JsonRedisSerializer();
+        var changes = new ArrayList<FeedChange>(result.size() - 2);
+        for (var change : result.subList(2, result.size())) {
+            // The entry is JSON and may contain colons itself, so only the version and the operation are split off
+            var parts = change.split(":", 3);
+            var entry = (StoriesFeedEntry) valueSerializer.deserialize(parts[2].getBytes(StandardCharsets.UTF_8));
+            changes.add(new FeedChange(ADDED.equals(parts[1]), entry));
+        }
+        return new FeedChanges(version, true, changes);
+    }
+
     public Optional<Set<StoriesFeedEntry>> getStoriesFeedByUserId(Long id) {
         log.debug("Looking for stories feed for user with id: {} in cache", id);
         var key = constructStoriesFeedKey(id);
@@ -78,27 +197,7 @@ public class StoryFeedRedisService {
             return;
         }
         
-        redisTemplate.executePipelined((RedisCallback<?>) connection -> {
-            followersIds.forEach(id -> {
-                var key = constructStoriesFeedKey(id);
-                addToRedisSortedSet(key, feedEntry, connection);
-            });
-            return null;
-        });
-    }
-
-    private void addToRedisSortedSet(String key, Object value, RedisConnection connection) {
-        var keyBytes = redisTemplate.getStringSerializer().serialize(key);
-
-        // For some reason redisTemplate.getValueSerializer().serialize() doesnt work, although set in RedisConfig
-        var valueSerializer = new GenericJackson2JsonRedisSerializer();
-        var valueBytes = valueSerializer.serialize(value);
-
-        if (keyBytes != null && valueBytes != null) {
-            connection.zAdd(keyBytes, Instant.now().toEpochMilli(), valueBytes);
-        } else {
-            log.error("Serialization resulted in null value for key {} or value {}", key, value);
-        }
+        changeFollowersFeeds(followersIds, ADDED, feedEntry);
     }
 
     public void deleteFeedEntryFromFollowersFeeds(Long publisherId,
@@ -112,18 +211,38 @@ public class StoryFeedRedisService {
             return;
         }
 
+        changeFollowersFeeds(followersIds, REMOVED, storiesFeedEntry);
+    }
+
+    private void changeFollowersFeeds(List<Long> followersIds, String operation, StoriesFeedEntry feedEntry) {
+        // For some reason redisTemplate.getValueSerializer().serialize() doesnt work, although set in RedisConfig
+        var feedEntryBytes = new GenericJackson2JsonRedisSerializer().serialize(feedEntry);
+        var scoreBytes = String.valueOf(Instant.now().toEpochMilli()).getBytes();
+        var operationBytes = operation.getBytes();
+        var logSizeBytes = String.valueOf(CHANGE_LOG_SIZE).getBytes();
+
         redisTemplate.executePipelined((RedisCallback<?>) connection -> {
-            followersIds.forEach(id -> {
-                var key = constructStoriesFeedKey(id);
-                var feedEntryBytes = new GenericJackson2JsonRedisSerializer().serialize(storiesFeedEntry);
-                connection.zSetCommands().zRem(key.getBytes(), feedEntryBytes);
-            });
+            followersIds.forEach(id -> connection.scriptingCommands().eval(CHANGE_FEED_SCRIPT, ReturnType.INTEGER, 3,
+                    constructStoriesFeedKey(id).getBytes(), constructLogKey(id).getBytes(),
+                    constructChangesKey(id).getBytes(),
+                    scoreBytes, operationBytes, feedEntryBytes, logSizeBytes));
             return null;
         });
     }
 
-    
     private String constructStoriesFeedKey(Long userId) {
         return USER_PREFIX + userId + STORIES_FEED_SUFFIX;
     }
+
+    private List<String> constructLogKeys(Long userId) {
+        return List.of(constructStoriesFeedKey(userId), constructLogKey(userId), constructChangesKey(userId));
+    }
+
+    private String constructLogKey(Long userId) {
+        return USER_PREFIX + userId + STORIES_FEED_LOG_SUFFIX;
+    }
+
+    private String constructChangesKey(Long userId) {
+        return USER_PREFIX + userId + STORIES_FEED_CHANGES_SUFFIX;
+    }
 }
@@ -0,0 +1,134 @@
+package com.amedvedev.mediaspace.feed;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps exponentially decayed engagement scores of posts in a sorted set.
+ * <p>
+ * Instead of decaying every score as time passes, each engagement is weighted by e^((now - landmark) / lifetime),
+ * which grows over time, so older engagement is worth relatively less without touching it. To keep the numbers
+ * small, {@link #rescale} periodically multiplies all scores by the inverse factor and moves the landmark to now.
+ * <p>
+ * The time of every engagement is kept with the post, so that withdrawing it, e.g. an unlike, subtracts what the
+ * engagement is worth now instead of what a fresh one would be.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TrendingPostsRedisService {
+
+    private static final String TRENDING_POSTS_KEY = "trending:posts";
+    private static final String LANDMARK_KEY = "trending:posts:landmark";
+    private static final String POST_ENGAGEMENTS_PREFIX = "trending:posts:";
+    private static final String POST_ENGAGEMENTS_SUFFIX = ":engagements";
+
+    private static final RedisScript<Long> RECORD_ENGAGEMENT_SCRIPT = new DefaultRedisScript<>("""
+            local now, weight, lifetime = tonumber(ARGV[1]), tonumber(ARGV[2]), tonumber(ARGV[3])
+            local landmark = tonumber(redis.call('GET', KEYS[2]))
+            if landmark == nil then
+                landmark = now
+                redis.call('SET', KEYS[2], ARGV[1])
+            end
+            redis.call('HSET', KEYS[3], ARGV[5], ARGV[1])
+            redis.call('EXPIRE', KEYS[3], ARGV[6])
+            local increment = weight * math.exp((now - landmark) / lifetime)
+            redis.call('ZINCRBY', KEYS[1], tostring(increment), ARGV[4])
+            return 1
+            """, Long.class);
+
+    // Forgotten engagements and posts that left the ranking have decayed below anything that counts.
+    // Posts whose score drops to zero, i.e. to rounding errors of their contribution, leave the ranking.
+    private static final RedisScript<Long> WITHDRAW_ENGAGEMENT_SCRIPT = new DefaultRedisScript<>("""
+            local weight, lifetime = tonumber(ARGV[1]), tonumber(ARGV[2])
+            local engaged_at = tonumber(redis.call('HGET', KEYS[3], ARGV[4]))
+            if engaged_at == nil then
+                return 0
+            end
+            redis.call('HDEL', KEYS[3], ARGV[4])
+            local landmark = tonumber(redis.call('GET', KEYS[2]))
+            if landmark == nil or not redis.call('ZSCORE', KEYS[1], ARGV[3]) then
+                return 0
+            end
+            local contribution = weight * math.exp((engaged_at - landmark) / lifetime)
+            local score = tonumber(redis.call('ZINCRBY', KEYS[1], tostring(-contribution), ARGV[3]))
+            if score <= contribution * 1e-9 then
+                redis.call('ZREM', KEYS[1], ARGV[3])
+            end
+            return 1
+            """, Long.class);
+
+    private static final RedisScript<Long> RESCALE_SCRIPT = new DefaultRedisScript<>("""
+            local now, lifetime = tonumber(ARGV[1]), tonumber(ARGV[2])
+            local landmark = tonumber(redis.call('GET', KEYS[2]))
+            if landmark == nil or landmark >= now then
+                return 0
+            end
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+                local factor = math.exp((landmark - now) / lifetime)
+                redis.call('ZUNIONSTORE', KEYS[1], 1, KEYS[1], 'WEIGHTS', tostring(factor))
+                redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[3])
+                redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -tonumber(ARGV[4]) - 1)
+            end
+            redis.call('SET', KEYS[2], ARGV[1])
+            return redis.call('ZCARD', KEYS[1])
+            """, Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * Adds the engagement to the score of the post and remembers when it happened for {@code memorySeconds}.
+     * Recording the same engagement again only moves its time.
+     */
+    public void recordEngagement(Long postId, String engagement, double weight, long now, double lifetimeSeconds,
+                                 long memorySeconds) {
+        log.debug("Recording engagement: {} of weight {} for post with id: {}", engagement, weight, postId);
+        stringRedisTemplate.execute(RECORD_ENGAGEMENT_SCRIPT, constructKeys(postId),
+                String.valueOf(now), String.valueOf(weight), String.valueOf(lifetimeSeconds), postId.toString(),
+                engagement, String.valueOf(memorySeconds));
+    }
+
+    public void withdrawEngagement(Long postId, String engagement, double weight, double lifetimeSeconds) {
+        log.debug("Withdrawing engagement: {} of weight {} from post with id: {}", engagement, weight, postId);
+        stringRedisTemplate.execute(WITHDRAW_ENGAGEMENT_SCRIPT, constructKeys(postId),
+                String.valueOf(weight), String.valueOf(lifetimeSeconds), postId.toString(), engagement);
+    }
+
+    /**
+     * Decays all scores to the given time, then drops posts below the minimum score and all but the top posts.
+     *
+     * @return the number of posts left in the ranking
+     */
+    public long rescale(long now, double lifetimeSeconds, double minScore, int maxSize) {
+        var size = stringRedisTemplate.execute(RESCALE_SCRIPT, List.of(TRENDING_POSTS_KEY, LANDMARK_KEY),
+                String.valueOf(now), String.valueOf(lifetimeSeconds), String.valueOf(minScore), String.valueOf(maxSize));
+        return size == null ? 0 : size;
+    }
+
+    public List<Long> getTopPostIds(int limit) {
+        log.debug("Retrieving top {} trending posts", limit);
+        Set<String> postIds = stringRedisTemplate.opsForZSet().reverseRange(TRENDING_POSTS_KEY, 0, limit - 1);
+        return postIds == null ? List.of() : postIds.stream().map(Long::valueOf).toList();
+    }
+
+    public void removePost(Long postId) {
+        log.debug("Removing post with id: {} from trending posts", postId);
+        stringRedisTemplate.opsForZSet().remove(TRENDING_POSTS_KEY, postId.toString());
+        stringRedisTemplate.delete(constructEngagementsKey(postId));
+    }
+
+    private static List<String> constructKeys(Long postId) {
+        return List.of(TRENDING_POSTS_KEY, LANDMARK_KEY, constructEngagementsKey(postId));
+    }
+
+    private static String constructEngagementsKey(Long postId) {
+        return POST_ENGAGEMENTS_PREFIX + postId + POST_ENGAGEMENTS_SUFFIX;
+    }
+}
@@ -0,0 +1,95 @@
+package com.amedvedev.mediaspace.feed;
+
+import com.amedvedev.mediaspace.post.PostService;
+import com.amedvedev.mediaspace.post.dto.ViewPostResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Ranks posts by recent engagement. Every like and comment adds to the post's score as it happens and
+ * the score halves every {@code trending.half-life-minutes}, so the ranking never has to be recomputed
+ * from likes and comments in the database.
+ */
+@Slf4j
+@Service
+public class TrendingPostsService {
+
+    static final double LIKE_WEIGHT = 1;
+    static final double COMMENT_WEIGHT = 2;
+
+    private static final int MAX_LIMIT = 100;
+    private static final int MAX_RANKED_POSTS = 1000;
+
+    // A single like decayed for about seven half-lives
+    private static final double MIN_SCORE = 0.01;
+
+    private static final String LIKE_PREFIX = "like:";
+    private static final String COMMENT_PREFIX = "comment:";
+
+    private final TrendingPostsRedisService trendingPostsRedisService;
+    private final PostService postService;
+    private final double lifetimeSeconds;
+    // Afterwards even a comment alone would have dropped out of the ranking, there is nothing left to withdraw
+    private final long engagementMemorySeconds;
+
+    public TrendingPostsService(TrendingPostsRedisService trendingPostsRedisService,
+                                PostService postService,
+                                @Value("${trending.half-life-minutes}") long halfLifeMinutes) {
+        this.trendingPostsRedisService = trendingPostsRedisService;
+        this.postService = postService;
+        this.lifetimeSeconds = halfLifeMinutes * 60 / Math.log(2);
+        this.engagementMemorySeconds = (long) Math.ceil(lifetimeSeconds * Math.log(COMMENT_WEIGHT / MIN_SCORE));
+    }
+
+    public void recordLike(Long postId, Long userId) {
+        recordEngagement(postId, LIKE_PREFIX + userId, LIKE_WEIGHT);
+    }
+
+    public void withdrawLike(Long postId, Long userId) {
+        trendingPostsRedisService.withdrawEngagement(postId, LIKE_PREFIX + userId, LIKE_WEIGHT, lifetimeSeconds);
+    }
+
+    public void recordComment(Long postId, Long commentId) {
+        recordEngagement(postId, COMMENT_PREFIX + commentId, COMMENT_WEIGHT);
+    }
+
+    public void withdrawComment(Long postId, Long commentId) {
+        trendingPostsRedisService.withdrawEngagement(
+                postId, COMMENT_PREFIX + commentId, COMMENT_WEIGHT, lifetimeSeconds);
+    }
+
+    private void recordEngagement(Long postId, String engagement, double weight) {
+        trendingPostsRedisService.recordEngagement(postId, engagement, weight, Instant.now().getEpochSecond(),
+                lifetimeSeconds, engagementMemorySeconds);
+    }
+
+    public void removePost(Long postId) {
+        trendingPostsRedisService.removePost(postId);
+    }
+
+    @Scheduled(fixedDelayString = "${trending.rescale-interval-ms}")
+    public void rescaleScheduled() {
+        try {
+            rescale();
+        } catch (Exception e) {
+            log.error("Failed to rescale trending posts scores: {}", e.getMessage(), e);
+        }
+    }
+
+    public void rescale() {
+        var rankedPosts = trendingPostsRedisService.rescale(
+                Instant.now().getEpochSecond(), lifetimeSeconds, MIN_SCORE, MAX_RANKED_POSTS);
+        log.debug("Rescaled trending posts scores, {} posts ranked", rankedPosts);
+    }
+
+    public List<ViewPostResponse> getTrendingPosts(int limit) {
+        log.info("Fetching top {} trending posts", limit);
+        var postIds = trendingPostsRedisService.getTopPostIds(Math.clamp(limit, 1, MAX_LIMIT));
+        return postService.getViewPostResponsesByIds(postIds);
+    }
+}
@@ -0,0 +1,54 @@
+package com.amedvedev.mediaspace.feed.listener;
+
+import com.amedvedev.mediaspace.feed.TrendingPostsService;
+import com.amedvedev.mediaspace.post.comment.event.CommentAddedEvent;
+import com.amedvedev.mediaspace.post.comment.event.CommentDeletedEvent;
+import com.amedvedev.mediaspace.post.event.PostDeletedEvent;
+import com.amedvedev.mediaspace.post.event.PostLikeChangedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Feeds likes and comments into the trending posts ranking. Likes are recorded outside of a transaction,
+ * so the listeners also run for events published without one.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TrendingPostsListener {
+
+    private final TrendingPostsService trendingPostsService;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPostLikeChanged(PostLikeChangedEvent event) {
+        log.debug("Received like changed event for post with id: {}", event.getPostId());
+        if (event.getDelta() > 0) {
+            trendingPostsService.recordLike(event.getPostId(), event.getUserId());
+        } else {
+            trendingPostsService.withdrawLike(event.getPostId(), event.getUserId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCommentAdded(CommentAddedEvent event) {
+        log.debug("Received comment added event for post with id: {}", event.getPostId());
+        trendingPostsService.recordComment(event.getPostId(), event.getComment().id());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCommentDeleted(CommentDeletedEvent event) {
+        if (event.getPostId() == null) {
+            return;
+        }
+        log.debug("Received comment deleted event for post with id: {}", event.getPostId());
+        trendingPostsService.withdrawComment(event.getPostId(), event.getCommentId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPostDeleted(PostDeletedEvent event) {
+        log.debug("Received post deleted event for post with id: {}", event.getPostId());
+        trendingPostsService.removePost(event.getPostId());
+    }
+}
@@ -17,7 +17,8 @@ public class Media {
 
     @Id
     @EqualsAndHashCode.Include
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "media_id_seq")
+    @SequenceGenerator(name = "media_id_seq", sequenceName = "media_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "url", length = 4096)
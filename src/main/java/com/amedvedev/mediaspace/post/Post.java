@@ -52,6 +52,13 @@ public class Post {
     @Column(name = "updated_at")
     private Instant updatedAt;
 
+    // Maintained by atomic updates in PostRepository, never written through the entity
+    @Column(name = "like_count", nullable = false, insertable = false, updatable = false)
+    private int likeCount;
+
+    @Column(name = "comment_count", nullable = false, insertable = false, updatable = false)
+    private int commentCount;
+
     @Builder.Default
     @OrderBy("id.position ASC")
     @OneToMany(mappedBy = "post", cascade = CascadeType.ALL, orphanRemoval = true)
@@ -66,6 +73,13 @@ public class Post {
     @OneToMany(mappedBy = "post", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Comment> comments = new ArrayList<>();
 
+    // Parsed from the description on creation, see Hashtags
+    @Builder.Default
+    @ElementCollection
+    @CollectionTable(name = "post_hashtag", joinColumns = @JoinColumn(name = "post_id"))
+    @Column(name = "tag", nullable = false, length = 50)
+    private Set<String> hashtags = new HashSet<>();
+
     @Builder.Default
     @Column(name = "is_deleted", nullable = false)
     private boolean isDeleted = false;
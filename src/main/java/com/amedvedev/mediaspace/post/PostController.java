@@ -1,21 +1,29 @@
 package com.amedvedev.mediaspace.post;
 
+import com.amedvedev.mediaspace.etag.ETagService;
 import com.amedvedev.mediaspace.exception.dto.GeneralErrorResponse;
 import com.amedvedev.mediaspace.exception.dto.ValidationErrorResponse;
 import com.amedvedev.mediaspace.post.comment.dto.ViewPostCommentsResponse;
 import com.amedvedev.mediaspace.post.dto.CreatePostRequest;
+import com.amedvedev.mediaspace.post.dto.PostSearchResponse;
 import com.amedvedev.mediaspace.post.dto.UserProfilePostResponse;
 import com.amedvedev.mediaspace.post.dto.ViewPostResponse;
+import com.amedvedev.mediaspace.responsecache.ResponseBytesCache;
+import com.amedvedev.mediaspace.streaming.NdjsonWriter;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.util.List;
 
@@ -26,6 +34,10 @@ import java.util.List;
 public class PostController {
 
     private final PostService postService;
+    private final PostSearchService postSearchService;
+    private final ETagService eTagService;
+    private final ResponseBytesCache responseBytesCache;
+    private final NdjsonWriter ndjsonWriter;
 
     @Operation(summary = "Create a new post")
     @ApiResponses(value = {
@@ -48,6 +60,34 @@ public class PostController {
         return postService.createPost(request);
     }
 
+    @Operation(summary = "Search posts",
+            description = "Finds posts by words in their title or description, most relevant first.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200", description = "Search completed",
+                    content = @Content(schema = @Schema(implementation = PostSearchResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400", description = "Blank query or invalid cursor",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401", description = "Unauthorized",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            )
+    })
+    @GetMapping("/search")
+    @ResponseStatus(HttpStatus.OK)
+    public PostSearchResponse searchPosts(
+            @Parameter(description = "The words to search for, quoted phrases and -exclusions are supported")
+            @RequestParam String query,
+            @Parameter(description = "The cursor returned with the previous page")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "The number of posts, at most 50")
+            @RequestParam(defaultValue = "20") int size) {
+        return postSearchService.searchPosts(query, cursor, size);
+    }
+
     @Operation(summary = "Get info about posts of a user")
     @ApiResponses(value = {
             @ApiResponse(
@@ -73,13 +113,40 @@ public class PostController {
         return postService.getPostsOfUser(username);
     }
 
+    @Operation(summary = "Stream posts of a user",
+            description = "Writes posts of a user, at most 10000, as newline-delimited JSON, one post per line, "
+                    + "as they are read.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200", description = "Posts streamed, the body is empty if the user has no posts",
+                    content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = UserProfilePostResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401", description = "Unauthorized",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "404", description = "User not found",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            )
+    })
+    @GetMapping("/user/{username}/stream")
+    public void streamPostsOfUser(@PathVariable String username, HttpServletResponse response) {
+        postService.streamPostsOfUser(username, posts -> ndjsonWriter.write(posts, response));
+    }
+
 
-    @Operation(summary = "Get a post by ID")
+    @Operation(summary = "Get a post by ID",
+            description = "Supports conditional requests, the post is not loaded if the ETag in If-None-Match is current.")
     @ApiResponses(value = {
             @ApiResponse(
                     responseCode = "200", description = "Post found",
                     content = @Content(schema = @Schema(implementation = ViewPostResponse.class))
             ),
+            @ApiResponse(
+                    responseCode = "304", description = "Not modified since the version in If-None-Match"
+            ),
             @ApiResponse(
                     responseCode = "401", description = "Unauthorized",
                     content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
@@ -90,9 +157,12 @@ public class PostController {
             )
     })
     @GetMapping("/{id}")
-    @ResponseStatus(HttpStatus.OK)
-    public ViewPostResponse getPostById(@PathVariable Long id) {
-        return postService.getViewPostResponseById(id);
+    public void getPostById(@PathVariable Long id, ServletWebRequest request) {
+        var eTag = eTagService.getPostETag(id);
+        if (eTag.current().map(request::checkNotModified).orElse(false)) {
+            return;
+        }
+        responseBytesCache.writePerViewer("post:" + id, eTag, () -> postService.getViewPostResponseById(id), request);
     }
 
     @Operation(summary = "Like a post")
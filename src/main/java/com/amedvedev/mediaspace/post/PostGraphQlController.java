@@ -0,0 +1,72 @@
+package com.amedvedev.mediaspace.post;
+
+import com.amedvedev.mediaspace.post.dto.ViewPostResponse;
+import com.amedvedev.mediaspace.user.dto.UserDto;
+import com.amedvedev.mediaspace.user.service.UserService;
+import jakarta.validation.constraints.Size;
+import lombok.RequiredArgsConstructor;
+import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.BatchMapping;
+import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resolves posts for the GraphQL API. A field requested on many posts is resolved for all of them at once,
+ * e.g. the authors of every post in the response with a single lookup of users.
+ * <p>
+ * Resolvers return {@link Mono} so that they run on the request thread, where the request scoped current user is
+ * available, rather than on the executor Spring for GraphQL hands blocking controller methods to.
+ */
+@Controller
+@RequiredArgsConstructor
+public class PostGraphQlController {
+
+    private static final int USER_POSTS_LIMIT = 20;
+
+    private final PostService postService;
+    private final UserService userService;
+
+    @QueryMapping
+    public Mono<ViewPostResponse> post(@Argument Long id) {
+        return Mono.fromSupplier(() -> postService.getViewPostResponseById(id));
+    }
+
+    @QueryMapping
+    public Mono<List<ViewPostResponse>> posts(
+            @Argument @Size(max = 100, message = "Cannot request more than 100 posts at once") List<Long> ids) {
+        return Mono.fromSupplier(() -> postService.getViewPostResponsesByIds(ids));
+    }
+
+    @BatchMapping(typeName = "Post", field = "author")
+    public Mono<Map<ViewPostResponse, UserDto>> author(List<ViewPostResponse> posts) {
+        return Mono.fromSupplier(() -> {
+            var users = userService.getUserDtosByLowerCaseUsername(
+                    posts.stream().map(ViewPostResponse::getUsername).toList());
+            var authors = new HashMap<ViewPostResponse, UserDto>();
+            posts.forEach(post -> {
+                var author = users.get(post.getUsername().toLowerCase(Locale.ROOT));
+                if (author != null) {
+                    authors.put(post, author);
+                }
+            });
+            return authors;
+        });
+    }
+
+    @BatchMapping(typeName = "User", field = "posts")
+    public Mono<Map<UserDto, List<ViewPostResponse>>> postsOfUsers(List<UserDto> users) {
+        return Mono.fromSupplier(() -> {
+            var postsByUserId = postService.getLatestViewPostResponsesByUserIds(
+                    users.stream().map(UserDto::getId).toList(), USER_POSTS_LIMIT);
+            var posts = new HashMap<UserDto, List<ViewPostResponse>>();
+            users.forEach(user -> posts.put(user, postsByUserId.get(user.getId())));
+            return posts;
+        });
+    }
+}
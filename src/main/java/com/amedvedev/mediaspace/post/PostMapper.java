@@ -3,6 +3,7 @@ package com.amedvedev.mediaspace.post;
 import com.amedvedev.mediaspace.media.dto.ViewPostMediaResponse;
 import com.amedvedev.mediaspace.post.dto.UserProfilePostResponse;
 import com.amedvedev.mediaspace.post.dto.ViewPostResponse;
+import com.amedvedev.mediaspace.post.projection.UserProfilePostProjection;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.ReportingPolicy;
@@ -14,11 +15,23 @@ public interface PostMapper {
 
     @Mapping(target = "postMediaList", source = "postMediaList")
     @Mapping(target = "username", source = "post.user.username")
-    @Mapping(target = "likes", expression = "java(post.getLikes().size())")
-    @Mapping(target = "commentsCount", expression = "java(post.getComments().size())")
+    @Mapping(target = "likes", source = "post.likeCount")
+    @Mapping(target = "commentsCount", source = "post.commentCount")
     @Mapping(target = "createdAt", source = "post.createdAt", dateFormat = "dd.MM.yyyy HH:mm")
+    @Mapping(target = "likedByMe", ignore = true)
     ViewPostResponse toViewPostResponse(Post post, List<ViewPostMediaResponse> postMediaList);
 
+    @Mapping(target = "postMediaList", source = "postMediaList")
+    @Mapping(target = "username", source = "username")
+    @Mapping(target = "likes", source = "post.likeCount")
+    @Mapping(target = "commentsCount", source = "post.commentCount")
+    @Mapping(target = "createdAt", source = "post.createdAt", dateFormat = "dd.MM.yyyy HH:mm")
+    @Mapping(target = "likedByMe", ignore = true)
+    ViewPostResponse toViewPostResponse(Post post, List<ViewPostMediaResponse> postMediaList, String username);
+
+    @Mapping(target = "likedByMe", ignore = true)
     @Mapping(target = "coverImage", expression = "java(post.getPostMediaList().get(0).getMedia().getUrl())")
     UserProfilePostResponse toUserProfilePostResponse(Post post);
+
+    UserProfilePostResponse toUserProfilePostResponse(UserProfilePostProjection post);
 }
\ No newline at end of file
@@ -0,0 +1,231 @@
+package com.amedvedev.mediaspace.post;
+
+import com.amedvedev.mediaspace.post.dto.CachedPostSearch;
+import com.amedvedev.mediaspace.post.dto.ViewPostResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Caches post content apart from its comments counter, which is changed in place as comments come and go and merged
+ * into the content at read time. Likes are not part of this cache, they are merged from {@code LikeRedisService}.
+ * Content is only dropped when the post is deleted or its author renamed.
+ * <p>
+ * Content and counter each have a version, bumped by every change to them. A load reads both versions before
+ * querying and only caches what did not change meanwhile, so a load that raced with a write can't put back
+ * what the write replaced, or miss an increment the write could not apply to a missing counter.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PostRedisService {
+
+    private static final String POST_PREFIX = "post:";
+    private static final String VIEW_SUFFIX = ":view";
+    private static final String COMMENTS_COUNT_SUFFIX = ":comments_count";
+    private static final String VIEW_VERSION_SUFFIX = ":view_version";
+    private static final String COMMENTS_COUNT_VERSION_SUFFIX = ":comments_count_version";
+    private static final String SEARCH_PREFIX = "search:posts:";
+
+    private static final Duration DEFAULT_POST_VIEW_TTL = Duration.ofHours(1);
+    private static final Duration SEARCH_RESULT_TTL = Duration.ofSeconds(60);
+
+    // KEYS are the view, comments count and their versions, each value is only cached if its version is unchanged
+    private static final RedisScript<Long> CACHE_VIEW_IF_UNCHANGED_SCRIPT = new DefaultRedisScript<>("""
+            local cached = 0
+            for i = 1, 2 do
+                if tonumber(redis.call('GET', KEYS[i + 2]) or '0') == tonumber(ARGV[i + 2]) then
+                    redis.call('SET', KEYS[i], ARGV[i], 'PX', ARGV[5])
+                    cached = cached + 1
+                end
+            end
+            return cached
+            """, Long.class);
+
+    // A missing counter is left to the next load, which the version bump keeps from caching a count read before
+    private static final RedisScript<Long> INCREMENT_COMMENTS_COUNT_SCRIPT = new DefaultRedisScript<>("""
+            local incremented = 0
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+                redis.call('INCRBY', KEYS[1], ARGV[1])
+                incremented = 1
+            end
+            redis.call('INCR', KEYS[2])
+            redis.call('PEXPIRE', KEYS[2], ARGV[2])
+            return incremented
+            """, Long.class);
+
+    // Keys come in groups of view, comments count and their versions of a post
+    private static final RedisScript<Long> INVALIDATE_VIEWS_SCRIPT = new DefaultRedisScript<>("""
+            for i = 1, #KEYS, 4 do
+                redis.call('DEL', KEYS[i], KEYS[i + 1])
+                redis.call('INCR', KEYS[i + 2])
+                redis.call('PEXPIRE', KEYS[i + 2], ARGV[1])
+                redis.call('INCR', KEYS[i + 3])
+                redis.call('PEXPIRE', KEYS[i + 3], ARGV[1])
+            end
+            return #KEYS / 4
+            """, Long.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    /**
+     * Returns the view versions of the given posts, to be read before the posts are loaded for
+     * {@link #cachePostView}. Missing versions are 0.
+     */
+    public Map<Long, ViewVersion> getViewVersions(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        var keys = ids.stream()
+                .flatMap(id -> Stream.of(constructViewVersionKey(id), constructCommentsCountVersionKey(id)))
+                .toList();
+        var values = redisTemplate.opsForValue().multiGet(keys);
+        var viewVersions = new HashMap<Long, ViewVersion>();
+        for (int i = 0; i < ids.size(); i++) {
+            viewVersions.put(ids.get(i), new ViewVersion(toVersion(values, i * 2), toVersion(values, i * 2 + 1)));
+        }
+        return viewVersions;
+    }
+
+    /**
+     * Caches the content of the post and its comments count as they are in the database, each unless it changed
+     * since {@code viewVersion} was read. The response is expected to be viewer independent,
+     * i.e. without {@code likedByMe}.
+     */
+    public void cachePostView(ViewPostResponse viewPostResponse, ViewVersion viewVersion) {
+        var id = viewPostResponse.getId();
+        log.debug("Caching view and comments count of post with id: {}", id);
+
+        var keys = List.of(constructViewKey(id), constructCommentsCountKey(id),
+                constructViewVersionKey(id), constructCommentsCountVersionKey(id));
+        var cached = redisTemplate.execute(CACHE_VIEW_IF_UNCHANGED_SCRIPT, keys, viewPostResponse,
+                viewPostResponse.getCommentsCount(), viewVersion.content(), viewVersion.commentsCount(),
+                DEFAULT_POST_VIEW_TTL.toMillis());
+        if (cached == null || cached < 2) {
+            log.debug("Post with id: {} changed while it was loaded, not caching what changed", id);
+        }
+    }
+
+    /**
+     * Applies a committed change of the comments count to the cached counter, leaving the cached content as is.
+     */
+    public void incrementCommentsCount(Long id, int delta) {
+        log.debug("Incrementing cached comments count of post with id: {} by {}", id, delta);
+        redisTemplate.execute(INCREMENT_COMMENTS_COUNT_SCRIPT,
+                List.of(constructCommentsCountKey(id), constructCommentsCountVersionKey(id)),
+                delta, DEFAULT_POST_VIEW_TTL.toMillis());
+    }
+
+    /**
+     * Reads the cached content and comments counter of the post with a single MGET.
+     */
+    public Optional<ViewPostResponse> getPostView(Long id) {
+        log.debug("Retrieving view of post with id: {}", id);
+        var values = redisTemplate.opsForValue().multiGet(List.of(constructViewKey(id), constructCommentsCountKey(id)));
+        if (values == null || values.get(0) == null || values.get(1) == null) {
+            return Optional.empty();
+        }
+
+        var viewPostResponse = (ViewPostResponse) values.get(0);
+        viewPostResponse.setCommentsCount(((Number) values.get(1)).intValue());
+        return Optional.of(viewPostResponse);
+    }
+
+    /**
+     * Reads the cached content and comments counters of all given posts with a single MGET.
+     * Posts that are not cached are absent from the result.
+     */
+    public Map<Long, ViewPostResponse> getPostViews(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        log.debug("Retrieving views of {} posts", ids.size());
+        var keys = ids.stream()
+                .flatMap(id -> Stream.of(constructViewKey(id), constructCommentsCountKey(id)))
+                .toList();
+        var values = redisTemplate.opsForValue().multiGet(keys);
+        if (values == null) {
+            return Map.of();
+        }
+
+        var postViews = new HashMap<Long, ViewPostResponse>();
+        for (int i = 0; i < ids.size(); i++) {
+            var view = values.get(i * 2);
+            var commentsCount = values.get(i * 2 + 1);
+            if (view != null && commentsCount != null) {
+                var viewPostResponse = (ViewPostResponse) view;
+                viewPostResponse.setCommentsCount(((Number) commentsCount).intValue());
+                postViews.put(ids.get(i), viewPostResponse);
+            }
+        }
+        return postViews;
+    }
+
+    public void deletePostViews(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        log.debug("Deleting cached views of {} posts", ids.size());
+        var keys = ids.stream()
+                .flatMap(id -> Stream.of(constructViewKey(id), constructCommentsCountKey(id),
+                        constructViewVersionKey(id), constructCommentsCountVersionKey(id)))
+                .toList();
+        redisTemplate.execute(INVALIDATE_VIEWS_SCRIPT, keys, DEFAULT_POST_VIEW_TTL.toMillis());
+    }
+
+    /**
+     * Caches ids of the first page of posts matching the query. Only ids are cached, so that the results
+     * reflect the current content and likes of the posts, while the ranking may be a minute old.
+     */
+    public void cacheSearchResult(String query, int size, CachedPostSearch result) {
+        log.debug("Caching search result for query: {}", query);
+        redisTemplate.opsForValue().set(constructSearchKey(query, size), result, SEARCH_RESULT_TTL);
+    }
+
+    public Optional<CachedPostSearch> getSearchResult(String query, int size) {
+        log.debug("Retrieving cached search result for query: {}", query);
+        return Optional.ofNullable((CachedPostSearch) redisTemplate.opsForValue().get(constructSearchKey(query, size)));
+    }
+
+    private static long toVersion(List<Object> values, int index) {
+        var value = values == null ? null : values.get(index);
+        return value == null ? 0L : ((Number) value).longValue();
+    }
+
+    private String constructSearchKey(String query, int size) {
+        return SEARCH_PREFIX + size + ":" + query;
+    }
+
+    private String constructViewKey(Long id) {
+        return POST_PREFIX + id + VIEW_SUFFIX;
+    }
+
+    private String constructCommentsCountKey(Long id) {
+        return POST_PREFIX + id + COMMENTS_COUNT_SUFFIX;
+    }
+
+    private String constructViewVersionKey(Long id) {
+        return POST_PREFIX + id + VIEW_VERSION_SUFFIX;
+    }
+
+    private String constructCommentsCountVersionKey(Long id) {
+        return POST_PREFIX + id + COMMENTS_COUNT_VERSION_SUFFIX;
+    }
+
+    /**
+     * Versions of the cached content and comments count of a post.
+     */
+    public record ViewVersion(long content, long commentsCount) {
+    }
+}
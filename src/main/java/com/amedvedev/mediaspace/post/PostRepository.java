@@ -1,9 +1,86 @@
 package com.amedvedev.mediaspace.post;
 
+import com.amedvedev.mediaspace.post.projection.PostSearchProjection;
+import com.amedvedev.mediaspace.post.projection.UserPostIdProjection;
+import com.amedvedev.mediaspace.post.projection.UserProfilePostProjection;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface PostRepository extends JpaRepository<Post, Long> {
     List<Post> findAllByUserIdOrderByCreatedAt(Long id);
+
+    @Query("SELECT p.id FROM Post p WHERE p.user.id = :userId")
+    List<Long> findIdsByUserId(Long userId);
+
+    @EntityGraph(attributePaths = {"user", "postMediaList", "postMediaList.media"})
+    List<Post> findAllWithMediaByIdIn(Collection<Long> ids);
+
+    @Query(value = """
+            SELECT p.user_id AS "userId", p.id AS "postId"
+            FROM (SELECT _user_id AS user_id, id, created_at,
+                         ROW_NUMBER() OVER (PARTITION BY _user_id ORDER BY created_at DESC, id DESC) AS position
+                  FROM post
+                  WHERE _user_id IN (:userIds) AND is_deleted <> TRUE) p
+            WHERE p.position <= :limit
+            ORDER BY p.created_at DESC, p.id DESC
+            """, nativeQuery = true)
+    List<UserPostIdProjection> findLatestPostIdsByUserIds(@Param("userIds") Collection<Long> userIds,
+                                                          @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "UPDATE post SET comment_count = comment_count + :delta WHERE id = :postId", nativeQuery = true)
+    void updateCommentCount(Long postId, int delta);
+
+    @Query(value = """
+            SELECT p.id AS "id", ts_rank(p.search_vector, q.query) AS "rank"
+            FROM post p, websearch_to_tsquery('english', :query) AS q(query)
+            WHERE p.search_vector @@ q.query AND p.is_deleted <> TRUE
+              AND (ts_rank(p.search_vector, q.query), p.id) < (CAST(:afterRank AS real), :afterId)
+            ORDER BY 2 DESC, p.id DESC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<PostSearchProjection> search(@Param("query") String query,
+                                      @Param("afterRank") float afterRank,
+                                      @Param("afterId") long afterId,
+                                      @Param("limit") int limit);
+
+    @Query(value = """
+            SELECT ph.post_id
+            FROM post_hashtag ph
+            JOIN post p ON p.id = ph.post_id
+            WHERE ph.tag = :tag AND ph.post_id < :beforeId AND p.is_deleted <> TRUE
+            ORDER BY ph.post_id DESC
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<Long> findIdsByHashtag(@Param("tag") String tag, @Param("beforeId") Long beforeId, @Param("limit") int limit);
+
+    // Reads the cover and like flag along with the post, so that streaming a profile does not load posts one by one.
+    // The timeout is in seconds and keeps a slow stream from holding its connection for long.
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "100"),
+            @QueryHint(name = HibernateHints.HINT_TIMEOUT, value = "30")
+    })
+    @Query(value = """
+            SELECT p.id AS "id", p.title AS "title",
+                   (SELECT m.url FROM post_media pm JOIN media m ON m.id = pm.media_id
+                    WHERE pm.post_id = p.id ORDER BY pm.position LIMIT 1) AS "coverImage",
+                   EXISTS (SELECT 1 FROM _like l WHERE l.post_id = p.id AND l._user_id = :viewerId) AS "likedByMe"
+            FROM post p
+            WHERE p._user_id = :userId AND p.is_deleted <> TRUE
+            ORDER BY p.created_at, p.id
+            LIMIT :limit
+            """, nativeQuery = true)
+    Stream<UserProfilePostProjection> streamProfilePostsByUserId(@Param("userId") Long userId,
+                                                                 @Param("viewerId") Long viewerId,
+                                                                 @Param("limit") int limit);
 }
@@ -0,0 +1,37 @@
+package com.amedvedev.mediaspace.post;
+
+import com.amedvedev.mediaspace.post.exception.InvalidPostSearchException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in search results ordered by (rank, id) descending. The rank is kept exactly as Postgres returned it,
+ * so that the next page starts right after the last result.
+ */
+public record PostSearchCursor(float rank, long id) {
+
+    public static final PostSearchCursor FIRST = new PostSearchCursor(Float.MAX_VALUE, Long.MAX_VALUE);
+
+    private static final String SEPARATOR = "|";
+
+    public static PostSearchCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return FIRST;
+        }
+        try {
+            var decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            var separatorIndex = decoded.indexOf(SEPARATOR);
+            return new PostSearchCursor(
+                    Float.parseFloat(decoded.substring(0, separatorIndex)),
+                    Long.parseLong(decoded.substring(separatorIndex + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new InvalidPostSearchException("Invalid search cursor");
+        }
+    }
+
+    public String encode() {
+        var value = rank + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
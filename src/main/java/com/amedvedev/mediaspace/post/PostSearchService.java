@@ -0,0 +1,75 @@
+package com.amedvedev.mediaspace.post;
+
+import com.amedvedev.mediaspace.post.dto.CachedPostSearch;
+import com.amedvedev.mediaspace.post.dto.PostSearchResponse;
+import com.amedvedev.mediaspace.post.exception.InvalidPostSearchException;
+import com.amedvedev.mediaspace.post.projection.PostSearchProjection;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Locale;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PostSearchService {
+
+    private static final int MAX_PAGE_SIZE = 50;
+    private static final int MAX_QUERY_LENGTH = 256;
+
+    private final PostRepository postRepository;
+    private final PostRedisService postRedisService;
+    private final PostService postService;
+
+    /**
+     * Searches titles and descriptions of posts, most relevant first. First pages are cached briefly,
+     * so a popular query is only run once in a while.
+     */
+    public PostSearchResponse searchPosts(String query, String cursor, int size) {
+        var normalizedQuery = normalizeQuery(query);
+        var after = PostSearchCursor.decode(cursor);
+        var pageSize = Math.clamp(size, 1, MAX_PAGE_SIZE);
+        log.info("Searching posts for query: {}", normalizedQuery);
+
+        var result = PostSearchCursor.FIRST.equals(after)
+                ? postRedisService.getSearchResult(normalizedQuery, pageSize).orElseGet(() -> {
+                    var firstPage = search(normalizedQuery, after, pageSize);
+                    postRedisService.cacheSearchResult(normalizedQuery, pageSize, firstPage);
+                    return firstPage;
+                })
+                : search(normalizedQuery, after, pageSize);
+
+        return PostSearchResponse.builder()
+                .posts(postService.getViewPostResponsesByIds(result.getPostIds()))
+                .nextCursor(result.getNextCursor())
+                .build();
+    }
+
+    private CachedPostSearch search(String query, PostSearchCursor after, int pageSize) {
+        log.debug("Running search for query: {} after {}", query, after);
+        var matches = postRepository.search(query, after.rank(), after.id(), pageSize);
+        var postIds = matches.stream().map(PostSearchProjection::getId).toList();
+        return new CachedPostSearch(postIds, getNextCursor(matches, pageSize));
+    }
+
+    private String getNextCursor(List<PostSearchProjection> matches, int pageSize) {
+        if (matches.size() < pageSize) {
+            return null;
+        }
+        var last = matches.getLast();
+        return new PostSearchCursor(last.getRank(), last.getId()).encode();
+    }
+
+    private String normalizeQuery(String query) {
+        var normalizedQuery = query == null ? "" : query.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        if (normalizedQuery.isEmpty()) {
+            throw new InvalidPostSearchException("Search query must not be blank");
+        }
+        if (normalizedQuery.length() > MAX_QUERY_LENGTH) {
+            throw new InvalidPostSearchException("Search query must not be longer than " + MAX_QUERY_LENGTH + " characters");
+        }
+        return normalizedQuery;
+    }
+}
@@ -1,44 +1,79 @@
 package com.amedvedev.mediaspace.post;
 
+import com.amedvedev.mediaspace.etag.EntityVersionRedisService;
 import com.amedvedev.mediaspace.media.dto.ViewPostMediaResponse;
 import com.amedvedev.mediaspace.media.postmedia.PostMediaMapper;
 import com.amedvedev.mediaspace.post.dto.CreatePostRequest;
 import com.amedvedev.mediaspace.post.dto.UserProfilePostResponse;
 import com.amedvedev.mediaspace.post.dto.ViewPostResponse;
+import com.amedvedev.mediaspace.post.event.PostCommentsCountChangedEvent;
+import com.amedvedev.mediaspace.post.event.PostCreatedEvent;
+import com.amedvedev.mediaspace.post.event.PostDeletedEvent;
+import com.amedvedev.mediaspace.post.event.PostLikeChangedEvent;
 import com.amedvedev.mediaspace.post.exception.PostNotFoundException;
-import com.amedvedev.mediaspace.post.like.Like;
-import com.amedvedev.mediaspace.post.like.LikeId;
+import com.amedvedev.mediaspace.post.hashtag.Hashtags;
+import com.amedvedev.mediaspace.post.like.LikeRedisService;
+import com.amedvedev.mediaspace.post.like.LikeRepository;
 import com.amedvedev.mediaspace.post.like.exception.PostNotLikedException;
+import com.amedvedev.mediaspace.post.projection.UserPostIdProjection;
+import com.amedvedev.mediaspace.post.projection.UserProfilePostProjection;
+import com.amedvedev.mediaspace.streaming.Chunks;
 import com.amedvedev.mediaspace.user.User;
+import com.amedvedev.mediaspace.user.service.CurrentUserContext;
 import com.amedvedev.mediaspace.user.service.UserService;
-import com.amedvedev.mediaspace.user.dto.UserDto;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class PostService {
 
+    private static final int STREAM_CHUNK_SIZE = 100;
+    private static final int MAX_STREAMED_POSTS = 10_000;
+
     private final UserService userService;
+    private final CurrentUserContext currentUserContext;
     private final PostRepository postRepository;
+    private final LikeRepository likeRepository;
+    private final LikeRedisService likeRedisService;
+    private final PostRedisService postRedisService;
+    private final EntityVersionRedisService entityVersionRedisService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
     private final PostMapper postMapper;
     private final PostMediaMapper postMediaMapper;
 
     @Transactional
     public ViewPostResponse createPost(CreatePostRequest request) {
-        var user = userService.getCurrentUser();
-        log.info("Creating post for user: {}", user.getUsername());
+        var username = currentUserContext.getUsername();
+        log.info("Creating post for user: {}", username);
 
-        var post = buildPost(request, user);
+        var post = buildPost(request, currentUserContext.getReference());
 
         var savedPost = postRepository.save(post);
+        eventPublisher.publishEvent(new PostCreatedEvent(this, savedPost.getId(), Set.copyOf(post.getHashtags())));
+        entityVersionRedisService.bumpProfiles(username);
         var viewPostMediaResponseList = getViewPostMediaResponseList(savedPost);
-        return postMapper.toViewPostResponse(savedPost, viewPostMediaResponseList);
+        return postMapper.toViewPostResponse(savedPost, viewPostMediaResponseList, username);
     }
 
     private Post buildPost(CreatePostRequest request, User user) {
@@ -47,6 +82,7 @@ public class PostService {
                 .user(user)
                 .title(request.getTitle())
                 .description(request.getDescription())
+                .hashtags(Hashtags.extract(request.getDescription()))
                 .build();
 
         var postMediaList = postMediaMapper.mapUrlsToPostMedia(request.getMediaUrls(), post);
@@ -59,7 +95,7 @@ public class PostService {
     public List<UserProfilePostResponse> getPostsOfUser(String username) {
         log.info("Fetching posts of user: {}", username);
         var user = userService.getUserDtoByUsername(username);
-        var userProfilePostResponses = getUserProfilePostResponses(user);
+        var userProfilePostResponses = getUserProfilePostResponses(user.getId());
 
         checkIfUserHasPosts(username, userProfilePostResponses);
 
@@ -73,23 +109,201 @@ public class PostService {
         }
     }
 
-    private List<UserProfilePostResponse> getUserProfilePostResponses(UserDto user) {
-        return findPostsByUserId(user.getId()).stream()
+    /**
+     * Maps posts of the user for a profile, with the like flags of the current user resolved in one batch.
+     */
+    public List<UserProfilePostResponse> getUserProfilePostResponses(Long userId) {
+        var userProfilePostResponses = findPostsByUserId(userId).stream()
                 .map(postMapper::toUserProfilePostResponse)
                 .toList();
+
+        var postIds = userProfilePostResponses.stream().map(UserProfilePostResponse::getId).toList();
+        var likedPostIds = getPostIdsLikedByCurrentUser(postIds);
+        userProfilePostResponses.forEach(response -> response.setLikedByMe(likedPostIds.contains(response.getId())));
+
+        return userProfilePostResponses;
+    }
+
+    /**
+     * Hands the posts of the user, at most {@link #MAX_STREAMED_POSTS}, to the consumer in chunks while they are read
+     * from the database. Likes that are not flushed yet are merged in from the like cache with one call per chunk.
+     */
+    @Transactional(readOnly = true)
+    public void streamPostsOfUser(String username, Consumer<Stream<List<UserProfilePostResponse>>> consumer) {
+        log.info("Streaming posts of user: {}", username);
+        var user = userService.getUserDtoByUsername(username);
+        var viewerId = currentUserContext.getId();
+
+        try (var posts = postRepository.streamProfilePostsByUserId(user.getId(), viewerId, MAX_STREAMED_POSTS)) {
+            consumer.accept(Chunks.of(posts, STREAM_CHUNK_SIZE)
+                    .map(chunk -> toUserProfilePostResponses(chunk, viewerId)));
+        }
+    }
+
+    private List<UserProfilePostResponse> toUserProfilePostResponses(List<UserProfilePostProjection> posts,
+                                                                     Long viewerId) {
+        var postIds = posts.stream().map(UserProfilePostProjection::getId).toList();
+        var likeStates = likeRedisService.getLikeStates(postIds, viewerId);
+        return posts.stream()
+                .map(post -> {
+                    var response = postMapper.toUserProfilePostResponse(post);
+                    var likeState = likeStates.get(post.getId());
+                    if (likeState != null) {
+                        response.setLikedByMe(likeState.isLikedByUser());
+                    }
+                    return response;
+                })
+                .toList();
     }
 
     public List<Post> findPostsByUserId(Long id) {
         return postRepository.findAllByUserIdOrderByCreatedAt(id);
     }
 
-    @Transactional(readOnly = true)
+    /**
+     * Serves the post from cache when possible. The cached part is shared by all viewers, while likes
+     * and the viewer's like flag are merged in from the like cache, so a hot post is served without SQL.
+     */
     public ViewPostResponse getViewPostResponseById(Long id) {
         log.info("Getting ViewPostResponse for post with id: {}", id);
-        var post = findPostById(id);
-        var viewPostMediaResponseList = getViewPostMediaResponseList(post);
+        var viewPostResponse = postRedisService.getPostView(id).orElseGet(() -> {
+            log.debug("Post with id: {} not found in cache", id);
+            return loadAndCachePostView(id)
+                    .orElseThrow(() -> new PostNotFoundException("Post not found"));
+        });
+
+        mergeLikeStates(List.of(viewPostResponse));
+        return viewPostResponse;
+    }
 
-        return postMapper.toViewPostResponse(post, viewPostMediaResponseList);
+    /**
+     * Serves the posts in the given order the same way as {@link #getViewPostResponseById}, reading all cached
+     * posts and their likes with one pipelined call each and the missing posts with one query.
+     * Posts that no longer exist are skipped.
+     */
+    public List<ViewPostResponse> getViewPostResponsesByIds(List<Long> ids) {
+        log.info("Getting ViewPostResponses for {} posts", ids.size());
+        var postViews = new HashMap<>(postRedisService.getPostViews(ids));
+        var missingIds = ids.stream().filter(id -> !postViews.containsKey(id)).distinct().toList();
+        postViews.putAll(loadAndCachePostViews(missingIds));
+
+        var viewPostResponses = ids.stream().map(postViews::get).filter(Objects::nonNull).toList();
+
+        mergeLikeStates(viewPostResponses);
+        return viewPostResponses;
+    }
+
+    /**
+     * Returns up to {@code limit} latest posts of every given user, finding the ids of all of them with one query
+     * and serving the posts like {@link #getViewPostResponsesByIds}.
+     */
+    public Map<Long, List<ViewPostResponse>> getLatestViewPostResponsesByUserIds(Collection<Long> userIds, int limit) {
+        log.info("Getting latest posts of {} users", userIds.size());
+        var postsByUserId = new HashMap<Long, List<ViewPostResponse>>();
+        userIds.forEach(userId -> postsByUserId.put(userId, new ArrayList<>()));
+        if (userIds.isEmpty()) {
+            return postsByUserId;
+        }
+
+        var userPostIds = postRepository.findLatestPostIdsByUserIds(userIds, limit);
+        var viewPostResponses = getViewPostResponsesByIds(
+                userPostIds.stream().map(UserPostIdProjection::getPostId).toList());
+        var viewPostResponsesById = viewPostResponses.stream()
+                .collect(Collectors.toMap(ViewPostResponse::getId, Function.identity(), (first, second) -> first));
+
+        userPostIds.forEach(userPostId -> {
+            var viewPostResponse = viewPostResponsesById.get(userPostId.getPostId());
+            if (viewPostResponse != null) {
+                postsByUserId.get(userPostId.getUserId()).add(viewPostResponse);
+            }
+        });
+        return postsByUserId;
+    }
+
+    private Optional<ViewPostResponse> loadAndCachePostView(Long id) {
+        var viewVersion = postRedisService.getViewVersions(List.of(id)).get(id);
+        var viewPostResponse = transactionTemplate.execute(status -> postRepository.findById(id)
+                .map(post -> postMapper.toViewPostResponse(post, getViewPostMediaResponseList(post))));
+        if (viewPostResponse == null || viewPostResponse.isEmpty()) {
+            log.debug("Post with id: {} not found", id);
+            return Optional.empty();
+        }
+        postRedisService.cachePostView(viewPostResponse.get(), viewVersion);
+        return viewPostResponse;
+    }
+
+    // Loads the posts with their authors and media in one query, so that cache misses do not cost a query each
+    private Map<Long, ViewPostResponse> loadAndCachePostViews(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        log.debug("{} posts not found in cache, loading them from database", ids.size());
+        var viewVersions = postRedisService.getViewVersions(ids);
+        var viewPostResponses = transactionTemplate.execute(status -> postRepository.findAllWithMediaByIdIn(ids)
+                .stream()
+                .map(post -> postMapper.toViewPostResponse(post, getViewPostMediaResponseList(post)))
+                .toList());
+        if (viewPostResponses == null) {
+            return Map.of();
+        }
+
+        var postViews = new HashMap<Long, ViewPostResponse>();
+        viewPostResponses.forEach(viewPostResponse -> {
+            postRedisService.cachePostView(viewPostResponse, viewVersions.get(viewPostResponse.getId()));
+            postViews.put(viewPostResponse.getId(), viewPostResponse);
+        });
+        return postViews;
+    }
+
+    // Likes that are not flushed to the database yet are only reflected in the cache
+    private void mergeLikeStates(List<ViewPostResponse> viewPostResponses) {
+        if (viewPostResponses.isEmpty()) {
+            return;
+        }
+        var userId = currentUserContext.getId();
+        var postIds = viewPostResponses.stream().map(ViewPostResponse::getId).toList();
+        var likeStates = likeRedisService.getLikeStates(postIds, userId);
+
+        var uncachedPostIds = postIds.stream().filter(postId -> !likeStates.containsKey(postId)).toList();
+        var likedPostIds = uncachedPostIds.isEmpty()
+                ? Set.<Long>of()
+                : Set.copyOf(likeRepository.findLikedPostIds(userId, uncachedPostIds));
+
+        viewPostResponses.forEach(viewPostResponse -> {
+            var likeState = likeStates.get(viewPostResponse.getId());
+            if (likeState != null) {
+                viewPostResponse.setLikes(likeState.getLikesCount());
+                viewPostResponse.setLikedByMe(likeState.isLikedByUser());
+            } else {
+                viewPostResponse.setLikedByMe(likedPostIds.contains(viewPostResponse.getId()));
+            }
+        });
+    }
+
+    /**
+     * Resolves which of the given posts the current user liked with one pipelined Redis call,
+     * falling back to a single query for posts whose likes are not cached.
+     */
+    private Set<Long> getPostIdsLikedByCurrentUser(List<Long> postIds) {
+        if (postIds.isEmpty()) {
+            return Set.of();
+        }
+        var userId = currentUserContext.getId();
+        var likeStates = likeRedisService.getLikeStates(postIds, userId);
+
+        var likedPostIds = new HashSet<Long>();
+        likeStates.forEach((postId, likeState) -> {
+            if (likeState.isLikedByUser()) {
+                likedPostIds.add(postId);
+            }
+        });
+
+        var uncachedPostIds = postIds.stream().filter(postId -> !likeStates.containsKey(postId)).toList();
+        if (!uncachedPostIds.isEmpty()) {
+            log.debug("Likes of {} posts not found in cache, checking them in database", uncachedPostIds.size());
+            likedPostIds.addAll(likeRepository.findLikedPostIds(userId, uncachedPostIds));
+        }
+        return likedPostIds;
     }
 
     private List<ViewPostMediaResponse> getViewPostMediaResponseList(Post post) {
@@ -104,44 +318,85 @@ public class PostService {
                 .orElseThrow(() -> new PostNotFoundException("Post not found"));
     }
 
+    public Post getPostReference(Long id) {
+        verifyPostExists(id);
+        return postRepository.getReferenceById(id);
+    }
+
+    public void verifyPostExists(Long id) {
+        log.debug("Checking if post with id: {} exists", id);
+        if (!postRepository.existsById(id)) {
+            log.warn("Post with id: {} not found", id);
+            throw new PostNotFoundException("Post not found");
+        }
+    }
+
     @Transactional
     public void deletePostById(Long id) {
         log.info("Deleting post with id: {}", id);
+        // Loaded anyway by deleteById, reading it first only adds the author needed for the profile version
+        postRepository.findById(id)
+                .ifPresent(post -> entityVersionRedisService.bumpProfiles(post.getUser().getUsername()));
         postRepository.deleteById(id);
+        eventPublisher.publishEvent(new PostDeletedEvent(this, id));
+        entityVersionRedisService.bumpPosts(List.of(id));
     }
 
-    @Transactional
     public void likePost(Long postId) {
-        var post = findPostById(postId);
-        var user = userService.getCurrentUser();
+        var userId = currentUserContext.getId();
+        log.info("User: {} is liking post with id: {}", currentUserContext.getUsername(), postId);
 
-        log.info("User: {} is liking post with id: {}", postId, user.getUsername());
+        var result = likeRedisService.like(postId, userId);
+        if (result == LikeRedisService.NOT_LOADED) {
+            loadLikes(postId);
+            result = likeRedisService.like(postId, userId);
+        }
+
+        if (result == 0) {
+            log.debug("Post with id: {} is already liked by user: {}", postId, currentUserContext.getUsername());
+            return;
+        }
+        eventPublisher.publishEvent(new PostLikeChangedEvent(this, postId, userId, 1));
+        entityVersionRedisService.bumpLike(postId, userId);
+    }
 
-        post.addLike(buildLike(postId, user));
+    public void unlikePost(Long postId) {
+        var userId = currentUserContext.getId();
+        log.info("User: {} is unliking post with id: {}", currentUserContext.getUsername(), postId);
+
+        var result = likeRedisService.unlike(postId, userId);
+        if (result == LikeRedisService.NOT_LOADED) {
+            loadLikes(postId);
+            result = likeRedisService.unlike(postId, userId);
+        }
 
-        postRepository.save(post);
+        if (result == 0) {
+            log.warn("User: {} tried to unlike post that was not liked", currentUserContext.getUsername());
+            throw new PostNotLikedException("Cannot unlike post that was not liked");
+        }
+        eventPublisher.publishEvent(new PostLikeChangedEvent(this, postId, userId, -1));
+        entityVersionRedisService.bumpLike(postId, userId);
     }
 
-    private Like buildLike(Long postId, User user) {
-        return Like.builder().id(new LikeId(user.getId(), postId)).user(user).build();
+    private void loadLikes(Long postId) {
+        log.debug("Likes of post with id: {} not found in cache, loading them from database", postId);
+        verifyPostExists(postId);
+        likeRedisService.cacheLikes(postId, likeRepository.findUserIdsByPostId(postId));
     }
 
     @Transactional
-    public void unlikePost(Long postId) {
-        var post = findPostById(postId);
-        var user = userService.getCurrentUser();
-        log.info("User: {} is unliking post with id: {}", postId, user.getUsername());
-
-        removeLike(post, user);
+    public void incrementCommentCount(Long postId) {
+        updateCommentCount(postId, 1);
+    }
 
-        postRepository.save(post);
+    @Transactional
+    public void decrementCommentCount(Long postId) {
+        updateCommentCount(postId, -1);
     }
 
-    private void removeLike(Post post, User user) {
-        var removed = post.getLikes().removeIf(like -> like.getUser().getId().equals(user.getId()));
-        if (!removed) {
-            log.warn("User: {} tried to unlike post that was not liked", user.getUsername());
-            throw new PostNotLikedException("Cannot unlike post that was not liked");
-        }
+    private void updateCommentCount(Long postId, int delta) {
+        postRepository.updateCommentCount(postId, delta);
+        eventPublisher.publishEvent(new PostCommentsCountChangedEvent(this, postId, delta));
+        entityVersionRedisService.bumpPosts(List.of(postId));
     }
 }
@@ -4,17 +4,23 @@ import com.amedvedev.mediaspace.exception.dto.GeneralErrorResponse;
 import com.amedvedev.mediaspace.exception.dto.ValidationErrorResponse;
 import com.amedvedev.mediaspace.post.comment.dto.AddCommentRequest;
 import com.amedvedev.mediaspace.post.comment.dto.EditCommentRequest;
+import com.amedvedev.mediaspace.post.comment.dto.ThreadCommentResponse;
+import com.amedvedev.mediaspace.post.comment.dto.ViewCommentRepliesResponse;
 import com.amedvedev.mediaspace.post.comment.dto.ViewCommentResponse;
 import com.amedvedev.mediaspace.post.comment.dto.ViewPostCommentsResponse;
+import com.amedvedev.mediaspace.streaming.NdjsonWriter;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
@@ -24,6 +30,7 @@ import org.springframework.web.bind.annotation.*;
 public class CommentController {
 
     private final CommentService commentService;
+    private final NdjsonWriter ndjsonWriter;
 
     @Operation(summary = "Add a comment to a post", description = "Adds a comment to a post.")
     @ApiResponses(value = {
@@ -93,12 +100,17 @@ public class CommentController {
         return commentService.editComment(commentId, editCommentRequest);
     }
 
-    @Operation(summary = "Get comments by post ID")
+    @Operation(summary = "Get comments by post ID",
+            description = "Returns a page of top-level comments of a post, each with its first nested replies.")
     @ApiResponses(value = {
             @ApiResponse(
                     responseCode = "200", description = "Comments retrieved successfully",
                     content = @Content(schema = @Schema(implementation = ViewPostCommentsResponse.class))
             ),
+            @ApiResponse(
+                    responseCode = "400", description = "Invalid cursor",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            ),
             @ApiResponse(
                     responseCode = "404", description = "Post not found",
                     content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
@@ -106,8 +118,60 @@ public class CommentController {
     })
     @GetMapping("/posts/{postId}")
     @ResponseStatus(HttpStatus.OK)
-    public ViewPostCommentsResponse getCommentsByPost(@PathVariable Long postId) {
-        return commentService.getCommentsByPostId(postId);
+    public ViewPostCommentsResponse getCommentsByPost(
+            @PathVariable Long postId,
+            @Parameter(description = "The cursor returned with the previous page")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "The number of top-level comments, at most 50")
+            @RequestParam(defaultValue = "20") int size) {
+        return commentService.getCommentsByPostId(postId, cursor, size);
+    }
+
+    @Operation(summary = "Stream all comments of a post",
+            description = "Writes comments of a post, replies included, as newline-delimited JSON thread by thread, "
+                    + "so a reply always comes after its parent and before the next thread. "
+                    + "At most 10000 threads are written.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200", description = "Comments streamed",
+                    content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = ThreadCommentResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "404", description = "Post not found",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            )
+    })
+    @GetMapping("/posts/{postId}/stream")
+    public void streamCommentsByPost(@PathVariable Long postId, HttpServletResponse response) {
+        commentService.streamCommentsOfPost(postId, comments -> ndjsonWriter.write(comments, response));
+    }
+
+    @Operation(summary = "Get replies to a comment",
+            description = "Loads the next page of replies to a comment, each with its first nested replies.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200", description = "Replies retrieved successfully",
+                    content = @Content(schema = @Schema(implementation = ViewCommentRepliesResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400", description = "Invalid cursor",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "404", description = "Comment not found",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            )
+    })
+    @GetMapping("/{commentId}/replies")
+    @ResponseStatus(HttpStatus.OK)
+    public ViewCommentRepliesResponse getReplies(
+            @PathVariable Long commentId,
+            @Parameter(description = "The cursor returned with the previous page")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "The number of replies, at most 50")
+            @RequestParam(defaultValue = "20") int size) {
+        return commentService.getRepliesByCommentId(commentId, cursor, size);
     }
 
     @Operation(summary = "Delete a comment")
@@ -0,0 +1,40 @@
+package com.amedvedev.mediaspace.post.comment;
+
+import com.amedvedev.mediaspace.post.comment.exception.InvalidCommentCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in a list of comments ordered by (created_at, id). Clients get it as an opaque string
+ * and pass it back to continue right after the last comment they received.
+ */
+public record CommentCursor(LocalDateTime createdAt, Long id) {
+
+    // Precedes every comment, comments cannot be created before the epoch
+    public static final CommentCursor FIRST = new CommentCursor(LocalDateTime.of(1970, 1, 1, 0, 0), 0L);
+
+    private static final String SEPARATOR = "|";
+
+    public static CommentCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return FIRST;
+        }
+        try {
+            var decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            var separatorIndex = decoded.indexOf(SEPARATOR);
+            return new CommentCursor(
+                    LocalDateTime.parse(decoded.substring(0, separatorIndex)),
+                    Long.valueOf(decoded.substring(separatorIndex + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new InvalidCommentCursorException("Invalid comments cursor");
+        }
+    }
+
+    public String encode() {
+        var value = createdAt + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
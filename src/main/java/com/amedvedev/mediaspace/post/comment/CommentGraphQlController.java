@@ -0,0 +1,51 @@
+package com.amedvedev.mediaspace.post.comment;
+
+import com.amedvedev.mediaspace.post.comment.dto.ViewCommentResponse;
+import com.amedvedev.mediaspace.post.dto.ViewPostResponse;
+import com.amedvedev.mediaspace.user.dto.UserDto;
+import com.amedvedev.mediaspace.user.service.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.graphql.data.method.annotation.BatchMapping;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+@Controller
+@RequiredArgsConstructor
+public class CommentGraphQlController {
+
+    private final CommentService commentService;
+    private final UserService userService;
+
+    @BatchMapping(typeName = "Post", field = "comments")
+    public Mono<Map<ViewPostResponse, List<ViewCommentResponse>>> comments(List<ViewPostResponse> posts) {
+        return Mono.fromSupplier(() -> {
+            var commentsByPostId = commentService.getFirstPagesOfComments(
+                    posts.stream().map(ViewPostResponse::getId).toList());
+            var comments = new HashMap<ViewPostResponse, List<ViewCommentResponse>>();
+            posts.forEach(post -> comments.put(post, commentsByPostId.get(post.getId())));
+            return comments;
+        });
+    }
+
+    // Replies are resolved along with top-level comments, so the authors of the whole thread are looked up at once
+    @BatchMapping(typeName = "Comment", field = "author")
+    public Mono<Map<ViewCommentResponse, UserDto>> author(List<ViewCommentResponse> comments) {
+        return Mono.fromSupplier(() -> {
+            var users = userService.getUserDtosByLowerCaseUsername(
+                    comments.stream().map(ViewCommentResponse::getAuthor).toList());
+            var authors = new HashMap<ViewCommentResponse, UserDto>();
+            comments.forEach(comment -> {
+                var author = users.get(comment.getAuthor().toLowerCase(Locale.ROOT));
+                if (author != null) {
+                    authors.put(comment, author);
+                }
+            });
+            return authors;
+        });
+    }
+}
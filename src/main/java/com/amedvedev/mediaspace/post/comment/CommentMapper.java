@@ -1,8 +1,11 @@
 package com.amedvedev.mediaspace.post.comment;
 
-import com.amedvedev.mediaspace.post.Post;
+import com.amedvedev.mediaspace.post.comment.dto.CachedComment;
+import com.amedvedev.mediaspace.post.comment.dto.ThreadCommentResponse;
+import com.amedvedev.mediaspace.post.comment.dto.ViewCommentRepliesResponse;
 import com.amedvedev.mediaspace.post.comment.dto.ViewCommentResponse;
 import com.amedvedev.mediaspace.post.comment.dto.ViewPostCommentsResponse;
+import com.amedvedev.mediaspace.post.comment.projection.CommentTreeProjection;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Named;
@@ -15,21 +18,33 @@ public interface CommentMapper {
     @Mapping(source="user.username", target = "author")
     @Mapping(target="nestedComments", qualifiedByName = "commentsToDto")
     @Mapping(source="createdAt", target = "writtenAt")
+    @Mapping(target = "repliesCount", ignore = true)
     ViewCommentResponse toViewCommentResponse(Comment comment);
 
-    @Mapping(target = "comments", qualifiedByName = "mapComments")
-    ViewPostCommentsResponse toViewPostCommentsResponse(List<Comment> comments, Long postId);
+    @Mapping(source = "author", target = "author")
+    @Mapping(source = "comment.nestedComments", target = "nestedComments", qualifiedByName = "commentsToDto")
+    @Mapping(source = "comment.createdAt", target = "writtenAt")
+    @Mapping(target = "repliesCount", ignore = true)
+    ViewCommentResponse toViewCommentResponse(Comment comment, String author);
+
+    CachedComment toCachedComment(CommentTreeProjection commentTreeNode);
+
+    @Mapping(source = "createdAt", target = "writtenAt")
+    ThreadCommentResponse toThreadCommentResponse(CommentTreeProjection commentTreeNode);
+
+    @Mapping(source = "createdAt", target = "writtenAt")
+    @Mapping(target = "nestedComments", expression = "java(new java.util.ArrayList<>())")
+    ViewCommentResponse toViewCommentResponse(CachedComment cachedComment);
+
+    ViewPostCommentsResponse toViewPostCommentsResponse(Long postId, List<ViewCommentResponse> comments,
+                                                        String nextCursor);
+
+    @Mapping(source = "comments", target = "replies")
+    ViewCommentRepliesResponse toViewCommentRepliesResponse(Long commentId, List<ViewCommentResponse> comments,
+                                                            String nextCursor);
 
     @Named("commentsToDto")
     default List<ViewCommentResponse> commentsToDto(List<Comment> comments) {
         return comments.stream().map(this::toViewCommentResponse).toList();
     }
-
-    @Named("mapComments")
-    default List<ViewCommentResponse> mapComments(List<Comment> comments) {
-        return comments.stream()
-                .map(this::toViewCommentResponse)
-//                .sorted(Comparator.comparing(CommentDto::getWrittenAt).reversed())
-                .toList();
-    }
 }
@@ -0,0 +1,337 @@
+package com.amedvedev.mediaspace.post.comment;
+
+import com.amedvedev.mediaspace.post.comment.dto.CachedComment;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Caches the first page of comments of a post as a list of {@link CachedComment} entries, in which every comment
+ * follows its parent. New comments, edits and deletes are applied to the cached page in place by Lua scripts,
+ * so that the page does not have to be read from the database again after every write.
+ * A change that would bring in a comment which is not cached, e.g. deleting a top-level comment of a full page,
+ * drops the page instead.
+ * <p>
+ * A page loaded from the database is only cached if no change started since its version was read and none is still
+ * in progress. Otherwise the load may have missed a change that was already applied to the cache, or may include
+ * a change that is yet to be applied, which would then count it twice.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CommentRedisService {
+
+    private static final String POST_PREFIX = "post:";
+    private static final String COMMENTS_SUFFIX = ":comments";
+    private static final String COMMENTS_VERSION_SUFFIX = ":comments_version";
+    private static final String COMMENTS_CHANGES_SUFFIX = ":comments_changes";
+
+    private static final Duration FIRST_PAGE_TTL = Duration.ofMinutes(30);
+    // Only outlives the transaction by far, so that a crashed instance does not keep the page uncached for long
+    private static final Duration CHANGE_IN_PROGRESS_TTL = Duration.ofMinutes(1);
+
+    // Does not overwrite a page that is already cached, as it may include changes the caller has not seen
+    private static final RedisScript<Long> CACHE_PAGE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1
+                    or tonumber(redis.call('GET', KEYS[2]) or '0') ~= tonumber(ARGV[2])
+                    or tonumber(redis.call('GET', KEYS[3]) or '0') > 0 then
+                return 0
+            end
+            redis.call('RPUSH', KEYS[1], unpack(ARGV, 3))
+            redis.call('PEXPIRE', KEYS[1], ARGV[1])
+            return 1
+            """, Long.class);
+
+    private static final RedisScript<Long> BEGIN_CHANGE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('INCR', KEYS[1])
+            redis.call('PEXPIRE', KEYS[1], ARGV[1])
+            redis.call('INCR', KEYS[2])
+            redis.call('PEXPIRE', KEYS[2], ARGV[2])
+            return 1
+            """, Long.class);
+
+    private static final RedisScript<Long> END_CHANGE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('DECR', KEYS[1]) <= 0 then
+                redis.call('DEL', KEYS[1])
+            end
+            return 1
+            """, Long.class);
+
+    // Keys come in pairs of the page and its version
+    private static final RedisScript<Long> DELETE_PAGES_SCRIPT = new DefaultRedisScript<>("""
+            for i = 1, #KEYS, 2 do
+                redis.call('DEL', KEYS[i])
+                redis.call('INCR', KEYS[i + 1])
+                redis.call('PEXPIRE', KEYS[i + 1], ARGV[1])
+            end
+            return #KEYS / 2
+            """, Long.class);
+
+    private static final RedisScript<Long> ADD_COMMENT_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                return 0
+            end
+            local comment = cjson.decode(ARGV[1])
+            local page_size, replies_limit, max_depth = tonumber(ARGV[2]), tonumber(ARGV[3]), tonumber(ARGV[4])
+            local top_level, parent_index, parent = 0, nil, nil
+            for index, raw in ipairs(redis.call('LRANGE', KEYS[1], 0, -1)) do
+                local entry = cjson.decode(raw)
+                if entry.i == comment.i then
+                    return 0
+                end
+                if entry.d == 0 then
+                    top_level = top_level + 1
+                end
+                if entry.i == comment.p then
+                    parent_index, parent = index, entry
+                end
+            end
+            if comment.p == nil then
+                -- A full page ends before the new comment, it belongs to one of the next pages
+                if top_level >= page_size then
+                    return 0
+                end
+                comment.d = 0
+                redis.call('RPUSH', KEYS[1], cjson.encode(comment))
+                return 1
+            end
+            if parent == nil then
+                return 0
+            end
+            -- Replies are shown oldest first, so the new one is shown only while the parent has less than the limit
+            if parent.r < replies_limit and parent.d < max_depth then
+                comment.d = parent.d + 1
+                redis.call('RPUSH', KEYS[1], cjson.encode(comment))
+            end
+            parent.r = parent.r + 1
+            redis.call('LSET', KEYS[1], parent_index - 1, cjson.encode(parent))
+            return 1
+            """, Long.class);
+
+    private static final RedisScript<Long> EDIT_COMMENT_SCRIPT = new DefaultRedisScript<>("""
+            for index, raw in ipairs(redis.call('LRANGE', KEYS[1], 0, -1)) do
+                local entry = cjson.decode(raw)
+                if entry.i == ARGV[1] then
+                    entry.b = ARGV[2]
+                    redis.call('LSET', KEYS[1], index - 1, cjson.encode(entry))
+                    return 1
+                end
+            end
+            return 0
+            """, Long.class);
+
+    private static final RedisScript<Long> DELETE_COMMENT_SCRIPT = new DefaultRedisScript<>("""
+            local page_size, replies_limit = tonumber(ARGV[3]), tonumber(ARGV[4])
+            local raws = redis.call('LRANGE', KEYS[1], 0, -1)
+            local entries, top_level, target, parent_index = {}, 0, nil, nil
+            for index, raw in ipairs(raws) do
+                local entry = cjson.decode(raw)
+                entries[index] = entry
+                if entry.d == 0 then
+                    top_level = top_level + 1
+                end
+                if entry.i == ARGV[1] then
+                    target = entry
+                end
+                if entry.i == ARGV[2] then
+                    parent_index = index
+                end
+            end
+            if parent_index then
+                local parent = entries[parent_index]
+                -- The oldest hidden reply would have to take the place of the deleted one
+                if target and parent.r > replies_limit then
+                    redis.call('DEL', KEYS[1])
+                    return 1
+                end
+                parent.r = parent.r - 1
+                redis.call('LSET', KEYS[1], parent_index - 1, cjson.encode(parent))
+            end
+            if target == nil then
+                return 0
+            end
+            -- The first comment of the next page would have to move to this one
+            if target.d == 0 and top_level >= page_size then
+                redis.call('DEL', KEYS[1])
+                return 1
+            end
+            -- Replies of a deleted comment are not shown either, they always come after their parent
+            local removed = {[target.i] = true}
+            for index, entry in ipairs(entries) do
+                if removed[entry.i] or (entry.p and removed[entry.p]) then
+                    removed[entry.i] = true
+                    redis.call('LREM', KEYS[1], 1, raws[index])
+                end
+            end
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+
+    public Optional<List<CachedComment>> getFirstPage(Long postId) {
+        log.debug("Retrieving cached first page of comments of post with id: {}", postId);
+        var entries = stringRedisTemplate.opsForList().range(constructCommentsKey(postId), 0, -1);
+        if (entries == null || entries.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(entries.stream().map(this::deserialize).toList());
+    }
+
+    /**
+     * Reads the cached first pages of the given posts with one pipelined call. Posts without a cached page are absent.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<Long, List<CachedComment>> getFirstPages(List<Long> postIds) {
+        if (postIds.isEmpty()) {
+            return Map.of();
+        }
+        log.debug("Retrieving cached first pages of comments of {} posts", postIds.size());
+        var results = stringRedisTemplate.executePipelined((RedisCallback<?>) connection -> {
+            postIds.forEach(postId ->
+                    connection.listCommands().lRange(constructCommentsKey(postId).getBytes(), 0, -1));
+            return null;
+        });
+
+        var pages = new HashMap<Long, List<CachedComment>>();
+        for (int i = 0; i < postIds.size(); i++) {
+            var entries = (List<String>) results.get(i);
+            if (entries != null && !entries.isEmpty()) {
+                pages.put(postIds.get(i), entries.stream().map(this::deserialize).toList());
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Returns the versions of the first pages of the given posts, to be read before the pages are loaded for
+     * {@link #cacheFirstPage}. Posts without a version get 0.
+     */
+    public Map<Long, Long> getFirstPageVersions(List<Long> postIds) {
+        if (postIds.isEmpty()) {
+            return Map.of();
+        }
+        var values = stringRedisTemplate.opsForValue()
+                .multiGet(postIds.stream().map(this::constructCommentsVersionKey).toList());
+        var versions = new HashMap<Long, Long>();
+        for (int i = 0; i < postIds.size(); i++) {
+            var value = values == null ? null : values.get(i);
+            versions.put(postIds.get(i), value == null ? 0L : Long.parseLong(value));
+        }
+        return versions;
+    }
+
+    public void cacheFirstPage(Long postId, List<CachedComment> comments, long version) {
+        log.debug("Caching first page of {} comments of post with id: {}", comments.size(), postId);
+        var args = new ArrayList<String>(comments.size() + 2);
+        args.add(String.valueOf(FIRST_PAGE_TTL.toMillis()));
+        args.add(String.valueOf(version));
+        comments.forEach(comment -> args.add(serialize(comment)));
+        var keys = List.of(constructCommentsKey(postId), constructCommentsVersionKey(postId),
+                constructCommentsChangesKey(postId));
+        var cached = stringRedisTemplate.execute(CACHE_PAGE_SCRIPT, keys, args.toArray());
+        if (cached == null || cached == 0) {
+            log.debug("First page of comments of post with id: {} is cached or changing, not caching it", postId);
+        }
+    }
+
+    /**
+     * Marks the first page of the post as changing until the current transaction completes. The after-commit
+     * listeners applying the change to the cached page run before that, as synchronizations without an order run last.
+     */
+    public void beginFirstPageChange(Long postId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            log.warn("Changing comments of post with id: {} outside of a transaction", postId);
+            return;
+        }
+        var changesKey = constructCommentsChangesKey(postId);
+        stringRedisTemplate.execute(BEGIN_CHANGE_SCRIPT, List.of(constructCommentsVersionKey(postId), changesKey),
+                String.valueOf(FIRST_PAGE_TTL.toMillis()), String.valueOf(CHANGE_IN_PROGRESS_TTL.toMillis()));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    stringRedisTemplate.execute(END_CHANGE_SCRIPT, List.of(changesKey));
+                } catch (Exception e) {
+                    // The marker expires on its own, the page is just not cached until then
+                    log.error("Failed to end change of comments of post with id: {}: {}", postId, e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    public void addComment(Long postId, CachedComment comment, int pageSize, int repliesLimit, int maxDepth) {
+        log.debug("Adding comment with id: {} to cached comments of post with id: {}", comment.id(), postId);
+        stringRedisTemplate.execute(ADD_COMMENT_SCRIPT, List.of(constructCommentsKey(postId)),
+                serialize(comment), String.valueOf(pageSize), String.valueOf(repliesLimit), String.valueOf(maxDepth));
+    }
+
+    public void editComment(Long postId, Long commentId, String body) {
+        log.debug("Editing comment with id: {} in cached comments of post with id: {}", commentId, postId);
+        stringRedisTemplate.execute(EDIT_COMMENT_SCRIPT, List.of(constructCommentsKey(postId)),
+                commentId.toString(), body);
+    }
+
+    public void deleteComment(Long postId, Long commentId, Long parentId, int pageSize, int repliesLimit) {
+        log.debug("Deleting comment with id: {} from cached comments of post with id: {}", commentId, postId);
+        stringRedisTemplate.execute(DELETE_COMMENT_SCRIPT, List.of(constructCommentsKey(postId)),
+                commentId.toString(), parentId == null ? "" : parentId.toString(),
+                String.valueOf(pageSize), String.valueOf(repliesLimit));
+    }
+
+    public void deleteFirstPages(Collection<Long> postIds) {
+        if (postIds.isEmpty()) {
+            return;
+        }
+        log.debug("Deleting cached comments of {} posts", postIds.size());
+        var keys = postIds.stream()
+                .flatMap(postId -> Stream.of(constructCommentsKey(postId), constructCommentsVersionKey(postId)))
+                .toList();
+        stringRedisTemplate.execute(DELETE_PAGES_SCRIPT, keys, String.valueOf(FIRST_PAGE_TTL.toMillis()));
+    }
+
+    private String serialize(CachedComment comment) {
+        try {
+            return objectMapper.writeValueAsString(comment);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize cached comment with id: " + comment.id(), e);
+        }
+    }
+
+    private CachedComment deserialize(String entry) {
+        try {
+            return objectMapper.readValue(entry, CachedComment.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to deserialize cached comment: " + entry, e);
+        }
+    }
+
+    private String constructCommentsKey(Long postId) {
+        return POST_PREFIX + postId + COMMENTS_SUFFIX;
+    }
+
+    private String constructCommentsVersionKey(Long postId) {
+        return POST_PREFIX + postId + COMMENTS_VERSION_SUFFIX;
+    }
+
+    private String constructCommentsChangesKey(Long postId) {
+        return POST_PREFIX + postId + COMMENTS_CHANGES_SUFFIX;
+    }
+}
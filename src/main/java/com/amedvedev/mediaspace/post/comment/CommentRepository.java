@@ -1,10 +1,162 @@
 package com.amedvedev.mediaspace.post.comment;
 
+import com.amedvedev.mediaspace.post.comment.projection.CommentTreeProjection;
+import com.amedvedev.mediaspace.post.comment.projection.PostCommentTreeProjection;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface CommentRepository extends JpaRepository<Comment, Long> {
 
-    List<Comment> findAllByPostId(Long postId);
+    // Expands every comment of the page with its first replies, down to a bounded depth. Rows are ordered so that
+    // a comment always comes after its parent and siblings keep their (created_at, id) order.
+    String COMMENT_TREE_EXPANSION = """
+            UNION ALL
+            SELECT r.id, r.parent_comment_id, r._user_id, r.body, r.created_at, t.depth + 1
+            FROM tree t
+            CROSS JOIN LATERAL (
+                SELECT c.id, c.parent_comment_id, c._user_id, c.body, c.created_at
+                FROM comment c
+                WHERE c.parent_comment_id = t.id AND c.is_deleted <> TRUE
+                ORDER BY c.created_at, c.id
+                LIMIT :repliesLimit
+            ) r
+            WHERE t.depth < :maxDepth
+        )
+        SELECT t.id, t.parent_comment_id AS "parentId", t.body, u.username AS author, t.created_at AS "createdAt",
+               t.depth, (SELECT count(*) FROM comment c
+                         WHERE c.parent_comment_id = t.id AND c.is_deleted <> TRUE) AS "repliesCount"
+        FROM tree t
+        JOIN _user u ON u.id = t._user_id
+        ORDER BY t.depth, t.created_at, t.id
+        """;
+
+    @Query(value = """
+            WITH RECURSIVE tree AS (
+                (SELECT c.id, c.parent_comment_id, c._user_id, c.body, c.created_at, 0 AS depth
+                 FROM comment c
+                 WHERE c.post_id = :postId AND c.parent_comment_id IS NULL AND c.is_deleted <> TRUE
+                   AND (c.created_at, c.id) > (:afterCreatedAt, :afterId)
+                 ORDER BY c.created_at, c.id
+                 LIMIT :limit)
+            """ + COMMENT_TREE_EXPANSION, nativeQuery = true)
+    List<CommentTreeProjection> findCommentTreesOfPost(@Param("postId") Long postId,
+                                                       @Param("afterCreatedAt") LocalDateTime afterCreatedAt,
+                                                       @Param("afterId") Long afterId,
+                                                       @Param("limit") int limit,
+                                                       @Param("repliesLimit") int repliesLimit,
+                                                       @Param("maxDepth") int maxDepth);
+
+    // The first page of every given post: top-level comments are ranked within their post, and the root post is
+    // carried down to the replies, as only top-level comments are linked to the post
+    @Query(value = """
+            WITH RECURSIVE tree AS (
+                SELECT r.post_id, r.id, r.parent_comment_id, r._user_id, r.body, r.created_at, 0 AS depth
+                FROM (
+                    SELECT c.post_id, c.id, c.parent_comment_id, c._user_id, c.body, c.created_at,
+                           row_number() OVER (PARTITION BY c.post_id ORDER BY c.created_at, c.id) AS row_rank
+                    FROM comment c
+                    WHERE c.post_id IN (:postIds) AND c.parent_comment_id IS NULL AND c.is_deleted <> TRUE
+                ) r
+                WHERE r.row_rank <= :limit
+                UNION ALL
+                SELECT t.post_id, r.id, r.parent_comment_id, r._user_id, r.body, r.created_at, t.depth + 1
+                FROM tree t
+                CROSS JOIN LATERAL (
+                    SELECT c.id, c.parent_comment_id, c._user_id, c.body, c.created_at
+                    FROM comment c
+                    WHERE c.parent_comment_id = t.id AND c.is_deleted <> TRUE
+                    ORDER BY c.created_at, c.id
+                    LIMIT :repliesLimit
+                ) r
+                WHERE t.depth < :maxDepth
+            )
+            SELECT t.post_id AS "postId", t.id, t.parent_comment_id AS "parentId", t.body, u.username AS author,
+                   t.created_at AS "createdAt", t.depth,
+                   (SELECT count(*) FROM comment c
+                    WHERE c.parent_comment_id = t.id AND c.is_deleted <> TRUE) AS "repliesCount"
+            FROM tree t
+            JOIN _user u ON u.id = t._user_id
+            ORDER BY t.post_id, t.depth, t.created_at, t.id
+            """, nativeQuery = true)
+    List<PostCommentTreeProjection> findFirstCommentTreesOfPosts(@Param("postIds") Collection<Long> postIds,
+                                                                 @Param("limit") int limit,
+                                                                 @Param("repliesLimit") int repliesLimit,
+                                                                 @Param("maxDepth") int maxDepth);
+
+    @Query(value = """
+            WITH RECURSIVE tree AS (
+                (SELECT c.id, c.parent_comment_id, c._user_id, c.body, c.created_at, 0 AS depth
+                 FROM comment c
+                 WHERE c.parent_comment_id = :commentId AND c.is_deleted <> TRUE
+                   AND (c.created_at, c.id) > (:afterCreatedAt, :afterId)
+                 ORDER BY c.created_at, c.id
+                 LIMIT :limit)
+            """ + COMMENT_TREE_EXPANSION, nativeQuery = true)
+    List<CommentTreeProjection> findReplyTreesOfComment(@Param("commentId") Long commentId,
+                                                        @Param("afterCreatedAt") LocalDateTime afterCreatedAt,
+                                                        @Param("afterId") Long afterId,
+                                                        @Param("limit") int limit,
+                                                        @Param("repliesLimit") int repliesLimit,
+                                                        @Param("maxDepth") int maxDepth);
+
+    @Query(value = """
+            WITH RECURSIVE thread AS (
+                SELECT c.id, c.parent_comment_id, c.post_id FROM comment c WHERE c.id = :commentId
+                UNION ALL
+                SELECT c.id, c.parent_comment_id, c.post_id FROM comment c JOIN thread t ON c.id = t.parent_comment_id
+            )
+            SELECT post_id FROM thread WHERE post_id IS NOT NULL LIMIT 1
+            """, nativeQuery = true)
+    Optional<Long> findPostIdOfThread(@Param("commentId") Long commentId);
+
+    // Posts whose cached comments may show the user, including replies that are not linked to the post directly
+    @Query(value = """
+            WITH RECURSIVE thread AS (
+                SELECT c.id, c.parent_comment_id, c.post_id FROM comment c WHERE c._user_id = :userId
+                UNION
+                SELECT c.id, c.parent_comment_id, c.post_id FROM comment c JOIN thread t ON c.id = t.parent_comment_id
+            )
+            SELECT DISTINCT post_id FROM thread WHERE post_id IS NOT NULL
+            """, nativeQuery = true)
+    List<Long> findPostIdsOfThreadsWithUser(@Param("userId") Long userId);
+
+    // Whole threads of the first top-level comments, read as they are sent. Every row carries the (created_at, id)
+    // pairs of its ancestors and itself, ordering by them puts every reply after its parent and inside its own
+    // thread. The timeout is in seconds and keeps a slow stream from holding its connection for long.
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "100"),
+            @QueryHint(name = HibernateHints.HINT_TIMEOUT, value = "30")
+    })
+    @Query(value = """
+            WITH RECURSIVE tree AS (
+                (SELECT c.id, c.parent_comment_id, c._user_id, c.body, c.created_at, 0 AS depth,
+                        ARRAY[CAST(extract(epoch FROM c.created_at) * 1000000 AS bigint), c.id] AS path
+                 FROM comment c
+                 WHERE c.post_id = :postId AND c.parent_comment_id IS NULL AND c.is_deleted <> TRUE
+                 ORDER BY c.created_at, c.id
+                 LIMIT :limit)
+                UNION ALL
+                SELECT c.id, c.parent_comment_id, c._user_id, c.body, c.created_at, t.depth + 1,
+                       t.path || ARRAY[CAST(extract(epoch FROM c.created_at) * 1000000 AS bigint), c.id]
+                FROM comment c
+                JOIN tree t ON c.parent_comment_id = t.id
+                WHERE c.is_deleted <> TRUE
+            )
+            SELECT t.id, t.parent_comment_id AS "parentId", t.body, u.username AS author, t.created_at AS "createdAt",
+                   t.depth
+            FROM tree t
+            JOIN _user u ON u.id = t._user_id
+            ORDER BY t.path
+            """, nativeQuery = true)
+    Stream<CommentTreeProjection> streamThreadsOfPost(@Param("postId") Long postId, @Param("limit") int limit);
 }
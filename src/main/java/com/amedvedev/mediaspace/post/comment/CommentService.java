@@ -4,46 +4,73 @@ import com.amedvedev.mediaspace.exception.ForbiddenActionException;
 import com.amedvedev.mediaspace.post.PostRepository;
 import com.amedvedev.mediaspace.post.PostService;
 import com.amedvedev.mediaspace.post.comment.dto.AddCommentRequest;
+import com.amedvedev.mediaspace.post.comment.dto.CachedComment;
 import com.amedvedev.mediaspace.post.comment.dto.EditCommentRequest;
+import com.amedvedev.mediaspace.post.comment.dto.ThreadCommentResponse;
+import com.amedvedev.mediaspace.post.comment.dto.ViewCommentRepliesResponse;
 import com.amedvedev.mediaspace.post.comment.dto.ViewCommentResponse;
 import com.amedvedev.mediaspace.post.comment.dto.ViewPostCommentsResponse;
 import com.amedvedev.mediaspace.post.comment.exception.CommentNotFoundException;
-import com.amedvedev.mediaspace.user.service.UserService;
+import com.amedvedev.mediaspace.post.comment.event.CommentAddedEvent;
+import com.amedvedev.mediaspace.post.comment.event.CommentDeletedEvent;
+import com.amedvedev.mediaspace.post.comment.event.CommentEditedEvent;
+import com.amedvedev.mediaspace.post.comment.projection.PostCommentTreeProjection;
+import com.amedvedev.mediaspace.streaming.Chunks;
+import com.amedvedev.mediaspace.user.service.CurrentUserContext;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class CommentService {
 
+    public static final int CACHED_PAGE_SIZE = 20;
+    public static final int REPLIES_PREVIEW_SIZE = 3;
+    public static final int MAX_REPLIES_DEPTH = 2;
+
+    private static final int MAX_PAGE_SIZE = 50;
+    private static final int STREAM_CHUNK_SIZE = 100;
+    private static final int MAX_STREAMED_THREADS = 10_000;
+
     private final PostService postService;
-    private final UserService userService;
+    private final CurrentUserContext currentUserContext;
     private final CommentRepository commentRepository;
     private final CommentMapper commentMapper;
     private final PostRepository postRepository;
+    private final CommentRedisService commentRedisService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional
     public ViewCommentResponse addComment(Long postId, AddCommentRequest request) {
         log.info("Adding comment to a post with postId: {}", postId);
 
-        var post = postService.findPostById(postId);
-        var user = userService.getCurrentUser();
+        var post = postService.getPostReference(postId);
         var body = request.getBody();
 
         var comment = Comment.builder()
-                .user(user)
+                .user(currentUserContext.getReference())
                 .post(post)
                 .body(body)
                 .build();
 
         var savedComment = commentRepository.save(comment);
+        postService.incrementCommentCount(postId);
+        publishCommentAdded(postId, savedComment, null);
 
-        return commentMapper.toViewCommentResponse(savedComment);
+        return commentMapper.toViewCommentResponse(savedComment, currentUserContext.getUsername());
     }
 
     @Transactional
@@ -62,26 +89,153 @@ public class CommentService {
 
         comment.setBody(newCommentBody);
         var updatedComment = commentRepository.save(comment);
+        var postId = getPostIdOfComment(comment);
+        publishFirstPageChange(postId, new CommentEditedEvent(this, postId, commentId, newCommentBody));
 
         return commentMapper.toViewCommentResponse(updatedComment);
     }
 
-    @Transactional(readOnly = true)
-    public ViewPostCommentsResponse getCommentsByPostId(Long postId) {
+    public ViewPostCommentsResponse getCommentsByPostId(Long postId, String cursor, int size) {
         log.info("Fetching comments for postId: {}", postId);
 
-        log.debug("Checking if post exists. PostId: {}", postId);
-        var post = postService.findPostById(postId);
+        var after = CommentCursor.decode(cursor);
+        var pageSize = limitPageSize(size);
+
+        var isFirstPage = CommentCursor.FIRST.equals(after);
+        var commentTreeNodes = isFirstPage && pageSize == CACHED_PAGE_SIZE
+                ? getCachedFirstPageOfComments(postId)
+                : findCommentTreesOfPost(postId, after, pageSize);
+        var comments = assembleCommentTrees(commentTreeNodes);
 
-        log.debug("Fetching comments for postId: {}", postId);
-        var comments = commentRepository.findAllByPostId(postId);
+        if (isFirstPage) {
+            checkIfPostHasComments(postId, comments);
+        }
+
+        return commentMapper.toViewPostCommentsResponse(postId, comments, getNextCursor(comments, pageSize));
+    }
+
+    /**
+     * Returns the first page of comments of every given post, reading all cached pages with one pipelined call.
+     * Pages that are not cached are loaded with one query and cached one post at a time. Posts without comments get
+     * an empty list.
+     */
+    public Map<Long, List<ViewCommentResponse>> getFirstPagesOfComments(List<Long> postIds) {
+        log.info("Fetching first pages of comments of {} posts", postIds.size());
+        var distinctPostIds = postIds.stream().distinct().toList();
+        var pages = new HashMap<>(commentRedisService.getFirstPages(distinctPostIds));
+        var versions = commentRedisService.getFirstPageVersions(
+                distinctPostIds.stream().filter(postId -> !pages.containsKey(postId)).toList());
+        var loadedPages = findFirstCommentTreesOfPosts(versions.keySet());
+
+        versions.forEach((postId, version) -> {
+            var commentTreeNodes = loadedPages.getOrDefault(postId, List.of());
+            if (!commentTreeNodes.isEmpty()) {
+                commentRedisService.cacheFirstPage(postId, commentTreeNodes, version);
+            }
+            pages.put(postId, commentTreeNodes);
+        });
+
+        var commentsByPostId = new HashMap<Long, List<ViewCommentResponse>>();
+        pages.forEach((postId, commentTreeNodes) -> commentsByPostId.put(postId, assembleCommentTrees(commentTreeNodes)));
+        return commentsByPostId;
+    }
+
+    @Transactional(readOnly = true)
+    public ViewCommentRepliesResponse getRepliesByCommentId(Long commentId, String cursor, int size) {
+        log.info("Fetching replies to comment with id: {}", commentId);
+        verifyCommentExists(commentId);
 
-        checkIfPostHasComments(postId, comments);
+        var after = CommentCursor.decode(cursor);
+        var pageSize = limitPageSize(size);
+
+        log.debug("Fetching reply trees for commentId: {} after {}", commentId, after);
+        var replies = assembleCommentTrees(commentRepository.findReplyTreesOfComment(
+                        commentId, after.createdAt(), after.id(), pageSize, REPLIES_PREVIEW_SIZE, MAX_REPLIES_DEPTH)
+                .stream()
+                .map(commentMapper::toCachedComment)
+                .toList());
+
+        return commentMapper.toViewCommentRepliesResponse(commentId, replies, getNextCursor(replies, pageSize));
+    }
+
+    /**
+     * Hands every comment of the post to the consumer in chunks while they are read from the database, thread by
+     * thread, so every reply comes after its parent. At most {@link #MAX_STREAMED_THREADS} threads are read.
+     */
+    @Transactional(readOnly = true)
+    public void streamCommentsOfPost(Long postId, Consumer<Stream<List<ThreadCommentResponse>>> consumer) {
+        log.info("Streaming comments of post with id: {}", postId);
+        postService.verifyPostExists(postId);
+
+        try (var comments = commentRepository.streamThreadsOfPost(postId, MAX_STREAMED_THREADS)) {
+            consumer.accept(Chunks.of(comments, STREAM_CHUNK_SIZE)
+                    .map(chunk -> chunk.stream().map(commentMapper::toThreadCommentResponse).toList()));
+        }
+    }
+
+    private int limitPageSize(int size) {
+        return Math.clamp(size, 1, MAX_PAGE_SIZE);
+    }
+
+    private List<CachedComment> getCachedFirstPageOfComments(Long postId) {
+        return commentRedisService.getFirstPage(postId).orElseGet(() -> {
+            var version = commentRedisService.getFirstPageVersions(List.of(postId)).get(postId);
+            var commentTreeNodes = findCommentTreesOfPost(postId, CommentCursor.FIRST, CACHED_PAGE_SIZE);
+            if (!commentTreeNodes.isEmpty()) {
+                commentRedisService.cacheFirstPage(postId, commentTreeNodes, version);
+            }
+            return commentTreeNodes;
+        });
+    }
 
-        return commentMapper.toViewPostCommentsResponse(comments, postId);
+    private List<CachedComment> findCommentTreesOfPost(Long postId, CommentCursor after, int pageSize) {
+        postService.verifyPostExists(postId);
+        log.debug("Fetching comment trees for postId: {} after {}", postId, after);
+        return commentRepository.findCommentTreesOfPost(
+                        postId, after.createdAt(), after.id(), pageSize, REPLIES_PREVIEW_SIZE, MAX_REPLIES_DEPTH)
+                .stream()
+                .map(commentMapper::toCachedComment)
+                .toList();
     }
 
-    private void checkIfPostHasComments(Long postId, List<Comment> comments) {
+    private Map<Long, List<CachedComment>> findFirstCommentTreesOfPosts(Collection<Long> postIds) {
+        if (postIds.isEmpty()) {
+            return Map.of();
+        }
+        log.debug("Fetching first pages of comment trees of {} posts", postIds.size());
+        return commentRepository.findFirstCommentTreesOfPosts(
+                        postIds, CACHED_PAGE_SIZE, REPLIES_PREVIEW_SIZE, MAX_REPLIES_DEPTH)
+                .stream()
+                .collect(Collectors.groupingBy(PostCommentTreeProjection::getPostId,
+                        Collectors.mapping(commentMapper::toCachedComment, Collectors.toList())));
+    }
+
+    // Every comment comes after its parent, so the parent of a reply is already assembled when the reply is reached
+    private List<ViewCommentResponse> assembleCommentTrees(List<CachedComment> commentTreeNodes) {
+        var commentsById = new HashMap<Long, ViewCommentResponse>();
+        var topLevelComments = new ArrayList<ViewCommentResponse>();
+
+        commentTreeNodes.forEach(node -> {
+            var comment = commentMapper.toViewCommentResponse(node);
+            commentsById.put(comment.getId(), comment);
+            if (node.depth() == 0) {
+                topLevelComments.add(comment);
+            } else {
+                commentsById.get(node.parentId()).getNestedComments().add(comment);
+            }
+        });
+        return topLevelComments;
+    }
+
+    private String getNextCursor(List<ViewCommentResponse> comments, int pageSize) {
+        if (comments.size() < pageSize) {
+            return null;
+        }
+        var last = comments.getLast();
+        return new CommentCursor(last.getWrittenAt(), last.getId()).encode();
+    }
+
+    private void checkIfPostHasComments(Long postId, List<ViewCommentResponse> comments) {
         if (comments.isEmpty()) {
             log.warn("No comments found for postId: {}", postId);
             throw new CommentNotFoundException("No comments found for post");
@@ -97,17 +251,55 @@ public class CommentService {
 
         comment.setDeleted(true);
         commentRepository.save(comment);
+
+        if (comment.getPost() != null) {
+            postService.decrementCommentCount(comment.getPost().getId());
+        }
+
+        var parentId = comment.getParentComment() == null ? null : comment.getParentComment().getId();
+        var postId = getPostIdOfComment(comment);
+        publishFirstPageChange(postId, new CommentDeletedEvent(this, postId, commentId, parentId));
+    }
+
+    // Replies created through the API are linked to their parent comment only, the post is found from the thread root
+    private Long getPostIdOfComment(Comment comment) {
+        if (comment.getPost() != null) {
+            return comment.getPost().getId();
+        }
+        return commentRepository.findPostIdOfThread(comment.getId()).orElse(null);
+    }
+
+    private void publishCommentAdded(Long postId, Comment comment, Long parentId) {
+        if (postId == null) {
+            return;
+        }
+        var cachedComment = new CachedComment(comment.getId(), parentId, comment.getBody(),
+                currentUserContext.getUsername(), comment.getCreatedAt(), 0, 0);
+        publishFirstPageChange(postId, new CommentAddedEvent(this, postId, cachedComment));
+    }
+
+    private void publishFirstPageChange(Long postId, Object event) {
+        eventPublisher.publishEvent(event);
+        if (postId != null) {
+            commentRedisService.beginFirstPageChange(postId);
+        }
     }
 
     private void verifyCommentBelongsToUser(Comment comment) {
-        var currentUser = userService.getCurrentUser();
-        if (!comment.getUser().getId().equals(currentUser.getId())) {
+        if (!currentUserContext.isCurrentUser(comment.getUser().getId())) {
             log.warn("UserId: {} attempted to modify commentId: {} which does not belong to them",
-                    currentUser.getId(), comment.getId());
+                    currentUserContext.getId(), comment.getId());
             throw new ForbiddenActionException("You can only modify your own comments");
         }
     }
 
+    private void verifyCommentExists(Long commentId) {
+        if (!commentRepository.existsById(commentId)) {
+            log.warn("Comment not found with id: {}", commentId);
+            throw new CommentNotFoundException("Comment not found");
+        }
+    }
+
     private Comment findCommentById(Long commentId) {
         log.info("Fetching comment by commentId: {}", commentId);
         return commentRepository.findById(commentId)
@@ -121,16 +313,18 @@ public class CommentService {
     public ViewCommentResponse addNestedComment(Long commentId, AddCommentRequest addCommentRequest) {
         log.info("Adding a nested comment to comment with id: {}", commentId);
 
-        var parentComment = findCommentById(commentId);
+        verifyCommentExists(commentId);
 
+        // The parent is only referenced, so its replies are neither loaded nor dirty checked
         var nestedComment = Comment.builder()
-                .user(userService.getCurrentUser())
+                .user(currentUserContext.getReference())
+                .parentComment(commentRepository.getReferenceById(commentId))
                 .body(addCommentRequest.getBody())
                 .build();
-        parentComment.addNestedComment(nestedComment);
 
-        var savedComment = commentRepository.save(parentComment);
+        var savedComment = commentRepository.save(nestedComment);
+        publishCommentAdded(commentRepository.findPostIdOfThread(commentId).orElse(null), savedComment, commentId);
 
-        return commentMapper.toViewCommentResponse(savedComment);
+        return commentMapper.toViewCommentResponse(savedComment, currentUserContext.getUsername());
     }
 }
@@ -0,0 +1,22 @@
+package com.amedvedev.mediaspace.post.comment.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+
+/**
+ * Compact entry of a cached page of comments. Field names are shortened as the entry is stored once per comment,
+ * and ids are written as strings because the Lua scripts updating the page would lose precision on large numbers.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CachedComment(
+        @JsonProperty("i") @JsonFormat(shape = JsonFormat.Shape.STRING) Long id,
+        @JsonProperty("p") @JsonFormat(shape = JsonFormat.Shape.STRING) Long parentId,
+        @JsonProperty("b") String body,
+        @JsonProperty("a") String author,
+        @JsonProperty("t") LocalDateTime createdAt,
+        @JsonProperty("d") int depth,
+        @JsonProperty("r") int repliesCount) {
+}
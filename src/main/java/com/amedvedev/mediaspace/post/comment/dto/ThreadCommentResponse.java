@@ -0,0 +1,34 @@
+package com.amedvedev.mediaspace.post.comment.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ThreadCommentResponse {
+
+    @Schema(description = "The comment ID", example = "1")
+    private Long id;
+
+    @Schema(description = "The ID of the comment this one replies to, absent for top-level comments", example = "1")
+    private Long parentId;
+
+    @Schema(description = "The comment body", example = "This is a comment")
+    private String body;
+
+    @Schema(description = "The comment author", example = "username")
+    private String author;
+
+    @Schema(description = "The comment written at")
+    private LocalDateTime writtenAt;
+
+    @Schema(description = "How deep the comment is nested, 0 for top-level comments", example = "0")
+    private int depth;
+}
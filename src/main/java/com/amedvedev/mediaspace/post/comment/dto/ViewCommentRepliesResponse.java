@@ -0,0 +1,25 @@
+package com.amedvedev.mediaspace.post.comment.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ViewCommentRepliesResponse {
+
+    @Schema(description = "The ID of the replied comment", example = "1")
+    private Long commentId;
+
+    @Schema(description = "The replies to the comment")
+    private List<ViewCommentResponse> replies;
+
+    @Schema(description = "The cursor of the next page of replies, absent on the last page")
+    private String nextCursor;
+}
@@ -28,6 +28,9 @@ public class ViewCommentResponse {
     @Schema(description = "The comment written at")
     private LocalDateTime writtenAt;
 
+    @Schema(description = "The number of replies to the comment, some of them may not be included in nested comments")
+    private Integer repliesCount;
+
     @Schema(description = "The nested comments")
     private List<ViewCommentResponse> nestedComments;
 }
@@ -19,4 +19,7 @@ public class ViewPostCommentsResponse {
 
     @Schema(description = "The post comments")
     private List<ViewCommentResponse> comments;
+
+    @Schema(description = "The cursor of the next page of comments, absent on the last page")
+    private String nextCursor;
 }
@@ -0,0 +1,19 @@
+package com.amedvedev.mediaspace.post.comment.event;
+
+import com.amedvedev.mediaspace.post.comment.dto.CachedComment;
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+@Getter
+public class CommentAddedEvent extends ApplicationEvent {
+
+    private final Long postId;
+
+    private final CachedComment comment;
+
+    public CommentAddedEvent(Object source, Long postId, CachedComment comment) {
+        super(source);
+        this.postId = postId;
+        this.comment = comment;
+    }
+}
@@ -0,0 +1,21 @@
+package com.amedvedev.mediaspace.post.comment.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+@Getter
+public class CommentDeletedEvent extends ApplicationEvent {
+
+    private final Long postId;
+
+    private final Long commentId;
+
+    private final Long parentId;
+
+    public CommentDeletedEvent(Object source, Long postId, Long commentId, Long parentId) {
+        super(source);
+        this.postId = postId;
+        this.commentId = commentId;
+        this.parentId = parentId;
+    }
+}
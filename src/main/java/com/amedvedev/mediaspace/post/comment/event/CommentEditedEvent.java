@@ -0,0 +1,21 @@
+package com.amedvedev.mediaspace.post.comment.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+@Getter
+public class CommentEditedEvent extends ApplicationEvent {
+
+    private final Long postId;
+
+    private final Long commentId;
+
+    private final String body;
+
+    public CommentEditedEvent(Object source, Long postId, Long commentId, String body) {
+        super(source);
+        this.postId = postId;
+        this.commentId = commentId;
+        this.body = body;
+    }
+}
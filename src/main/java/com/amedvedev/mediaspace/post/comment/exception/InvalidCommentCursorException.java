@@ -0,0 +1,9 @@
+package com.amedvedev.mediaspace.post.comment.exception;
+
+import com.amedvedev.mediaspace.exception.BadRequestActionException;
+
+public class InvalidCommentCursorException extends BadRequestActionException {
+    public InvalidCommentCursorException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,69 @@
+package com.amedvedev.mediaspace.post.comment.listener;
+
+import com.amedvedev.mediaspace.post.comment.CommentRedisService;
+import com.amedvedev.mediaspace.post.comment.CommentRepository;
+import com.amedvedev.mediaspace.post.comment.event.CommentAddedEvent;
+import com.amedvedev.mediaspace.post.comment.event.CommentDeletedEvent;
+import com.amedvedev.mediaspace.post.comment.event.CommentEditedEvent;
+import com.amedvedev.mediaspace.post.event.PostDeletedEvent;
+import com.amedvedev.mediaspace.user.event.UsernameChangedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+
+import static com.amedvedev.mediaspace.post.comment.CommentService.CACHED_PAGE_SIZE;
+import static com.amedvedev.mediaspace.post.comment.CommentService.MAX_REPLIES_DEPTH;
+import static com.amedvedev.mediaspace.post.comment.CommentService.REPLIES_PREVIEW_SIZE;
+
+/**
+ * Applies committed comment changes to the cached first pages of comments.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CommentCacheListener {
+
+    private final CommentRedisService commentRedisService;
+    private final CommentRepository commentRepository;
+
+    @TransactionalEventListener
+    public void onCommentAdded(CommentAddedEvent event) {
+        log.debug("Received comment added event for post with id: {}", event.getPostId());
+        commentRedisService.addComment(event.getPostId(), event.getComment(),
+                CACHED_PAGE_SIZE, REPLIES_PREVIEW_SIZE, MAX_REPLIES_DEPTH);
+    }
+
+    @TransactionalEventListener
+    public void onCommentEdited(CommentEditedEvent event) {
+        if (event.getPostId() == null) {
+            return;
+        }
+        log.debug("Received comment edited event for comment with id: {}", event.getCommentId());
+        commentRedisService.editComment(event.getPostId(), event.getCommentId(), event.getBody());
+    }
+
+    @TransactionalEventListener
+    public void onCommentDeleted(CommentDeletedEvent event) {
+        if (event.getPostId() == null) {
+            return;
+        }
+        log.debug("Received comment deleted event for comment with id: {}", event.getCommentId());
+        commentRedisService.deleteComment(event.getPostId(), event.getCommentId(), event.getParentId(),
+                CACHED_PAGE_SIZE, REPLIES_PREVIEW_SIZE);
+    }
+
+    @TransactionalEventListener
+    public void onPostDeleted(PostDeletedEvent event) {
+        log.debug("Received post deleted event for post with id: {}", event.getPostId());
+        commentRedisService.deleteFirstPages(List.of(event.getPostId()));
+    }
+
+    @TransactionalEventListener
+    public void onUsernameChanged(UsernameChangedEvent event) {
+        log.debug("Received username changed event for user with id: {}", event.getUserId());
+        commentRedisService.deleteFirstPages(commentRepository.findPostIdsOfThreadsWithUser(event.getUserId()));
+    }
+}
@@ -0,0 +1,20 @@
+package com.amedvedev.mediaspace.post.comment.projection;
+
+import java.time.LocalDateTime;
+
+public interface CommentTreeProjection {
+
+    Long getId();
+
+    Long getParentId();
+
+    String getBody();
+
+    String getAuthor();
+
+    LocalDateTime getCreatedAt();
+
+    int getDepth();
+
+    int getRepliesCount();
+}
@@ -0,0 +1,6 @@
+package com.amedvedev.mediaspace.post.comment.projection;
+
+public interface PostCommentTreeProjection extends CommentTreeProjection {
+
+    Long getPostId();
+}
@@ -0,0 +1,17 @@
+package com.amedvedev.mediaspace.post.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CachedPostSearch {
+
+    private List<Long> postIds;
+
+    private String nextCursor;
+}
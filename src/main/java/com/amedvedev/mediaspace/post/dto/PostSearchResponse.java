@@ -0,0 +1,22 @@
+package com.amedvedev.mediaspace.post.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostSearchResponse {
+
+    @Schema(description = "The matching posts, most relevant first")
+    private List<ViewPostResponse> posts;
+
+    @Schema(description = "The cursor of the next page of results, absent on the last page")
+    private String nextCursor;
+}
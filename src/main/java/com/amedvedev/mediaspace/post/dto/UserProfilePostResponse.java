@@ -20,4 +20,7 @@ public class UserProfilePostResponse {
 
     @Schema(description = "Cover image url", example = "https://www.example.com/cover.jpg")
     private String coverImage;
+
+    @Schema(description = "Whether the authenticated user liked the post", example = "true")
+    private boolean likedByMe;
 }
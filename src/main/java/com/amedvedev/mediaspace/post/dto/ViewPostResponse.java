@@ -37,6 +37,9 @@ public class ViewPostResponse {
     @Schema(description = "The post comments count", example = "5")
     private int commentsCount;
 
+    @Schema(description = "Whether the authenticated user liked the post", example = "true")
+    private boolean likedByMe;
+
     @Schema(description = "The post creation date", example = "31.12.2024 12:00")
     private String createdAt;
 }
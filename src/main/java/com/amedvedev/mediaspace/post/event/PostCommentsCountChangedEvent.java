@@ -0,0 +1,18 @@
+package com.amedvedev.mediaspace.post.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+@Getter
+public class PostCommentsCountChangedEvent extends ApplicationEvent {
+
+    private final Long postId;
+
+    private final int delta;
+
+    public PostCommentsCountChangedEvent(Object source, Long postId, int delta) {
+        super(source);
+        this.postId = postId;
+        this.delta = delta;
+    }
+}
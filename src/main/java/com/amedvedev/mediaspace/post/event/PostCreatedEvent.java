@@ -0,0 +1,19 @@
+package com.amedvedev.mediaspace.post.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Set;
+
+@Getter
+public class PostCreatedEvent extends ApplicationEvent {
+
+    private final Long postId;
+    private final Set<String> hashtags;
+
+    public PostCreatedEvent(Object source, Long postId, Set<String> hashtags) {
+        super(source);
+        this.postId = postId;
+        this.hashtags = hashtags;
+    }
+}
@@ -0,0 +1,15 @@
+package com.amedvedev.mediaspace.post.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+@Getter
+public class PostDeletedEvent extends ApplicationEvent {
+
+    private final Long postId;
+
+    public PostDeletedEvent(Object source, Long postId) {
+        super(source);
+        this.postId = postId;
+    }
+}
@@ -0,0 +1,21 @@
+package com.amedvedev.mediaspace.post.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+@Getter
+public class PostLikeChangedEvent extends ApplicationEvent {
+
+    private final Long postId;
+
+    private final Long userId;
+
+    private final int delta;
+
+    public PostLikeChangedEvent(Object source, Long postId, Long userId, int delta) {
+        super(source);
+        this.postId = postId;
+        this.userId = userId;
+        this.delta = delta;
+    }
+}
@@ -0,0 +1,9 @@
+package com.amedvedev.mediaspace.post.exception;
+
+import com.amedvedev.mediaspace.exception.BadRequestActionException;
+
+public class InvalidPostSearchException extends BadRequestActionException {
+    public InvalidPostSearchException(String message) {
+        super(message);
+    }
+}
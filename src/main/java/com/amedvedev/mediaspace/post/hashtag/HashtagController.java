@@ -0,0 +1,49 @@
+package com.amedvedev.mediaspace.post.hashtag;
+
+import com.amedvedev.mediaspace.exception.dto.GeneralErrorResponse;
+import com.amedvedev.mediaspace.post.hashtag.dto.HashtagPostsResponse;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/posts/tags")
+@Tag(name = "Hashtag", description = "Endpoints for browsing posts by hashtag")
+public class HashtagController {
+
+    private final HashtagService hashtagService;
+
+    @Operation(summary = "Get posts with a hashtag", description = "Returns posts with the hashtag, newest first.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200", description = "Posts retrieved successfully",
+                    content = @Content(schema = @Schema(implementation = HashtagPostsResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400", description = "Invalid hashtag or cursor",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401", description = "Unauthorized",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            )
+    })
+    @GetMapping("/{tag}")
+    @ResponseStatus(HttpStatus.OK)
+    public HashtagPostsResponse getPostsByHashtag(
+            @Parameter(description = "The hashtag, with or without '#'") @PathVariable String tag,
+            @Parameter(description = "The cursor returned with the previous page")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "The number of posts, at most 50")
+            @RequestParam(defaultValue = "20") int size) {
+        return hashtagService.getPostsByHashtag(tag, cursor, size);
+    }
+}
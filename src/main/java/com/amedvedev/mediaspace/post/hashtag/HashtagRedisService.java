@@ -0,0 +1,219 @@
+package com.amedvedev.mediaspace.post.hashtag;
+
+import com.amedvedev.mediaspace.post.hashtag.dto.TrendingHashtagResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+/**
+ * Keeps the newest posts of each hashtag and how often hashtags were used recently.
+ * <p>
+ * A timeline is a sorted set of post ids scored by the id itself, so it is ordered newest first and pages by id.
+ * It holds at most {@link #TIMELINE_SIZE} posts and is only appended to while it exists: a missing timeline is
+ * loaded from the database on the next read, so a timeline in the cache is never missing posts newer than its oldest.
+ * Every recorded post bumps the version of its tags' timelines, and a load only caches its result if the version it
+ * read before querying is unchanged, so a post committed during the load is not left out of the timeline for good.
+ * <p>
+ * Usage is counted in hourly buckets that expire after the trending window. Trending tags are the union of the
+ * buckets in the window, kept for a short time so that the union is not recomputed on every read.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HashtagRedisService {
+
+    public static final int TIMELINE_SIZE = 1000;
+
+    private static final String HASHTAG_PREFIX = "hashtag:";
+    private static final String POSTS_SUFFIX = ":posts";
+    private static final String POSTS_VERSION_SUFFIX = ":posts_version";
+    private static final String COUNTS_PREFIX = "hashtags:counts:";
+    private static final String TRENDING_KEY = "hashtags:trending";
+
+    private static final Duration TIMELINE_TTL = Duration.ofDays(1);
+    private static final Duration TRENDING_TTL = Duration.ofMinutes(1);
+    private static final Duration BUCKET_DURATION = Duration.ofHours(1);
+
+    // KEYS are the counts bucket followed by the timeline and its version of every tag
+    private static final RedisScript<Long> RECORD_POST_SCRIPT = new DefaultRedisScript<>("""
+            local post_id, timeline_size = ARGV[1], tonumber(ARGV[2])
+            for i = 1, (#KEYS - 1) / 2 do
+                local timeline, version = KEYS[2 * i], KEYS[2 * i + 1]
+                if redis.call('EXISTS', timeline) == 1 then
+                    redis.call('ZADD', timeline, post_id, post_id)
+                    redis.call('ZREMRANGEBYRANK', timeline, 0, -timeline_size - 1)
+                end
+                redis.call('INCR', version)
+                redis.call('EXPIRE', version, ARGV[4])
+                redis.call('ZINCRBY', KEYS[1], 1, ARGV[i + 4])
+            end
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+            return 1
+            """, Long.class);
+
+    // Returns an empty list if the timeline is not cached, otherwise its size followed by the page of post ids
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisScript<List> GET_TIMELINE_PAGE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                return {}
+            end
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+            local page = redis.call('ZREVRANGEBYSCORE', KEYS[1], ARGV[1], '-inf', 'LIMIT', 0, tonumber(ARGV[2]))
+            table.insert(page, 1, tostring(redis.call('ZCARD', KEYS[1])))
+            return page
+            """, List.class);
+
+    // Does nothing if the timeline was loaded concurrently, that one may already contain newer posts, or if a post
+    // was recorded since the version was read, the loaded timeline may be missing it
+    private static final RedisScript<Long> CACHE_TIMELINE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1 or (redis.call('GET', KEYS[2]) or '0') ~= ARGV[2] then
+                return 0
+            end
+            for i = 3, #ARGV do
+                redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i])
+            end
+            redis.call('EXPIRE', KEYS[1], ARGV[1])
+            return 1
+            """, Long.class);
+
+    private static final RedisScript<Long> DELETE_TIMELINE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('DEL', KEYS[1])
+            redis.call('INCR', KEYS[2])
+            redis.call('EXPIRE', KEYS[2], ARGV[1])
+            return 1
+            """, Long.class);
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisScript<List> GET_TRENDING_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                local buckets = {}
+                for i = 2, #KEYS do
+                    buckets[#buckets + 1] = KEYS[i]
+                end
+                redis.call('ZUNIONSTORE', KEYS[1], #buckets, unpack(buckets))
+                redis.call('EXPIRE', KEYS[1], ARGV[1])
+            end
+            return redis.call('ZREVRANGE', KEYS[1], 0, tonumber(ARGV[2]) - 1, 'WITHSCORES')
+            """, List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * Adds the post to the cached timelines of its tags and counts the tags in the current bucket.
+     */
+    public void recordPost(Long postId, Collection<String> tags, long nowMillis, int windowHours) {
+        if (tags.isEmpty()) {
+            return;
+        }
+        log.debug("Recording post with id: {} in timelines of {} hashtags", postId, tags.size());
+        var keys = new ArrayList<String>();
+        keys.add(constructCountsKey(nowMillis / BUCKET_DURATION.toMillis()));
+        tags.forEach(tag -> {
+            keys.add(constructTimelineKey(tag));
+            keys.add(constructTimelineVersionKey(tag));
+        });
+
+        var args = new ArrayList<String>();
+        args.add(postId.toString());
+        args.add(String.valueOf(TIMELINE_SIZE));
+        args.add(String.valueOf(BUCKET_DURATION.multipliedBy(windowHours + 1).toSeconds()));
+        args.add(String.valueOf(TIMELINE_TTL.toSeconds()));
+        args.addAll(tags);
+        stringRedisTemplate.execute(RECORD_POST_SCRIPT, keys, args.toArray());
+    }
+
+    /**
+     * @return empty if the timeline is not cached
+     */
+    @SuppressWarnings("unchecked")
+    public Optional<TimelinePage> getTimelinePage(String tag, long beforePostId, int limit) {
+        List<String> result = stringRedisTemplate.execute(GET_TIMELINE_PAGE_SCRIPT, List.of(constructTimelineKey(tag)),
+                "(" + beforePostId, String.valueOf(limit), String.valueOf(TIMELINE_TTL.toSeconds()));
+        if (result == null || result.isEmpty()) {
+            log.debug("Timeline of hashtag {} not found in cache", tag);
+            return Optional.empty();
+        }
+        var postIds = result.subList(1, result.size()).stream().map(Long::valueOf).toList();
+        return Optional.of(new TimelinePage(Long.parseLong(result.getFirst()), postIds));
+    }
+
+    /**
+     * Returns the version of the timeline, to be read before the timeline is loaded for {@link #cacheTimeline}.
+     */
+    public String getTimelineVersion(String tag) {
+        return Optional.ofNullable(stringRedisTemplate.opsForValue().get(constructTimelineVersionKey(tag))).orElse("0");
+    }
+
+    /**
+     * Caches the timeline unless it is cached already or a post was recorded since {@code version} was read.
+     */
+    public void cacheTimeline(String tag, List<Long> postIds, String version) {
+        if (postIds.isEmpty()) {
+            return;
+        }
+        log.debug("Caching timeline of {} posts for hashtag {}", postIds.size(), tag);
+        var args = new ArrayList<String>();
+        args.add(String.valueOf(TIMELINE_TTL.toSeconds()));
+        args.add(version);
+        postIds.forEach(postId -> args.add(postId.toString()));
+        var cached = stringRedisTemplate.execute(CACHE_TIMELINE_SCRIPT,
+                List.of(constructTimelineKey(tag), constructTimelineVersionKey(tag)), args.toArray());
+        if (cached == null || cached == 0) {
+            log.debug("Timeline of hashtag {} changed while it was loaded, not caching it", tag);
+        }
+    }
+
+    public void deleteTimeline(String tag) {
+        log.debug("Deleting cached timeline of hashtag {}", tag);
+        stringRedisTemplate.execute(DELETE_TIMELINE_SCRIPT,
+                List.of(constructTimelineKey(tag), constructTimelineVersionKey(tag)),
+                String.valueOf(TIMELINE_TTL.toSeconds()));
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<TrendingHashtagResponse> getTrendingHashtags(long nowMillis, int windowHours, int limit) {
+        var currentBucket = nowMillis / BUCKET_DURATION.toMillis();
+        var keys = new ArrayList<String>();
+        keys.add(TRENDING_KEY);
+        LongStream.range(0, windowHours).forEach(offset -> keys.add(constructCountsKey(currentBucket - offset)));
+
+        List<String> result = stringRedisTemplate.execute(GET_TRENDING_SCRIPT, keys,
+                String.valueOf(TRENDING_TTL.toSeconds()), String.valueOf(limit));
+        if (result == null) {
+            return List.of();
+        }
+        var trendingHashtags = new ArrayList<TrendingHashtagResponse>();
+        for (int i = 0; i + 1 < result.size(); i += 2) {
+            trendingHashtags.add(new TrendingHashtagResponse(result.get(i), (long) Double.parseDouble(result.get(i + 1))));
+        }
+        return trendingHashtags;
+    }
+
+    private String constructTimelineKey(String tag) {
+        return HASHTAG_PREFIX + tag + POSTS_SUFFIX;
+    }
+
+    private String constructTimelineVersionKey(String tag) {
+        return HASHTAG_PREFIX + tag + POSTS_VERSION_SUFFIX;
+    }
+
+    private String constructCountsKey(long bucket) {
+        return COUNTS_PREFIX + bucket;
+    }
+
+    /**
+     * @param timelineSize number of posts in the cached timeline, the page may be cut short by the timeline cap
+     */
+    public record TimelinePage(long timelineSize, List<Long> postIds) {
+    }
+}
@@ -0,0 +1,105 @@
+package com.amedvedev.mediaspace.post.hashtag;
+
+import com.amedvedev.mediaspace.post.PostRepository;
+import com.amedvedev.mediaspace.post.PostService;
+import com.amedvedev.mediaspace.post.hashtag.HashtagRedisService.TimelinePage;
+import com.amedvedev.mediaspace.post.hashtag.dto.HashtagPostsResponse;
+import com.amedvedev.mediaspace.post.hashtag.dto.TrendingHashtagResponse;
+import com.amedvedev.mediaspace.post.hashtag.exception.InvalidHashtagException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+
+import static com.amedvedev.mediaspace.post.hashtag.HashtagRedisService.TIMELINE_SIZE;
+
+/**
+ * Serves posts by hashtag and trending hashtags from Redis. Hashtags are stored with the post in the database,
+ * which is only read when a timeline is not cached or a page goes past the posts the timeline holds.
+ */
+@Slf4j
+@Service
+public class HashtagService {
+
+    private static final int MAX_PAGE_SIZE = 50;
+    private static final int MAX_TRENDING_LIMIT = 50;
+
+    private final HashtagRedisService hashtagRedisService;
+    private final PostRepository postRepository;
+    private final PostService postService;
+    private final int trendingWindowHours;
+
+    public HashtagService(HashtagRedisService hashtagRedisService,
+                          PostRepository postRepository,
+                          PostService postService,
+                          @Value("${hashtags.trending.window-hours}") int trendingWindowHours) {
+        this.hashtagRedisService = hashtagRedisService;
+        this.postRepository = postRepository;
+        this.postService = postService;
+        this.trendingWindowHours = trendingWindowHours;
+    }
+
+    public void recordPost(Long postId, Collection<String> hashtags) {
+        hashtagRedisService.recordPost(postId, hashtags, System.currentTimeMillis(), trendingWindowHours);
+    }
+
+    public HashtagPostsResponse getPostsByHashtag(String tag, String cursor, int size) {
+        var normalizedTag = Hashtags.normalize(tag).orElseThrow(() -> new InvalidHashtagException("Invalid hashtag"));
+        var beforeId = decodeCursor(cursor);
+        var pageSize = Math.clamp(size, 1, MAX_PAGE_SIZE);
+        log.info("Fetching posts with hashtag: {}", normalizedTag);
+
+        var postIds = findPostIds(normalizedTag, beforeId, pageSize);
+        var posts = postService.getViewPostResponsesByIds(postIds);
+        if (posts.size() < postIds.size()) {
+            // Deleted posts stay in the timeline until it is reloaded
+            log.debug("Timeline of hashtag {} contains deleted posts, evicting it", normalizedTag);
+            hashtagRedisService.deleteTimeline(normalizedTag);
+        }
+
+        return HashtagPostsResponse.builder()
+                .tag(normalizedTag)
+                .posts(posts)
+                .nextCursor(postIds.size() == pageSize ? postIds.getLast().toString() : null)
+                .build();
+    }
+
+    private List<Long> findPostIds(String tag, long beforeId, int pageSize) {
+        var cachedPage = hashtagRedisService.getTimelinePage(tag, beforeId, pageSize)
+                .orElseGet(() -> loadAndCacheTimelinePage(tag, beforeId, pageSize));
+
+        // A full timeline may be missing older posts, the rest of the page is read from the database
+        if (cachedPage.postIds().size() < pageSize && cachedPage.timelineSize() >= TIMELINE_SIZE) {
+            log.debug("Page of hashtag {} goes past the cached timeline, reading it from database", tag);
+            return postRepository.findIdsByHashtag(tag, beforeId, pageSize);
+        }
+        return cachedPage.postIds();
+    }
+
+    private TimelinePage loadAndCacheTimelinePage(String tag, long beforeId, int pageSize) {
+        var version = hashtagRedisService.getTimelineVersion(tag);
+        var timeline = postRepository.findIdsByHashtag(tag, Long.MAX_VALUE, TIMELINE_SIZE);
+        hashtagRedisService.cacheTimeline(tag, timeline, version);
+        var postIds = timeline.stream().filter(postId -> postId < beforeId).limit(pageSize).toList();
+        return new TimelinePage(timeline.size(), postIds);
+    }
+
+    private long decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            return Long.parseLong(cursor);
+        } catch (NumberFormatException e) {
+            throw new InvalidHashtagException("Invalid hashtag posts cursor");
+        }
+    }
+
+    public List<TrendingHashtagResponse> getTrendingHashtags(int limit) {
+        log.info("Fetching top {} trending hashtags", limit);
+        return hashtagRedisService.getTrendingHashtags(System.currentTimeMillis(), trendingWindowHours,
+                Math.clamp(limit, 1, MAX_TRENDING_LIMIT));
+    }
+}
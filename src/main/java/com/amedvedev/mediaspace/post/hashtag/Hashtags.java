@@ -0,0 +1,62 @@
+package com.amedvedev.mediaspace.post.hashtag;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Parses hashtags out of free text. A hashtag is '#' followed by up to {@link #MAX_LENGTH} letters, digits or
+ * underscores with at least one letter, not preceded by a word character, so "a#b" and "#123" are not hashtags.
+ * Tags are stored lower-cased.
+ */
+public final class Hashtags {
+
+    public static final int MAX_LENGTH = 50;
+    public static final int MAX_PER_POST = 30;
+
+    private static final Pattern HASHTAG_PATTERN = Pattern.compile(
+            "(?<![\\w#])#(\\w{1," + MAX_LENGTH + "})(?!\\w)", Pattern.UNICODE_CHARACTER_CLASS);
+    private static final Pattern TAG_PATTERN = Pattern.compile(
+            "^\\w{1," + MAX_LENGTH + "}$", Pattern.UNICODE_CHARACTER_CLASS);
+    private static final Pattern LETTER_PATTERN = Pattern.compile("\\p{L}");
+
+    private Hashtags() {
+    }
+
+    /**
+     * Returns distinct tags in order of first appearance, at most {@link #MAX_PER_POST} of them.
+     */
+    public static Set<String> extract(String text) {
+        var tags = new LinkedHashSet<String>();
+        if (text == null) {
+            return tags;
+        }
+        var matcher = HASHTAG_PATTERN.matcher(text);
+        while (matcher.find() && tags.size() < MAX_PER_POST) {
+            var tag = matcher.group(1);
+            if (LETTER_PATTERN.matcher(tag).find()) {
+                tags.add(tag.toLowerCase(Locale.ROOT));
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Normalizes a tag given by a client, with or without the leading '#'. Empty if it can never match a hashtag.
+     */
+    public static Optional<String> normalize(String tag) {
+        if (tag == null) {
+            return Optional.empty();
+        }
+        var normalizedTag = tag.strip();
+        if (normalizedTag.startsWith("#")) {
+            normalizedTag = normalizedTag.substring(1);
+        }
+        if (!TAG_PATTERN.matcher(normalizedTag).matches() || !LETTER_PATTERN.matcher(normalizedTag).find()) {
+            return Optional.empty();
+        }
+        return Optional.of(normalizedTag.toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,26 @@
+package com.amedvedev.mediaspace.post.hashtag.dto;
+
+import com.amedvedev.mediaspace.post.dto.ViewPostResponse;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HashtagPostsResponse {
+
+    @Schema(description = "The normalized hashtag, without '#'", example = "sunset")
+    private String tag;
+
+    @Schema(description = "Posts with the hashtag, newest first")
+    private List<ViewPostResponse> posts;
+
+    @Schema(description = "The cursor of the next page of posts, absent on the last page")
+    private String nextCursor;
+}
@@ -0,0 +1,20 @@
+package com.amedvedev.mediaspace.post.hashtag.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrendingHashtagResponse {
+
+    @Schema(description = "The hashtag, without '#'", example = "sunset")
+    private String tag;
+
+    @Schema(description = "The number of posts with the hashtag within the trending window", example = "42")
+    private long postsCount;
+}
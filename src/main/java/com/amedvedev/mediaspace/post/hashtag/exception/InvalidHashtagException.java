@@ -0,0 +1,9 @@
+package com.amedvedev.mediaspace.post.hashtag.exception;
+
+import com.amedvedev.mediaspace.exception.BadRequestActionException;
+
+public class InvalidHashtagException extends BadRequestActionException {
+    public InvalidHashtagException(String message) {
+        super(message);
+    }
+}
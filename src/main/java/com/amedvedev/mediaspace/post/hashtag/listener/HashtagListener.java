@@ -0,0 +1,25 @@
+package com.amedvedev.mediaspace.post.hashtag.listener;
+
+import com.amedvedev.mediaspace.post.event.PostCreatedEvent;
+import com.amedvedev.mediaspace.post.hashtag.HashtagService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HashtagListener {
+
+    private final HashtagService hashtagService;
+
+    @TransactionalEventListener
+    public void onPostCreated(PostCreatedEvent event) {
+        if (event.getHashtags().isEmpty()) {
+            return;
+        }
+        log.debug("Received post created event for post with id: {}", event.getPostId());
+        hashtagService.recordPost(event.getPostId(), event.getHashtags());
+    }
+}
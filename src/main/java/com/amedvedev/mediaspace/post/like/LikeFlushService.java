@@ -0,0 +1,211 @@
+package com.amedvedev.mediaspace.post.like;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+
+import static com.amedvedev.mediaspace.post.like.LikeRedisService.*;
+
+/**
+ * Persists like changes recorded in Redis. Changes are read from the pending stream in batches, collapsed to the
+ * latest operation per user and post, written with set-based statements and acknowledged only after commit.
+ * Replaying a batch is harmless: inserts skip existing rows and counters only change by the rows actually affected.
+ */
+@Slf4j
+@Service
+public class LikeFlushService {
+
+    private static final String CONSUMER_GROUP = "likes-flusher";
+
+    private static final String INSERT_LIKES = """
+            INSERT INTO _like (_user_id, post_id)
+            SELECT t.user_id, t.post_id
+            FROM unnest(?::bigint[], ?::bigint[]) AS t(user_id, post_id)
+            WHERE EXISTS (SELECT 1 FROM post p WHERE p.id = t.post_id)
+              AND EXISTS (SELECT 1 FROM _user u WHERE u.id = t.user_id)
+            ON CONFLICT DO NOTHING
+            RETURNING post_id
+            """;
+
+    private static final String DELETE_LIKES = """
+            DELETE FROM _like l
+            USING unnest(?::bigint[], ?::bigint[]) AS t(user_id, post_id)
+            WHERE l._user_id = t.user_id AND l.post_id = t.post_id
+            RETURNING l.post_id
+            """;
+
+    private static final String UPDATE_LIKE_COUNTS = """
+            UPDATE post p
+            SET like_count = p.like_count + d.delta
+            FROM unnest(?::bigint[], ?::int[]) AS d(post_id, delta)
+            WHERE p.id = d.post_id
+            """;
+
+    private final LikeRedisService likeRedisService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Consumer consumer;
+    private final int batchSize;
+    private final Duration claimMinIdle;
+
+    public LikeFlushService(LikeRedisService likeRedisService,
+                            JdbcTemplate jdbcTemplate,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${likes.flush.consumer}") String consumerName,
+                            @Value("${likes.flush.batch-size}") int batchSize,
+                            @Value("${likes.flush.claim-min-idle-ms}") long claimMinIdleMs) {
+        this.likeRedisService = likeRedisService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.consumer = Consumer.from(CONSUMER_GROUP, consumerName);
+        this.batchSize = batchSize;
+        this.claimMinIdle = Duration.ofMillis(claimMinIdleMs);
+    }
+
+    @Scheduled(fixedDelayString = "${likes.flush.interval-ms}")
+    public void flushScheduled() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Failed to flush pending likes, they will be retried: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Persists all pending like changes and returns how many stream entries were processed.
+     */
+    public int flush() {
+        var total = 0;
+        int processed;
+        do {
+            processed = flushBatch();
+            total += processed;
+        } while (processed == batchSize);
+
+        if (total > 0) {
+            log.debug("Flushed {} like changes", total);
+        }
+        return total;
+    }
+
+    private int flushBatch() {
+        // Entries delivered before but never acknowledged (e.g. the previous flush failed) are retried first,
+        // then the ones left behind by consumers that are gone, e.g. a pod restarted under a new hostname
+        var records = readPendingChanges(ReadOffset.from("0"));
+        if (records.isEmpty()) {
+            records = likeRedisService.claimAbandonedChanges(consumer, batchSize, claimMinIdle);
+        }
+        if (records.isEmpty()) {
+            records = readPendingChanges(ReadOffset.lastConsumed());
+        }
+        if (records.isEmpty()) {
+            return 0;
+        }
+
+        persist(collapseChanges(records));
+
+        var recordIds = records.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+        likeRedisService.acknowledgePendingChanges(CONSUMER_GROUP, recordIds);
+        return records.size();
+    }
+
+    private List<MapRecord<String, Object, Object>> readPendingChanges(ReadOffset offset) {
+        try {
+            return likeRedisService.readPendingChanges(consumer, batchSize, offset);
+        } catch (DataAccessException e) {
+            if (!hasErrorCode(e, "NOGROUP")) {
+                throw e;
+            }
+            log.info("Consumer group {} does not exist, creating it", CONSUMER_GROUP);
+            createConsumerGroup();
+            return likeRedisService.readPendingChanges(consumer, batchSize, offset);
+        }
+    }
+
+    private void createConsumerGroup() {
+        try {
+            likeRedisService.createPendingChangesGroup(CONSUMER_GROUP);
+        } catch (DataAccessException e) {
+            if (!hasErrorCode(e, "BUSYGROUP")) {
+                throw e;
+            }
+            log.debug("Consumer group {} was created concurrently", CONSUMER_GROUP);
+        }
+    }
+
+    private static boolean hasErrorCode(DataAccessException e, String code) {
+        var message = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+        return message != null && message.contains(code);
+    }
+
+    private static Map<LikeId, String> collapseChanges(List<MapRecord<String, Object, Object>> records) {
+        // Records are in stream order, so the last operation for a user and post wins
+        var changes = new LinkedHashMap<LikeId, String>();
+        records.forEach(record -> {
+            var value = record.getValue();
+            var likeId = new LikeId(
+                    Long.valueOf(value.get(USER_ID_FIELD).toString()),
+                    Long.valueOf(value.get(POST_ID_FIELD).toString()));
+            changes.put(likeId, value.get(OPERATION_FIELD).toString());
+        });
+        return changes;
+    }
+
+    private void persist(Map<LikeId, String> changes) {
+        var likes = new ArrayList<LikeId>();
+        var unlikes = new ArrayList<LikeId>();
+        changes.forEach((likeId, operation) -> (LIKE_OPERATION.equals(operation) ? likes : unlikes).add(likeId));
+
+        log.debug("Persisting {} likes and {} unlikes", likes.size(), unlikes.size());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            var deltas = new HashMap<Long, Integer>();
+            executeForPostIds(INSERT_LIKES, likes).forEach(postId -> deltas.merge(postId, 1, Integer::sum));
+            executeForPostIds(DELETE_LIKES, unlikes).forEach(postId -> deltas.merge(postId, -1, Integer::sum));
+            updateLikeCounts(deltas);
+        });
+    }
+
+    private List<Long> executeForPostIds(String sql, List<LikeId> likeIds) {
+        if (likeIds.isEmpty()) {
+            return List.of();
+        }
+        var userIds = likeIds.stream().map(LikeId::getUserId).toArray(Long[]::new);
+        var postIds = likeIds.stream().map(LikeId::getPostId).toArray(Long[]::new);
+        return jdbcTemplate.query(sql, ps -> {
+            setArray(ps, 1, "bigint", userIds);
+            setArray(ps, 2, "bigint", postIds);
+        }, (rs, rowNum) -> rs.getLong(1));
+    }
+
+    private void updateLikeCounts(Map<Long, Integer> deltas) {
+        deltas.values().removeIf(delta -> delta == 0);
+        if (deltas.isEmpty()) {
+            return;
+        }
+        var postIds = deltas.keySet().toArray(Long[]::new);
+        var values = Arrays.stream(postIds).map(deltas::get).toArray(Integer[]::new);
+        jdbcTemplate.update(UPDATE_LIKE_COUNTS, ps -> {
+            setArray(ps, 1, "bigint", postIds);
+            setArray(ps, 2, "int", values);
+        });
+    }
+
+    private static void setArray(PreparedStatement ps, int index, String type, Object[] values) throws SQLException {
+        ps.setArray(index, ps.getConnection().createArrayOf(type, values));
+    }
+}
@@ -0,0 +1,256 @@
+package com.amedvedev.mediaspace.post.like;
+
+import com.amedvedev.mediaspace.post.like.dto.LikeState;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps the users who liked each post and the stream of like changes that are not persisted yet.
+ * Likes are the source of truth here until {@link LikeFlushService} writes the changes to the database.
+ * <p>
+ * Likes of a post are kept in a set while there are few of them and moved to a bitmap indexed by user id
+ * once the set grows past {@link #BITMAP_PROMOTION_THRESHOLD}, where one bit per user is cheaper than a set member.
+ * <p>
+ * Likes of a post expire after {@link #LIKES_TTL} without being read or changed and are loaded again on the next
+ * like. Changes are flushed within seconds, so the database is up to date long before the likes expire.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LikeRedisService {
+
+    public static final String PENDING_LIKES_STREAM = "likes:pending";
+    public static final String LIKE_OPERATION = "like";
+    public static final String UNLIKE_OPERATION = "unlike";
+    public static final String OPERATION_FIELD = "op";
+    public static final String USER_ID_FIELD = "userId";
+    public static final String POST_ID_FIELD = "postId";
+    public static final long NOT_LOADED = -1;
+
+    private static final String POST_PREFIX = "post:";
+    private static final String LIKES_SUFFIX = ":likes";
+    private static final String LIKES_BITMAP_SUFFIX = ":likes_bitmap";
+
+    static final int BITMAP_PROMOTION_THRESHOLD = 1024;
+
+    private static final Duration LIKES_TTL = Duration.ofDays(7);
+
+    // Keeps the set alive when a post has no likes, so that an empty set is not mistaken for a cache miss
+    private static final String SENTINEL_MEMBER = "-";
+
+    // Returns -1 if likes of the post are not loaded, otherwise 1 if the likes changed and 0 if they did not.
+    // The change is recorded in the pending stream in the same atomic step.
+    private static final RedisScript<Long> CHANGE_LIKE_SCRIPT = new DefaultRedisScript<>("""
+            local set, bitmap, stream = KEYS[1], KEYS[2], KEYS[3]
+            local user_id, post_id, operation = ARGV[1], ARGV[2], ARGV[3]
+            local changed
+            if redis.call('EXISTS', bitmap) == 1 then
+                local bit = operation == 'like' and 1 or 0
+                local previous = redis.call('SETBIT', bitmap, tonumber(user_id), bit)
+                changed = previous == bit and 0 or 1
+            elseif redis.call('EXISTS', set) == 1 then
+                if operation == 'like' then
+                    changed = redis.call('SADD', set, user_id)
+                    if changed == 1 and redis.call('SCARD', set) > tonumber(ARGV[4]) then
+                        for _, member in ipairs(redis.call('SMEMBERS', set)) do
+                            if member ~= ARGV[5] then
+                                redis.call('SETBIT', bitmap, tonumber(member), 1)
+                            end
+                        end
+                        redis.call('DEL', set)
+                    end
+                else
+                    changed = redis.call('SREM', set, user_id)
+                end
+            else
+                return -1
+            end
+            redis.call('PEXPIRE', redis.call('EXISTS', bitmap) == 1 and bitmap or set, ARGV[6])
+            if changed == 1 then
+                redis.call('XADD', stream, '*', 'op', operation, 'userId', user_id, 'postId', post_id)
+            end
+            return changed
+            """, Long.class);
+
+    // Fills the set only while likes of the post are not cached at all. Likes that are cached already may have changed
+    // since the loader read the database, so its result is dropped rather than merged into them.
+    private static final RedisScript<Boolean> CACHE_LIKES_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1 or redis.call('EXISTS', KEYS[2]) == 1 then
+                return false
+            end
+            for i = 2, #ARGV, 5000 do
+                redis.call('SADD', KEYS[1], unpack(ARGV, i, math.min(i + 4999, #ARGV)))
+            end
+            redis.call('PEXPIRE', KEYS[1], ARGV[1])
+            return true
+            """, Boolean.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * @return {@link #NOT_LOADED} if likes of the post are not cached, 1 if the like was recorded, 0 if already liked
+     */
+    public long like(Long postId, Long userId) {
+        log.debug("Recording like of post with id: {} by user with id: {}", postId, userId);
+        return changeLike(postId, userId, LIKE_OPERATION);
+    }
+
+    /**
+     * @return {@link #NOT_LOADED} if likes of the post are not cached, 1 if the like was removed, 0 if it was not liked
+     */
+    public long unlike(Long postId, Long userId) {
+        log.debug("Recording unlike of post with id: {} by user with id: {}", postId, userId);
+        return changeLike(postId, userId, UNLIKE_OPERATION);
+    }
+
+    private long changeLike(Long postId, Long userId, String operation) {
+        var result = stringRedisTemplate.execute(CHANGE_LIKE_SCRIPT,
+                List.of(constructLikesKey(postId), constructLikesBitmapKey(postId), PENDING_LIKES_STREAM),
+                userId.toString(), postId.toString(), operation,
+                String.valueOf(BITMAP_PROMOTION_THRESHOLD), SENTINEL_MEMBER, String.valueOf(LIKES_TTL.toMillis()));
+        return result == null ? NOT_LOADED : result;
+    }
+
+    /**
+     * Caches likes loaded from the database, unless likes of the post got cached in the meantime.
+     */
+    public void cacheLikes(Long postId, Collection<Long> userIds) {
+        log.debug("Caching {} likes of post with id: {}", userIds.size(), postId);
+        var args = new String[userIds.size() + 2];
+        args[0] = String.valueOf(LIKES_TTL.toMillis());
+        args[1] = SENTINEL_MEMBER;
+        var index = 2;
+        for (var userId : userIds) {
+            args[index++] = userId.toString();
+        }
+        var cached = stringRedisTemplate.execute(CACHE_LIKES_SCRIPT,
+                List.of(constructLikesKey(postId), constructLikesBitmapKey(postId)), (Object[]) args);
+        if (!Boolean.TRUE.equals(cached)) {
+            log.debug("Likes of post with id: {} are cached already, dropping the loaded ones", postId);
+        }
+    }
+
+    /**
+     * Returns likes count and whether the user liked the post for every post whose likes are cached,
+     * reading all of them in a single pipeline that also extends their expiry. Posts that are not cached are absent
+     * from the result.
+     */
+    public Map<Long, LikeState> getLikeStates(List<Long> postIds, Long userId) {
+        if (postIds.isEmpty()) {
+            return Map.of();
+        }
+        var userIdBytes = userId.toString().getBytes();
+        var ttlMillis = LIKES_TTL.toMillis();
+        var results = stringRedisTemplate.executePipelined((RedisCallback<?>) connection -> {
+            postIds.forEach(postId -> {
+                var setKey = constructLikesKey(postId).getBytes();
+                var bitmapKey = constructLikesBitmapKey(postId).getBytes();
+                connection.setCommands().sCard(setKey);
+                connection.setCommands().sIsMember(setKey, userIdBytes);
+                connection.keyCommands().exists(bitmapKey);
+                connection.stringCommands().bitCount(bitmapKey);
+                connection.stringCommands().getBit(bitmapKey, userId);
+                connection.keyCommands().pExpire(setKey, ttlMillis);
+                connection.keyCommands().pExpire(bitmapKey, ttlMillis);
+            });
+            return null;
+        });
+
+        var likeStates = new HashMap<Long, LikeState>();
+        for (int i = 0; i < postIds.size(); i++) {
+            var offset = i * 7;
+            var setSize = (Long) results.get(offset);
+            if (Boolean.TRUE.equals(results.get(offset + 2))) {
+                likeStates.put(postIds.get(i), new LikeState(
+                        ((Long) results.get(offset + 3)).intValue(), Boolean.TRUE.equals(results.get(offset + 4))));
+            } else if (setSize != null && setSize > 0) {
+                likeStates.put(postIds.get(i), new LikeState(
+                        (int) (setSize - 1), Boolean.TRUE.equals(results.get(offset + 1))));
+            }
+        }
+        return likeStates;
+    }
+
+    public Optional<LikeState> getLikeState(Long postId, Long userId) {
+        return Optional.ofNullable(getLikeStates(List.of(postId), userId).get(postId));
+    }
+
+    public void deleteLikes(Long postId) {
+        log.debug("Deleting cached likes of post with id: {}", postId);
+        stringRedisTemplate.delete(List.of(constructLikesKey(postId), constructLikesBitmapKey(postId)));
+    }
+
+    public List<MapRecord<String, Object, Object>> readPendingChanges(Consumer consumer, int count, ReadOffset offset) {
+        var records = stringRedisTemplate.opsForStream().read(consumer, StreamReadOptions.empty().count(count),
+                StreamOffset.create(PENDING_LIKES_STREAM, offset));
+        return records == null ? List.of() : records;
+    }
+
+    /**
+     * Takes over changes that were delivered to other consumers of the group but not acknowledged for at least
+     * {@code minIdle}, e.g. because the instance holding them stopped, and returns them like a read would.
+     */
+    public List<MapRecord<String, Object, Object>> claimAbandonedChanges(Consumer consumer, int count,
+                                                                         Duration minIdle) {
+        var pendingMessages = stringRedisTemplate.opsForStream()
+                .pending(PENDING_LIKES_STREAM, consumer.getGroup(), Range.unbounded(), count);
+        var abandonedIds = pendingMessages.stream()
+                .filter(message -> !consumer.getName().equals(message.getConsumerName()))
+                .filter(message -> message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0)
+                .map(PendingMessage::getId)
+                .toArray(RecordId[]::new);
+        if (abandonedIds.length == 0) {
+            return List.of();
+        }
+
+        log.info("Claiming {} like changes abandoned by other consumers", abandonedIds.length);
+        // XCLAIM checks the idle time again, so an entry another consumer claimed in the meantime is skipped
+        var records = stringRedisTemplate.opsForStream().claim(PENDING_LIKES_STREAM, consumer.getGroup(),
+                consumer.getName(), XClaimOptions.minIdle(minIdle).ids(abandonedIds));
+        return records == null ? List.of() : records;
+    }
+
+    public void createPendingChangesGroup(String group) {
+        log.debug("Creating consumer group {} for stream {}", group, PENDING_LIKES_STREAM);
+        stringRedisTemplate.execute((RedisCallback<Void>) connection -> {
+            connection.streamCommands().xGroupCreate(PENDING_LIKES_STREAM.getBytes(), group,
+                    ReadOffset.from("0"), true);
+            return null;
+        });
+    }
+
+    public void acknowledgePendingChanges(String group, RecordId... recordIds) {
+        log.debug("Acknowledging {} persisted like changes", recordIds.length);
+        stringRedisTemplate.opsForStream().acknowledge(PENDING_LIKES_STREAM, group, recordIds);
+        stringRedisTemplate.opsForStream().delete(PENDING_LIKES_STREAM, recordIds);
+    }
+
+    private String constructLikesKey(Long postId) {
+        return POST_PREFIX + postId + LIKES_SUFFIX;
+    }
+
+    private String constructLikesBitmapKey(Long postId) {
+        return POST_PREFIX + postId + LIKES_BITMAP_SUFFIX;
+    }
+}
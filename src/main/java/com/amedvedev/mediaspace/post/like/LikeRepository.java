@@ -0,0 +1,16 @@
+package com.amedvedev.mediaspace.post.like;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface LikeRepository extends JpaRepository<Like, LikeId> {
+
+    @Query("SELECT l.id.userId FROM Like l WHERE l.id.postId = :postId")
+    List<Long> findUserIdsByPostId(Long postId);
+
+    @Query("SELECT l.id.postId FROM Like l WHERE l.id.userId = :userId AND l.id.postId IN :postIds")
+    List<Long> findLikedPostIds(Long userId, Collection<Long> postIds);
+}
@@ -0,0 +1,17 @@
+package com.amedvedev.mediaspace.post.like.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class LikeState {
+
+    private int likesCount;
+
+    private boolean likedByUser;
+}
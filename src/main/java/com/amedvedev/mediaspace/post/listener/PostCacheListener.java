@@ -0,0 +1,52 @@
+package com.amedvedev.mediaspace.post.listener;
+
+import com.amedvedev.mediaspace.etag.EntityVersionRedisService;
+import com.amedvedev.mediaspace.post.PostRedisService;
+import com.amedvedev.mediaspace.post.PostRepository;
+import com.amedvedev.mediaspace.post.event.PostCommentsCountChangedEvent;
+import com.amedvedev.mediaspace.post.event.PostDeletedEvent;
+import com.amedvedev.mediaspace.post.like.LikeRedisService;
+import com.amedvedev.mediaspace.user.event.UsernameChangedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+
+/**
+ * Keeps cached posts in sync with committed changes. Listeners run after commit, so a rolled back change
+ * never reaches the cache.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PostCacheListener {
+
+    private final PostRedisService postRedisService;
+    private final LikeRedisService likeRedisService;
+    private final PostRepository postRepository;
+    private final EntityVersionRedisService entityVersionRedisService;
+
+    @TransactionalEventListener
+    public void onPostDeleted(PostDeletedEvent event) {
+        var postId = event.getPostId();
+        log.debug("Received post deleted event for post with id: {}", postId);
+        postRedisService.deletePostViews(List.of(postId));
+        likeRedisService.deleteLikes(postId);
+    }
+
+    @TransactionalEventListener
+    public void onCommentsCountChanged(PostCommentsCountChangedEvent event) {
+        log.debug("Received comments count changed event for post with id: {}", event.getPostId());
+        postRedisService.incrementCommentsCount(event.getPostId(), event.getDelta());
+    }
+
+    @TransactionalEventListener
+    public void onUsernameChanged(UsernameChangedEvent event) {
+        log.debug("Received username changed event for user with id: {}", event.getUserId());
+        var postIds = postRepository.findIdsByUserId(event.getUserId());
+        postRedisService.deletePostViews(postIds);
+        entityVersionRedisService.bumpPosts(postIds);
+    }
+}
@@ -0,0 +1,8 @@
+package com.amedvedev.mediaspace.post.projection;
+
+public interface PostSearchProjection {
+
+    Long getId();
+
+    Float getRank();
+}
@@ -0,0 +1,8 @@
+package com.amedvedev.mediaspace.post.projection;
+
+public interface UserPostIdProjection {
+
+    Long getUserId();
+
+    Long getPostId();
+}
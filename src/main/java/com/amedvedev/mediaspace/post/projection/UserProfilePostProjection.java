@@ -0,0 +1,12 @@
+package com.amedvedev.mediaspace.post.projection;
+
+public interface UserProfilePostProjection {
+
+    Long getId();
+
+    String getTitle();
+
+    String getCoverImage();
+
+    Boolean getLikedByMe();
+}
@@ -0,0 +1,20 @@
+package com.amedvedev.mediaspace.responsecache;
+
+/**
+ * @param storedBytes    bytes taken by payloads
+ * @param allocatedBytes direct memory allocated in slabs, including unused and partly used chunks
+ */
+public record OffHeapCacheStats(long hits,
+                                long misses,
+                                long evictions,
+                                long rejections,
+                                int entries,
+                                long storedBytes,
+                                long allocatedBytes,
+                                long capacityBytes) {
+
+    public double hitRatio() {
+        var requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
@@ -0,0 +1,206 @@
+package com.amedvedev.mediaspace.responsecache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps serialized payloads in direct memory in front of Redis, so a large hot set costs neither heap nor GC time.
+ * Only the index lives on the heap, a hit copies the payload into a short-lived array.
+ * <p>
+ * Memory is allocated in slabs that are split into chunks of one size class each, powers of two from
+ * {@code min-chunk-bytes} up to the slab size. A payload takes one chunk of the smallest class it fits in.
+ * Once the capacity is allocated, a class reuses its own chunks, evicting with the clock algorithm:
+ * the hand skips chunks that were read since it last passed them and evicts the first one that was not.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "response-cache.off-heap.enabled", havingValue = "true")
+public class OffHeapPayloadCache {
+
+    private final long capacityBytes;
+    private final int slabBytes;
+    private final SizeClass[] sizeClasses;
+    private final Map<String, Entry> index = new HashMap<>();
+
+    private long allocatedBytes;
+    private long storedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    @Autowired
+    public OffHeapPayloadCache(@Value("${response-cache.off-heap.capacity-mb}") long capacityMb,
+                               @Value("${response-cache.off-heap.slab-kb}") int slabKb,
+                               @Value("${response-cache.off-heap.min-chunk-bytes}") int minChunkBytes) {
+        this(capacityMb * 1024 * 1024, slabKb * 1024, minChunkBytes);
+    }
+
+    OffHeapPayloadCache(long capacityBytes, int slabBytes, int minChunkBytes) {
+        if (Integer.bitCount(slabBytes) != 1 || Integer.bitCount(minChunkBytes) != 1 || minChunkBytes > slabBytes) {
+            throw new IllegalArgumentException("Slab and chunk sizes must be powers of two, chunks not above slabs");
+        }
+        this.capacityBytes = capacityBytes;
+        this.slabBytes = slabBytes;
+        var classes = new ArrayList<SizeClass>();
+        for (var chunkBytes = minChunkBytes; chunkBytes <= slabBytes; chunkBytes *= 2) {
+            classes.add(new SizeClass(chunkBytes, slabBytes / chunkBytes));
+        }
+        this.sizeClasses = classes.toArray(SizeClass[]::new);
+        log.info("Off-heap payload cache enabled with {} bytes in slabs of {} bytes", capacityBytes, slabBytes);
+    }
+
+    public synchronized Optional<byte[]> get(String key) {
+        var entry = index.get(key);
+        if (entry == null) {
+            misses++;
+            return Optional.empty();
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            remove(entry);
+            misses++;
+            return Optional.empty();
+        }
+        hits++;
+        var sizeClass = entry.sizeClass;
+        sizeClass.referenced.set(entry.chunk);
+        var payload = new byte[entry.length];
+        sizeClass.slab(entry.chunk).get(sizeClass.offset(entry.chunk), payload);
+        return Optional.of(payload);
+    }
+
+    /**
+     * Stores the payload unless it is larger than a slab, or its size class got no memory before the capacity ran out.
+     */
+    public synchronized void put(String key, byte[] payload, Duration ttl) {
+        var previous = index.get(key);
+        if (previous != null) {
+            remove(previous);
+        }
+        var sizeClass = findSizeClass(payload.length);
+        var chunk = sizeClass == null ? -1 : allocateChunk(sizeClass);
+        if (chunk < 0) {
+            rejections++;
+            return;
+        }
+        sizeClass.slab(chunk).put(sizeClass.offset(chunk), payload);
+        var entry = new Entry(key, sizeClass, chunk, payload.length, System.currentTimeMillis() + ttl.toMillis());
+        sizeClass.owners[chunk] = entry;
+        index.put(key, entry);
+        storedBytes += payload.length;
+    }
+
+    public synchronized OffHeapCacheStats getStats() {
+        return new OffHeapCacheStats(hits, misses, evictions, rejections, index.size(),
+                storedBytes, allocatedBytes, capacityBytes);
+    }
+
+    @Scheduled(fixedRateString = "${response-cache.off-heap.stats-interval-ms}",
+            initialDelayString = "${response-cache.off-heap.stats-interval-ms}")
+    public void logStats() {
+        log.info("Off-heap payload cache: {}", getStats());
+    }
+
+    private SizeClass findSizeClass(int length) {
+        for (var sizeClass : sizeClasses) {
+            if (sizeClass.chunkBytes >= length) {
+                return sizeClass;
+            }
+        }
+        return null;
+    }
+
+    private int allocateChunk(SizeClass sizeClass) {
+        if (sizeClass.free.isEmpty() && allocatedBytes + slabBytes <= capacityBytes) {
+            sizeClass.addSlab(ByteBuffer.allocateDirect(slabBytes));
+            allocatedBytes += slabBytes;
+        }
+        if (!sizeClass.free.isEmpty()) {
+            return sizeClass.free.pop();
+        }
+        if (sizeClass.chunkCount() == 0) {
+            return -1;
+        }
+        var victim = sizeClass.advanceClockHand();
+        remove(victim);
+        evictions++;
+        return sizeClass.free.pop();
+    }
+
+    private void remove(Entry entry) {
+        var sizeClass = entry.sizeClass;
+        sizeClass.owners[entry.chunk] = null;
+        sizeClass.referenced.clear(entry.chunk);
+        sizeClass.free.push(entry.chunk);
+        index.remove(entry.key);
+        storedBytes -= entry.length;
+    }
+
+    private record Entry(String key, SizeClass sizeClass, int chunk, int length, long expiresAt) {
+    }
+
+    private static final class SizeClass {
+
+        private final int chunkBytes;
+        private final int chunksPerSlab;
+        private final List<ByteBuffer> slabs = new ArrayList<>();
+        private final ArrayDeque<Integer> free = new ArrayDeque<>();
+        private final BitSet referenced = new BitSet();
+        private Entry[] owners = new Entry[0];
+        private int hand;
+
+        private SizeClass(int chunkBytes, int chunksPerSlab) {
+            this.chunkBytes = chunkBytes;
+            this.chunksPerSlab = chunksPerSlab;
+        }
+
+        private void addSlab(ByteBuffer slab) {
+            var firstChunk = chunkCount();
+            slabs.add(slab);
+            owners = Arrays.copyOf(owners, chunkCount());
+            for (var chunk = chunkCount() - 1; chunk >= firstChunk; chunk--) {
+                free.push(chunk);
+            }
+        }
+
+        private int chunkCount() {
+            return slabs.size() * chunksPerSlab;
+        }
+
+        private ByteBuffer slab(int chunk) {
+            return slabs.get(chunk / chunksPerSlab);
+        }
+
+        private int offset(int chunk) {
+            return (chunk % chunksPerSlab) * chunkBytes;
+        }
+
+        // Only called when every chunk is taken, so the hand finds a victim within two rounds
+        private Entry advanceClockHand() {
+            while (true) {
+                var chunk = hand;
+                hand = (hand + 1) % chunkCount();
+                if (referenced.get(chunk)) {
+                    referenced.clear(chunk);
+                } else {
+                    return owners[chunk];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.amedvedev.mediaspace.responsecache;
+
+import com.amedvedev.mediaspace.etag.EntityETag;
+import com.amedvedev.mediaspace.user.service.CurrentUserContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Caches the final gzipped JSON of hot read endpoints, keyed by endpoint and the ETag of the response.
+ * A hit is copied to the response as is, without deserializing, mapping and serializing the body again,
+ * and is only inflated for clients that don't accept gzip. Every format the client can ask for in Accept
+ * (JSON, CBOR, Smile) gets its own entry.
+ * <p>
+ * ETags are built from version counters that every write path bumps, so a changed entity gets a new key
+ * and entries are never invalidated, they are left to expire.
+ * <p>
+ * With {@code response-cache.off-heap.enabled}, entries read from Redis are also kept in an
+ * {@link OffHeapPayloadCache} on this node. The ETag is still read from Redis on every request,
+ * so a local entry is only ever used for the current version.
+ */
+@Slf4j
+@Component
+public class ResponseBytesCache {
+
+    private static final String RESPONSE_PREFIX = "response:";
+    private static final String GZIP = "gzip";
+    private static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final List<ResponseFormat> formats;
+    private final ContentNegotiationManager contentNegotiationManager;
+    private final CurrentUserContext currentUserContext;
+    private final Optional<OffHeapPayloadCache> offHeapCache;
+    private final Duration ttl;
+
+    public ResponseBytesCache(StringRedisTemplate stringRedisTemplate,
+                              ObjectMapper objectMapper,
+                              MappingJackson2CborHttpMessageConverter cborConverter,
+                              MappingJackson2SmileHttpMessageConverter smileConverter,
+                              ContentNegotiationManager contentNegotiationManager,
+                              CurrentUserContext currentUserContext,
+                              Optional<OffHeapPayloadCache> offHeapCache,
+                              @Value("${response-cache.ttl-minutes}") long ttlMinutes) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        // JSON goes first, so that wildcards in Accept resolve to it
+        this.formats = List.of(
+                new ResponseFormat(MediaType.APPLICATION_JSON, objectMapper, ""),
+                new ResponseFormat(MediaType.APPLICATION_CBOR, cborConverter.getObjectMapper(), ":cbor"),
+                new ResponseFormat(APPLICATION_SMILE, smileConverter.getObjectMapper(), ":smile"));
+        this.contentNegotiationManager = contentNegotiationManager;
+        this.currentUserContext = currentUserContext;
+        this.offHeapCache = offHeapCache;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+    }
+
+    /**
+     * Writes a response that depends on the viewer, so every viewer gets their own entry. Without a current ETag
+     * the response is loaded first, and only tagged and cached if its version could be started afterwards.
+     */
+    public void writePerViewer(String endpoint, EntityETag eTag, Supplier<?> loader, ServletWebRequest request) {
+        var entityKey = RESPONSE_PREFIX + endpoint + ":" + currentUserContext.getId() + ":";
+        var current = eTag.current();
+        if (current.isPresent()) {
+            write(entityKey + current.get(), loader, request);
+            return;
+        }
+        var response = loader.get();
+        var started = eTag.start();
+        if (started.isEmpty()) {
+            log.debug("Version of response {} changed while it was loaded, writing it untagged", endpoint);
+            var format = negotiateFormat(request);
+            copyToResponse(gzip(format.objectMapper(), response), format, request.getRequest(), request.getResponse());
+            return;
+        }
+        request.getResponse().setHeader(HttpHeaders.ETAG, started.get());
+        write(entityKey + started.get(), () -> response, request);
+    }
+
+    private void write(String entityKey, Supplier<?> loader, ServletWebRequest request) {
+        var format = negotiateFormat(request);
+        var key = entityKey + format.keySuffix();
+        var body = offHeapCache.flatMap(cache -> cache.get(key)).orElse(null);
+        if (body == null) {
+            body = getOrLoad(key, format, loader);
+            var payload = body;
+            offHeapCache.ifPresent(cache -> cache.put(key, payload, ttl));
+        }
+        copyToResponse(body, format, request.getRequest(), request.getResponse());
+    }
+
+    /**
+     * Picks the format the client prefers most, falling back to JSON like the rest of the API would for
+     * a missing or unparsable Accept header.
+     */
+    private ResponseFormat negotiateFormat(ServletWebRequest request) {
+        try {
+            for (var mediaType : contentNegotiationManager.resolveMediaTypes(request)) {
+                for (var format : formats) {
+                    if (mediaType.includes(format.mediaType())) {
+                        return format;
+                    }
+                }
+            }
+        } catch (HttpMediaTypeNotAcceptableException e) {
+            log.debug("Invalid Accept header, responding with JSON: {}", e.getMessage());
+        }
+        return formats.get(0);
+    }
+
+    private byte[] getOrLoad(String key, ResponseFormat format, Supplier<?> loader) {
+        var keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        var body = get(keyBytes);
+        if (body == null) {
+            log.debug("Response not found in cache with key: {}", key);
+            // Loaded before anything is written, so errors still get a regular error response
+            body = gzip(format.objectMapper(), loader.get());
+            set(keyBytes, body);
+        }
+        return body;
+    }
+
+    private byte[] get(byte[] key) {
+        try {
+            return stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                    connection.stringCommands().get(key));
+        } catch (Exception e) {
+            log.warn("Failed to read cached response, serializing it instead: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void set(byte[] key, byte[] body) {
+        try {
+            stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                    .set(key, body, Expiration.from(ttl), RedisStringCommands.SetOption.upsert()));
+        } catch (Exception e) {
+            log.warn("Failed to cache response: {}", e.getMessage());
+        }
+    }
+
+    private static byte[] gzip(ObjectMapper objectMapper, Object value) {
+        var bytes = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(gzip, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize response", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void copyToResponse(byte[] body, ResponseFormat format, HttpServletRequest request,
+                                       HttpServletResponse response) {
+        response.setContentType(format.mediaType().toString());
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        try {
+            if (acceptsGzip(request)) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+                response.setContentLength(body.length);
+                response.getOutputStream().write(body);
+                return;
+            }
+            try (var inflated = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                inflated.transferTo(response.getOutputStream());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write response", e);
+        }
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        for (var header : Collections.list(request.getHeaders(HttpHeaders.ACCEPT_ENCODING))) {
+            for (var coding : header.split(",")) {
+                var parameters = coding.split(";");
+                var name = parameters[0].trim();
+                if ((GZIP.equalsIgnoreCase(name) || "*".equals(name)) && !isRejected(parameters)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRejected(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            var parameter = parameters[i].replace(" ", "");
+            if (parameter.matches("[qQ]=0(\\.0{0,3})?")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record ResponseFormat(MediaType mediaType, ObjectMapper objectMapper, String keySuffix) {
+    }
+}
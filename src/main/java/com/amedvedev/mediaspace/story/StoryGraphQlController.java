@@ -0,0 +1,45 @@
+package com.amedvedev.mediaspace.story;
+
+import com.amedvedev.mediaspace.story.dto.StoriesFeedEntry;
+import com.amedvedev.mediaspace.story.service.StoryViewService;
+import com.amedvedev.mediaspace.user.dto.UserDto;
+import com.amedvedev.mediaspace.user.service.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.graphql.data.method.annotation.BatchMapping;
+import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+@Controller
+@RequiredArgsConstructor
+public class StoryGraphQlController {
+
+    private final StoryViewService storyViewService;
+    private final UserService userService;
+
+    @QueryMapping
+    public Mono<List<StoriesFeedEntry>> storiesFeed() {
+        return Mono.fromSupplier(() -> List.copyOf(storyViewService.getStoriesFeed()));
+    }
+
+    @BatchMapping(typeName = "StoriesFeedEntry", field = "user")
+    public Mono<Map<StoriesFeedEntry, UserDto>> user(List<StoriesFeedEntry> entries) {
+        return Mono.fromSupplier(() -> {
+            var users = userService.getUserDtosByLowerCaseUsername(
+                    entries.stream().map(StoriesFeedEntry::getUsername).toList());
+            var publishers = new HashMap<StoriesFeedEntry, UserDto>();
+            entries.forEach(entry -> {
+                var publisher = users.get(entry.getUsername().toLowerCase(Locale.ROOT));
+                if (publisher != null) {
+                    publishers.put(entry, publisher);
+                }
+            });
+            return publishers;
+        });
+    }
+}
@@ -10,6 +10,8 @@ public interface StoryRepository extends JpaRepository<Story, Long> {
 
     List<Story> findByUserId(Long id);
 
+    long countByUserId(Long userId);
+
 //    @Query("""
 //            SELECT s FROM Story s
 //            WHERE s.user.id IN (
@@ -0,0 +1,30 @@
+package com.amedvedev.mediaspace.story.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Set;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoriesFeedChangesResponse {
+
+    @Schema(description = "The feed version the response brings the client to, to be sent as 'since' next time",
+            example = "1735689600001")
+    private long version;
+
+    @Schema(description = "Whether 'added' is the whole feed, which replaces what the client has, "
+            + "because the changes since the requested version are no longer known")
+    private boolean snapshot;
+
+    @Schema(description = "Entries added since the requested version, or the whole feed if this is a snapshot")
+    private Set<StoriesFeedEntry> added;
+
+    @Schema(description = "Entries removed since the requested version, always empty in a snapshot")
+    private Set<StoriesFeedEntry> removed;
+}
@@ -1,5 +1,6 @@
 package com.amedvedev.mediaspace.story.listener;
 
+import com.amedvedev.mediaspace.etag.EntityVersionRedisService;
 import com.amedvedev.mediaspace.feed.StoryFeedRedisService;
 import com.amedvedev.mediaspace.story.dto.StoriesFeedEntry;
 import com.amedvedev.mediaspace.story.event.StoryCreatedEvent;
@@ -17,6 +18,7 @@ public class StoryFeedListener {
 
     private final UserService userService;
     private final StoryFeedRedisService storyFeedRedisService;
+    private final EntityVersionRedisService entityVersionRedisService;
 
     @Async
     @EventListener
@@ -31,5 +33,6 @@ public class StoryFeedListener {
                 .profilePictureUrl(publisher.getProfilePictureUrl())
                 .build();
         storyFeedRedisService.cacheFeedEntryToFollowersFeeds(publisherId, storiesFeedEntry, followersIds);
+        entityVersionRedisService.bumpStoriesFeeds(followersIds);
     }
 }
@@ -1,5 +1,6 @@
 package com.amedvedev.mediaspace.story.service;
 
+import com.amedvedev.mediaspace.etag.EntityVersionRedisService;
 import com.amedvedev.mediaspace.exception.ForbiddenActionException;
 import com.amedvedev.mediaspace.feed.StoryFeedRedisService;
 import com.amedvedev.mediaspace.media.Media;
@@ -13,6 +14,7 @@ import com.amedvedev.mediaspace.story.event.StoryCreatedEvent;
 import com.amedvedev.mediaspace.story.exception.StoriesLimitReachedException;
 import com.amedvedev.mediaspace.story.exception.StoryNotFoundException;
 import com.amedvedev.mediaspace.user.User;
+import com.amedvedev.mediaspace.user.service.CurrentUserContext;
 import com.amedvedev.mediaspace.user.service.UserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -28,17 +30,19 @@ import java.util.List;
 public class StoryManagementService {
 
     private final UserService userService;
+    private final CurrentUserContext currentUserContext;
     private final StoryRepository storyRepository;
     private final StoryMapper storyMapper;
     private final StoryRedisService storyRedisService;
     private final StoryFeedRedisService storyFeedRedisService;
+    private final EntityVersionRedisService entityVersionRedisService;
     private final ApplicationEventPublisher eventPublisher;
 
     private static final int MAXIMUM_STORIES_COUNT = 30;
 
     @Transactional
     public StoryDto createStory(CreateStoryRequest request) {
-        var user = userService.getCurrentUser();
+        var user = currentUserContext.getUser();
         log.info("Creating story for user: {}", user.getUsername());
 
         verifyMaximumStoriesCountIsNotReached(user);
@@ -47,12 +51,14 @@ public class StoryManagementService {
         var savedStory = storyRepository.save(story);
 
         eventPublisher.publishEvent(new StoryCreatedEvent(this, savedStory));
+        // Stories trays of the followers are bumped by StoryFeedListener once the entry is fanned out
+        entityVersionRedisService.bumpProfiles(user.getUsername());
 
         return storyMapper.toStoryDto(savedStory);
     }
 
     private void verifyMaximumStoriesCountIsNotReached(User user) {
-        if (user.getStories().size() == MAXIMUM_STORIES_COUNT) {
+        if (storyRepository.countByUserId(user.getId()) >= MAXIMUM_STORIES_COUNT) {
             log.warn("Maximum number of stories reached for user: {}", user.getUsername());
             throw new StoriesLimitReachedException("Maximum number of stories reached");
         }
@@ -64,46 +70,40 @@ public class StoryManagementService {
         var media = Media.builder()
                 .url(request.getCreateMediaRequest().getUrl())
                 .build();
-        var story = Story.builder()
+        return Story.builder()
                 .user(user)
                 .media(media)
                 .build();
-        user.getStories().add(story);
-
-        return story;
     }
 
     @Transactional
     public void deleteStory(Long id) {
         log.info("Deleting story with id: {}", id);
         var story = findStoryById(id);
-        var currentUser = userService.getCurrentUser();
 
-        if (belongsToAnotherUser(currentUser, story)) {
+        if (!currentUserContext.isCurrentUser(story.getUser().getId())) {
             log.warn("Cannot delete story of another user");
             throw new ForbiddenActionException("Cannot delete story of another user");
         }
         
         storyRepository.delete(story);
         storyRedisService.deleteStory(story);
-        removeStoriesFeedEntryFromFollowersFeedsIfNoStoriesLeft(currentUser);
+        removeStoriesFeedEntryFromFollowersFeedsIfNoStoriesLeft(story.getUser());
+        entityVersionRedisService.bumpProfiles(story.getUser().getUsername());
     }
 
     private void removeStoriesFeedEntryFromFollowersFeedsIfNoStoriesLeft(User currentUser) {
-        // 1 because during the transaction the story is still in the user's stories list
-        if (currentUser.getStories().size() == 1) {
+        // The count query flushes the pending delete, so the removed story is not counted
+        var userId = currentUser.getId();
+        if (storyRepository.countByUserId(userId) == 0) {
             log.debug("No stories left for user: {}", currentUser.getUsername());
-            var userId = currentUser.getId();
             var followersIds = userService.getFollowersIdsByUserId(userId);
             var storiesFeedEntry = StoriesFeedEntry.builder().username(currentUser.getUsername()).build();
             storyFeedRedisService.deleteFeedEntryFromFollowersFeeds(userId, storiesFeedEntry, followersIds);
+            entityVersionRedisService.bumpStoriesFeeds(followersIds);
         }
     }
 
-    private static boolean belongsToAnotherUser(User currentUser, Story story) {
-        return !story.getUser().getUsername().equals(currentUser.getUsername());
-    }
-
     public Story findStoryById(Long id) {
         log.debug("Retrieving story with id from database: {}", id);
         return storyRepository.findById(id).orElseThrow(() -> {
@@ -2,12 +2,13 @@ package com.amedvedev.mediaspace.story.service;
 
 import com.amedvedev.mediaspace.feed.StoryFeedRedisService;
 import com.amedvedev.mediaspace.story.*;
+import com.amedvedev.mediaspace.story.dto.StoriesFeedChangesResponse;
 import com.amedvedev.mediaspace.story.dto.StoriesFeedEntry;
 import com.amedvedev.mediaspace.story.dto.StoryDto;
 import com.amedvedev.mediaspace.story.dto.StoryPreviewResponse;
 import com.amedvedev.mediaspace.story.dto.ViewStoryResponse;
 import com.amedvedev.mediaspace.story.exception.StoryNotFoundException;
-import com.amedvedev.mediaspace.user.User;
+import com.amedvedev.mediaspace.user.service.CurrentUserContext;
 import com.amedvedev.mediaspace.user.service.UserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -28,35 +29,89 @@ public class StoryViewService {
     private final StoryRedisService storyRedisService;
     private final StoryFeedRedisService storyFeedRedisService;
     private final UserService userService;
+    private final CurrentUserContext currentUserContext;
 
     @Transactional(readOnly = true)
     public Set<StoriesFeedEntry> getStoriesFeed() {
-        var user = userService.getCurrentUser();
-        log.info("Retrieving stories feed for user: {}", user.getUsername());
+        var userId = currentUserContext.getId();
+        log.info("Retrieving stories feed for user: {}", currentUserContext.getUsername());
         
-        var storiesFeedResponsesOptional = storyFeedRedisService.getStoriesFeedByUserId(user.getId());
+        var storiesFeedResponsesOptional = storyFeedRedisService.getStoriesFeedByUserId(userId);
         if (storiesFeedResponsesOptional.isPresent()) {
-            log.debug("Stories feed found in cache for user with id: {}", user.getId());
+            log.debug("Stories feed found in cache for user with id: {}", userId);
             return storiesFeedResponsesOptional.get();
         }
         
-        log.debug("Stories feed not found in cache for user with id: {}", user.getId());
-        return getStoriesFromDb(user);
+        log.debug("Stories feed not found in cache for user with id: {}", userId);
+        storyFeedRedisService.resetFeedChanges(userId);
+        return getStoriesFromDb(userId);
     }
 
-    private Set<StoriesFeedEntry> getStoriesFromDb(User user) {
-        var storyFeedProjections = storyRepository.findStoryFeedByUserId(user.getId());
+    /**
+     * Returns the entries added to and removed from the stories feed since the given version, or a snapshot of
+     * the whole feed if the change log no longer reaches back that far. The version is read before the feed, so a
+     * change made in between is sent again with the next call, which is harmless since applying it is idempotent.
+     */
+    @Transactional(readOnly = true)
+    public StoriesFeedChangesResponse getStoriesFeedChanges(long since) {
+        var userId = currentUserContext.getId();
+        log.info("Retrieving stories feed changes since version {} for user: {}", since, currentUserContext.getUsername());
+
+        var feedChanges = storyFeedRedisService.getFeedChangesSince(userId, since);
+        if (!feedChanges.complete()) {
+            return getStoriesFeedSnapshot(userId, feedChanges.version());
+        }
+
+        // Only the last change of an entry counts, an entry added and removed again is just removed
+        var added = new LinkedHashMap<String, StoriesFeedEntry>();
+        var removed = new LinkedHashMap<String, StoriesFeedEntry>();
+        feedChanges.changes().forEach(change -> {
+            var entry = change.entry();
+            if (change.added()) {
+                removed.remove(entry.getUsername());
+                added.put(entry.getUsername(), entry);
+            } else {
+                added.remove(entry.getUsername());
+                removed.put(entry.getUsername(), entry);
+            }
+        });
+
+        return StoriesFeedChangesResponse.builder()
+                .version(feedChanges.version())
+                .snapshot(false)
+                .added(new LinkedHashSet<>(added.values()))
+                .removed(new LinkedHashSet<>(removed.values()))
+                .build();
+    }
+
+    private StoriesFeedChangesResponse getStoriesFeedSnapshot(Long userId, long version) {
+        log.debug("Sending stories feed snapshot to user with id: {}", userId);
+        var feed = storyFeedRedisService.getStoriesFeedByUserId(userId);
+        if (feed.isEmpty()) {
+            // Reset before reading, so changes made while the feed is read are logged after the returned version
+            version = storyFeedRedisService.resetFeedChanges(userId);
+            feed = Optional.of(getStoriesFromDb(userId));
+        }
+        return StoriesFeedChangesResponse.builder()
+                .version(version)
+                .snapshot(true)
+                .added(feed.get())
+                .removed(Set.of())
+                .build();
+    }
+
+    private Set<StoriesFeedEntry> getStoriesFromDb(Long userId) {
+        var storyFeedProjections = storyRepository.findStoryFeedByUserId(userId);
         var storiesFeedResponses = storyFeedProjections.stream()
                 .map(storyMapper::toStoryFeedResponse)
                 .collect(Collectors.toSet());
-        storyFeedRedisService.cacheStoriesFeedByUserId(user.getId(), storiesFeedResponses);
+        storyFeedRedisService.cacheStoriesFeedByUserId(userId, storiesFeedResponses);
         return storiesFeedResponses;
     }
 
     @Transactional(readOnly = true)
     public List<StoryPreviewResponse> getCurrentUserStoriesPreviews() {
-        var user = userService.getCurrentUserDto();
-        return getStoriesPreviewsOfUser(user.getUsername());
+        return getStoryPreviewResponses(currentUserContext.getId());
     }
 
     @Transactional(readOnly = true)
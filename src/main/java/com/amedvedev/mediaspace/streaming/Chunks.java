@@ -0,0 +1,46 @@
+package com.amedvedev.mediaspace.streaming;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Groups streamed rows into lists, so that state kept elsewhere can be merged in with one call per list.
+ */
+public final class Chunks {
+
+    private Chunks() {
+    }
+
+    /**
+     * Rows are only read as the chunks are consumed, and closing the returned stream closes the rows.
+     */
+    public static <T> Stream<List<T>> of(Stream<T> rows, int chunkSize) {
+        var rowIterator = rows.iterator();
+        var chunkIterator = new Iterator<List<T>>() {
+            @Override
+            public boolean hasNext() {
+                return rowIterator.hasNext();
+            }
+
+            @Override
+            public List<T> next() {
+                if (!rowIterator.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                var chunk = new ArrayList<T>(chunkSize);
+                while (chunk.size() < chunkSize && rowIterator.hasNext()) {
+                    chunk.add(rowIterator.next());
+                }
+                return chunk;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chunkIterator, Spliterator.ORDERED), false)
+                .onClose(rows::close);
+    }
+}
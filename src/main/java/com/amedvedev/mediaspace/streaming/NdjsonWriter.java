@@ -0,0 +1,56 @@
+package com.amedvedev.mediaspace.streaming;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Writes chunks of values as newline-delimited JSON while they are produced. Every chunk is flushed once written,
+ * so only one chunk is in memory at a time and the client gets the first values before the last ones are read.
+ * <p>
+ * The response is only touched once writing starts, so errors thrown before that still get a regular JSON error body.
+ * Errors after the first chunk can only abort the response.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NdjsonWriter {
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @return the number of written lines
+     */
+    public int write(Stream<? extends List<?>> chunks, HttpServletResponse response) {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        var writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (var generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.setRootValueSeparator(null);
+            var written = 0;
+            var iterator = chunks.iterator();
+            while (iterator.hasNext()) {
+                for (var value : iterator.next()) {
+                    writer.writeValue(generator, value);
+                    generator.writeRaw('\n');
+                    written++;
+                }
+                generator.flush();
+            }
+            log.debug("Streamed {} lines", written);
+            return written;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to stream response", e);
+        }
+    }
+}
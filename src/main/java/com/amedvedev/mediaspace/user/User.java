@@ -103,6 +103,11 @@ public class User implements UserDetails {
     @Column(name = "is_deleted", nullable = false)
     private boolean isDeleted = false;
 
+    // Tokens issued with an older version are rejected by JwtAuthenticationFilter
+    @Builder.Default
+    @Column(name = "token_version", nullable = false)
+    private long tokenVersion = 0;
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return List.of();
@@ -133,6 +138,10 @@ public class User implements UserDetails {
         user.followers.remove(this);
     }
     
+    public void revokeTokens() {
+        tokenVersion++;
+    }
+
     public String getProfilePictureUrl() {
         return profilePicture == null ? null : profilePicture.getUrl();
     }
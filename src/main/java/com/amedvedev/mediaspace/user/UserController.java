@@ -1,11 +1,16 @@
 package com.amedvedev.mediaspace.user;
 
+import com.amedvedev.mediaspace.etag.ETagService;
+import com.amedvedev.mediaspace.responsecache.ResponseBytesCache;
 import com.amedvedev.mediaspace.user.dto.*;
 import com.amedvedev.mediaspace.exception.dto.GeneralErrorResponse;
 import com.amedvedev.mediaspace.exception.dto.ValidationErrorResponse;
 import com.amedvedev.mediaspace.user.service.UserProfileService;
+import com.amedvedev.mediaspace.user.service.UserSearchService;
 import com.amedvedev.mediaspace.user.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -15,6 +20,10 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.List;
+import java.util.Locale;
 
 @RestController
 @RequiredArgsConstructor
@@ -24,6 +33,9 @@ public class UserController {
 
     private final UserService userService;
     private final UserProfileService userProfileService;
+    private final UserSearchService userSearchService;
+    private final ETagService eTagService;
+    private final ResponseBytesCache responseBytesCache;
 
     // TODO: REFACTOR INTO SEARCHING MANY USERS
 //    @Operation(summary = "Get user by username", description = "Returns the user by username.")
@@ -47,29 +59,60 @@ public class UserController {
 //        return userService.getUserDtoByUsername(username);
 //    }
 
-    @Operation(summary = "Get authenticated user")
+    @Operation(summary = "Get authenticated user",
+            description = "Supports conditional requests, the profile is not loaded if the ETag in If-None-Match is current.")
     @ApiResponses(value = {
             @ApiResponse(
                     responseCode = "200", description = "Authenticated user data",
                     content = @Content(schema = @Schema(implementation = ViewUserProfileResponse.class))
             ),
+            @ApiResponse(
+                    responseCode = "304", description = "Not modified since the version in If-None-Match"
+            ),
             @ApiResponse(
                     responseCode = "401", description = "Unauthorized",
                     content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
             ),
     })
     @GetMapping("/me")
+    public void me(ServletWebRequest request) {
+        var eTag = eTagService.getCurrentUserProfileETag();
+        if (eTag.current().map(request::checkNotModified).orElse(false)) {
+            return;
+        }
+        responseBytesCache.writePerViewer("me", eTag, userProfileService::getCurrentUserProfile, request);
+    }
+
+    @Operation(summary = "Autocomplete usernames",
+            description = "Returns users whose username starts with the prefix (case-insensitive), most followed first.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200", description = "Matching users, empty if none",
+                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = UserSuggestionResponse.class)))
+            ),
+            @ApiResponse(
+                    responseCode = "401", description = "Unauthorized",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            )
+    })
+    @GetMapping("/search")
     @ResponseStatus(HttpStatus.OK)
-    public ViewUserProfileResponse me() {
-        return userProfileService.getCurrentUserProfile();
+    public List<UserSuggestionResponse> searchUsers(
+            @Parameter(description = "The beginning of the username") @RequestParam String prefix,
+            @Parameter(description = "The number of users, at most 20") @RequestParam(defaultValue = "10") int limit) {
+        return userSearchService.suggestUsers(prefix, limit);
     }
 
-    @Operation(summary = "Get user profile by username")
+    @Operation(summary = "Get user profile by username",
+            description = "Supports conditional requests, the profile is not loaded if the ETag in If-None-Match is current.")
     @ApiResponses(value = {
             @ApiResponse(
                     responseCode = "200", description = "User found",
                     content = @Content(schema = @Schema(implementation = ViewUserProfileResponse.class))
             ),
+            @ApiResponse(
+                    responseCode = "304", description = "Not modified since the version in If-None-Match"
+            ),
             @ApiResponse(
                     responseCode = "401", description = "Unauthorized",
                     content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
@@ -80,9 +123,34 @@ public class UserController {
             )
     })
     @GetMapping("/{username}")
+    public void getUserProfile(@PathVariable String username, ServletWebRequest request) {
+        var eTag = eTagService.getProfileETag(username);
+        if (eTag.current().map(request::checkNotModified).orElse(false)) {
+            return;
+        }
+        responseBytesCache.writePerViewer("profile:" + username.toLowerCase(Locale.ROOT), eTag,
+                () -> userProfileService.getUserProfile(username), request);
+    }
+
+    @Operation(summary = "Get users in batch", description = "Resolves up to 100 users by ids and up to 100 users by usernames in one request. Unknown users are skipped.")
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200", description = "Users found",
+                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = UserDto.class)))
+            ),
+            @ApiResponse(
+                    responseCode = "400", description = "Invalid input",
+                    content = @Content(schema = @Schema(implementation = ValidationErrorResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "401", description = "Unauthorized",
+                    content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))
+            )
+    })
+    @PostMapping("/batch")
     @ResponseStatus(HttpStatus.OK)
-    public ViewUserProfileResponse getUserProfile(@PathVariable String username) {
-        return userProfileService.getUserProfile(username);
+    public List<UserDto> getUsersBatch(@Valid @RequestBody BatchUsersRequest request) {
+        return userService.getUserDtosBatch(request);
     }
 
     @Operation(summary = "Follow a user")
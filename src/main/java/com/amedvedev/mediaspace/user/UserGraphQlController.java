@@ -0,0 +1,30 @@
+package com.amedvedev.mediaspace.user;
+
+import com.amedvedev.mediaspace.user.dto.UserDto;
+import com.amedvedev.mediaspace.user.service.UserService;
+import jakarta.validation.constraints.Size;
+import lombok.RequiredArgsConstructor;
+import org.springframework.graphql.data.method.annotation.Argument;
+import org.springframework.graphql.data.method.annotation.QueryMapping;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@Controller
+@RequiredArgsConstructor
+public class UserGraphQlController {
+
+    private final UserService userService;
+
+    @QueryMapping
+    public Mono<UserDto> user(@Argument String username) {
+        return Mono.fromSupplier(() -> userService.getUserDtoByUsername(username));
+    }
+
+    @QueryMapping
+    public Mono<List<UserDto>> users(
+            @Argument @Size(max = 100, message = "Cannot request more than 100 users at once") List<Long> ids) {
+        return Mono.fromSupplier(() -> userService.getUserDtosByIds(ids));
+    }
+}
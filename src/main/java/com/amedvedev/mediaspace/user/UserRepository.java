@@ -1,11 +1,15 @@
 package com.amedvedev.mediaspace.user;
 
 import com.amedvedev.mediaspace.post.Post;
+import com.amedvedev.mediaspace.user.projection.TokenStateProjection;
+import com.amedvedev.mediaspace.user.projection.UsernameIndexEntryProjection;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,4 +21,38 @@ public interface UserRepository extends CrudRepository<User, Long> {
     // Query to avoid soft deleted users being excluded in order to tell the user that the account can be restored
     @Query(value = "SELECT * FROM _user WHERE LOWER(username) = LOWER(:username)", nativeQuery = true)
     Optional<User> findByUsernameIgnoreCaseAndIncludeSoftDeleted(@Param("username") String username);
+
+    // Usernames are expected to be lower-cased by the caller
+    @Query("SELECT u FROM User u WHERE LOWER(u.username) IN :usernames")
+    List<User> findAllByLowerCaseUsernameIn(@Param("usernames") Collection<String> usernames);
+
+    // Native to include soft deleted users, so that tokens of deleted accounts can be told apart from unknown ones
+    @Query(value = "SELECT token_version AS \"tokenVersion\", is_deleted AS \"deleted\" FROM _user WHERE id = :id", nativeQuery = true)
+    Optional<TokenStateProjection> findTokenStateById(@Param("id") Long id);
+
+    // Does not touch token_version, rehashing the same password must not log the user out.
+    // Only replaces the hash that was verified, a password changed in the meantime is kept
+    @Modifying
+    @Query(value = "UPDATE _user SET password = :password WHERE id = :id AND password = :oldPassword",
+            nativeQuery = true)
+    int updatePasswordById(@Param("id") Long id, @Param("oldPassword") String oldPassword,
+                           @Param("password") String password);
+
+    @Query(value = """
+            SELECT u.id AS "id", u.username AS "username",
+                   (SELECT COUNT(*) FROM follow f WHERE f.followee_id = u.id) AS "followersCount"
+            FROM _user u
+            WHERE u.is_deleted = FALSE AND u.id > :afterId
+            ORDER BY u.id
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UsernameIndexEntryProjection> findUsernameIndexEntries(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    @Query(value = """
+            SELECT u.id AS "id", u.username AS "username",
+                   (SELECT COUNT(*) FROM follow f WHERE f.followee_id = u.id) AS "followersCount"
+            FROM _user u
+            WHERE u.is_deleted = FALSE AND u.id IN (:ids)
+            """, nativeQuery = true)
+    List<UsernameIndexEntryProjection> findUsernameIndexEntriesByIds(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,27 @@
+package com.amedvedev.mediaspace.user.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchUsersRequest {
+
+    @Size(max = 100, message = "Cannot request more than 100 users by id at once")
+    @Schema(description = "IDs of the users to resolve", example = "[1, 2, 3]", nullable = true)
+    private List<@NotNull(message = "User ids cannot be null") Long> ids;
+
+    @Size(max = 100, message = "Cannot request more than 100 users by username at once")
+    @Schema(description = "Usernames of the users to resolve", example = "[\"username\", \"another_username\"]", nullable = true)
+    private List<@NotBlank(message = "Usernames cannot be blank") String> usernames;
+}
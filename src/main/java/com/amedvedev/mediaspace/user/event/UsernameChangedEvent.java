@@ -0,0 +1,21 @@
+package com.amedvedev.mediaspace.user.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+@Getter
+public class UsernameChangedEvent extends ApplicationEvent {
+
+    private final Long userId;
+
+    private final String oldUsername;
+
+    private final String newUsername;
+
+    public UsernameChangedEvent(Object source, Long userId, String oldUsername, String newUsername) {
+        super(source);
+        this.userId = userId;
+        this.oldUsername = oldUsername;
+        this.newUsername = newUsername;
+    }
+}
@@ -0,0 +1,8 @@
+package com.amedvedev.mediaspace.user.projection;
+
+public interface TokenStateProjection {
+
+    Long getTokenVersion();
+
+    Boolean getDeleted();
+}
@@ -0,0 +1,10 @@
+package com.amedvedev.mediaspace.user.projection;
+
+public interface UsernameIndexEntryProjection {
+
+    Long getId();
+
+    String getUsername();
+
+    Long getFollowersCount();
+}
@@ -0,0 +1,85 @@
+package com.amedvedev.mediaspace.user.service;
+
+import com.amedvedev.mediaspace.auth.JwtPrincipal;
+import com.amedvedev.mediaspace.user.User;
+import com.amedvedev.mediaspace.user.UserRepository;
+import com.amedvedev.mediaspace.user.exception.UserNotFoundException;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.annotation.RequestScope;
+
+/**
+ * Holds the authenticated user for the duration of a request. The id comes straight from the JWT principal,
+ * so services that only need to check ownership or link an entity to the user don't have to load it.
+ */
+@Slf4j
+@Component
+@RequestScope
+@RequiredArgsConstructor
+public class CurrentUserContext {
+
+    private static final String INVALID_AUTHENTICATION_MESSAGE =
+            "Authentication object is invalid or does not contain a username";
+
+    private final UserRepository userRepository;
+    private final EntityManager entityManager;
+
+    private Long userId;
+
+    public Long getId() {
+        if (userId == null) {
+            userId = resolveUserId();
+        }
+        return userId;
+    }
+
+    public String getUsername() {
+        return getAuthentication().getName();
+    }
+
+    /**
+     * Returns an uninitialized proxy of the current user, suitable for setting associations on write.
+     */
+    public User getReference() {
+        return entityManager.getReference(User.class, getId());
+    }
+
+    /**
+     * Loads the current user by primary key. Repeated calls within the same persistence context
+     * are served from the first-level cache.
+     */
+    public User getUser() {
+        var id = getId();
+        log.debug("Retrieving current user with id: {}", id);
+        return userRepository.findById(id).orElseThrow(() -> new UserNotFoundException(INVALID_AUTHENTICATION_MESSAGE));
+    }
+
+    public boolean isCurrentUser(Long id) {
+        return getId().equals(id);
+    }
+
+    private Long resolveUserId() {
+        var authentication = getAuthentication();
+        if (authentication.getPrincipal() instanceof JwtPrincipal principal) {
+            return principal.getId();
+        }
+
+        var username = authentication.getName();
+        log.debug("Principal does not carry user id, resolving it by username: {}", username);
+        return userRepository.findByUsernameIgnoreCase(username)
+                .map(User::getId)
+                .orElseThrow(() -> new UserNotFoundException(INVALID_AUTHENTICATION_MESSAGE));
+    }
+
+    private Authentication getAuthentication() {
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null) {
+            throw new UserNotFoundException(INVALID_AUTHENTICATION_MESSAGE);
+        }
+        return authentication;
+    }
+}
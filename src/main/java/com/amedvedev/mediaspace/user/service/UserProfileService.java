@@ -1,8 +1,6 @@
 package com.amedvedev.mediaspace.user.service;
 
-import com.amedvedev.mediaspace.post.PostMapper;
 import com.amedvedev.mediaspace.post.PostService;
-import com.amedvedev.mediaspace.post.dto.UserProfilePostResponse;
 import com.amedvedev.mediaspace.story.service.StoryManagementService;
 import com.amedvedev.mediaspace.user.UserMapper;
 import com.amedvedev.mediaspace.user.dto.UserDto;
@@ -13,8 +11,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
-
 @Slf4j
 @Service
 @RequiredArgsConstructor
@@ -24,7 +20,6 @@ public class UserProfileService {
     private final PostService postService;
     private final StoryManagementService storyManagementService;
     private final UserMapper userMapper;
-    private final PostMapper postMapper;
 
     @Transactional(readOnly = true)
     public ViewUserProfileResponse getCurrentUserProfile() {
@@ -43,18 +38,11 @@ public class UserProfileService {
     public ViewUserProfileResponse getUserProfileForUserDto(UserDto userDto) {
         var id = userDto.getId();
         log.info("Fetching profile of user with id: {}", id);
-        var posts = getPosts(id);
+        var posts = postService.getUserProfilePostResponses(id);
         var stories = storyManagementService.getStoriesIdsByUserId(id);
         var followersCount = userService.getFollowersCount(id);
         var followingCount = userService.getFollowingCount(id);
         log.debug("Mapping user profile response");
         return userMapper.toViewUserProfileResponse(userDto, posts, stories, followersCount, followingCount);
     }
-
-    private List<UserProfilePostResponse> getPosts(Long id) {
-        var posts = postService.findPostsByUserId(id);
-        return posts.stream()
-                .map(postMapper::toUserProfilePostResponse)
-                .toList();
-    }
 }
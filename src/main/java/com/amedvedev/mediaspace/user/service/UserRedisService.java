@@ -5,10 +5,14 @@ import com.amedvedev.mediaspace.user.UserMapper;
 import com.amedvedev.mediaspace.user.dto.UserDto;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.stereotype.Service;
 
-import java.util.Optional;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -46,6 +50,29 @@ public class UserRedisService {
         redisTemplate.opsForValue().set(key, userDto, DEFAULT_USER_TTL, TimeUnit.HOURS);
     }
 
+    public void cacheUsers(Collection<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+
+        log.debug("Caching id mappings and dtos of {} users in one pipeline", users.size());
+        var valueSerializer = new GenericJackson2JsonRedisSerializer();
+        var userTtl = Expiration.from(DEFAULT_USER_TTL, TimeUnit.HOURS);
+        var usernameToIdTtl = Expiration.from(DEFAULT_USERNAME_TO_ID_TTL, TimeUnit.HOURS);
+
+        redisTemplate.executePipelined((RedisCallback<?>) connection -> {
+            users.forEach(user -> {
+                var userDtoBytes = valueSerializer.serialize(userMapper.toUserDto(user));
+                var idBytes = valueSerializer.serialize(user.getId());
+                connection.stringCommands().set(constructUserKey(user.getId()).getBytes(), userDtoBytes,
+                        userTtl, RedisStringCommands.SetOption.upsert());
+                connection.stringCommands().set(constructUsernameToIdMappingKey(user.getUsername()).getBytes(), idBytes,
+                        usernameToIdTtl, RedisStringCommands.SetOption.upsert());
+            });
+            return null;
+        });
+    }
+
     public Optional<UserDto> getUserDtoByUsername(String username) {
         log.debug("Retrieving user by username: {}", username);
         var userId = getCachedUserIdByUsername(username);
@@ -54,7 +81,7 @@ public class UserRedisService {
 
     private Optional<Long> getCachedUserIdByUsername(String username) {
         var key = constructUsernameToIdMappingKey(username);
-        var userIdObj = redisTemplate.opsForValue().get(key);
+        var userIdObj = redisTemplate.opsForValue().getAndExpire(key, DEFAULT_USERNAME_TO_ID_TTL, TimeUnit.HOURS);
 
         if (userIdObj == null) {
             log.debug("User ID not found in cache for username: {}", username);
@@ -62,9 +89,7 @@ public class UserRedisService {
         }
 
         if (userIdObj instanceof Number) {
-            long userId = ((Number) userIdObj).longValue();
-            refreshKeyTtl(key, DEFAULT_USERNAME_TO_ID_TTL, TimeUnit.HOURS);
-            return Optional.of(userId);
+            return Optional.of(((Number) userIdObj).longValue());
         }
 
         log.error("Unexpected type for user ID in cache. Expected a Number, but found object of class {}", userIdObj.getClass());
@@ -74,17 +99,61 @@ public class UserRedisService {
     private Optional<UserDto> getUserDtoById(Long id) {
         log.debug("Retrieving UserDto from cache with id: {}", id);
         var key = constructUserKey(id);
-        var userDto = (UserDto) redisTemplate.opsForValue().get(key);
+        var userDto = (UserDto) redisTemplate.opsForValue().getAndExpire(key, DEFAULT_USER_TTL, TimeUnit.HOURS);
 
         if (userDto == null) {
             log.debug("User not found in cache with key: {}", key);
             return Optional.empty();
         }
 
-        refreshKeyTtl(key, DEFAULT_USER_TTL, TimeUnit.HOURS);
         return Optional.of(userDto);
     }
 
+    /**
+     * Resolves many user dtos with a single MGET. Only cache hits are returned, keyed by user id.
+     */
+    public Map<Long, UserDto> getUserDtosByIds(Collection<Long> ids) {
+        log.debug("Retrieving UserDtos from cache with ids: {}", ids);
+        var idsList = List.copyOf(ids);
+        var keys = idsList.stream().map(this::constructUserKey).toList();
+        var values = redisTemplate.opsForValue().multiGet(keys);
+
+        var userDtos = new HashMap<Long, UserDto>();
+        if (values == null) {
+            return userDtos;
+        }
+
+        for (int i = 0; i < idsList.size(); i++) {
+            if (values.get(i) instanceof UserDto userDto) {
+                userDtos.put(idsList.get(i), userDto);
+            }
+        }
+        log.debug("Found {} of {} users in cache", userDtos.size(), idsList.size());
+        return userDtos;
+    }
+
+    /**
+     * Resolves many username-to-id mappings with a single MGET. Only cache hits are returned, keyed by username.
+     */
+    public Map<String, Long> getUserIdsByUsernames(Collection<String> usernames) {
+        log.debug("Retrieving user ids from cache for usernames: {}", usernames);
+        var usernamesList = List.copyOf(usernames);
+        var keys = usernamesList.stream().map(this::constructUsernameToIdMappingKey).toList();
+        var values = redisTemplate.opsForValue().multiGet(keys);
+
+        var userIds = new HashMap<String, Long>();
+        if (values == null) {
+            return userIds;
+        }
+
+        for (int i = 0; i < usernamesList.size(); i++) {
+            if (values.get(i) instanceof Number userId) {
+                userIds.put(usernamesList.get(i), userId.longValue());
+            }
+        }
+        return userIds;
+    }
+
     public void deleteUser(User user) {
         log.debug("Deleting id mapping and dto of user id: {}", user.getId());
         deleteUserDtoById(user.getId());
@@ -116,27 +185,22 @@ public class UserRedisService {
         var lookingFor = countTypePostfix.replaceAll("([:_])", " ").trim();
         log.debug("Retrieving {} from cache for user with id: {}", lookingFor, userId);
         var key = USER_PREFIX + userId + countTypePostfix;
-        Integer count = (Integer) redisTemplate.opsForValue().get(key);
+        Integer count = (Integer) redisTemplate.opsForValue().getAndExpire(key, DEFAULT_USER_TTL, TimeUnit.HOURS);
 
         if (count == null) {
             log.debug("{} not found in cache for user with id: {}", lookingFor, userId);
             return Optional.empty();
         }
 
-        refreshKeyTtl(key, DEFAULT_USER_TTL, TimeUnit.HOURS);
         return Optional.of(count);
     }
 
-    private void refreshKeyTtl(String key, int ttl, TimeUnit timeUnit) {
-        log.debug("Updating TTL for key: {}", key);
-        redisTemplate.expire(key, ttl, timeUnit);
-    }
-
     private String constructUserKey(Long id) {
         return USER_PREFIX + id;
     }
 
+    // Usernames are unique regardless of case, so mappings are written and read under the lower case name
     private String constructUsernameToIdMappingKey(String username) {
-        return USERNAME_TO_ID_PREFIX + username;
+        return USERNAME_TO_ID_PREFIX + username.toLowerCase(Locale.ROOT);
     }
 }
@@ -0,0 +1,110 @@
+package com.amedvedev.mediaspace.user.service;
+
+import com.amedvedev.mediaspace.user.UserRepository;
+import com.amedvedev.mediaspace.user.dto.UserSuggestionResponse;
+import com.amedvedev.mediaspace.user.projection.UsernameIndexEntryProjection;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserSearchService {
+
+    private static final int MAX_SUGGESTIONS = 20;
+    private static final int REBUILD_BATCH_SIZE = 5000;
+    private static final int MAX_COMPLETE_ATTEMPTS = 10;
+
+    // Same characters and length as allowed in usernames, anything else cannot match
+    private static final Pattern PREFIX_PATTERN = Pattern.compile("^[a-z0-9._-]{1,20}$");
+
+    private final UserRepository userRepository;
+    private final UsernameIndexRedisService usernameIndexRedisService;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIndexOnStartup() {
+        try {
+            rebuildIndex();
+        } catch (Exception e) {
+            log.error("Failed to build username index, autocomplete may miss users: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Rebuilds the username index from the database in batches and swaps it in at once. Users written to while the
+     * rebuild runs are read again before the swap. Skipped if another instance is already rebuilding the index.
+     */
+    public void rebuildIndex() {
+        var runId = usernameIndexRedisService.startRebuild().orElse(null);
+        if (runId == null) {
+            log.info("Username index is being rebuilt by another instance, skipping");
+            return;
+        }
+
+        var completed = false;
+        try {
+            log.info("Building username index");
+            var afterId = 0L;
+            var total = 0;
+            List<UsernameIndexEntryProjection> entries;
+            do {
+                entries = userRepository.findUsernameIndexEntries(afterId, REBUILD_BATCH_SIZE);
+                if (entries.isEmpty()) {
+                    break;
+                }
+                usernameIndexRedisService.addToRebuild(runId, entries);
+                afterId = entries.getLast().getId();
+                total += entries.size();
+            } while (entries.size() == REBUILD_BATCH_SIZE);
+
+            completed = mergeChangesAndComplete(runId);
+            if (completed) {
+                log.info("Built username index of {} users", total);
+            }
+        } finally {
+            if (!completed) {
+                usernameIndexRedisService.abortRebuild(runId);
+            }
+        }
+    }
+
+    private boolean mergeChangesAndComplete(String runId) {
+        for (var attempt = 0; attempt < MAX_COMPLETE_ATTEMPTS; attempt++) {
+            List<String> changes;
+            while (!(changes = usernameIndexRedisService.popRebuildChanges(REBUILD_BATCH_SIZE)).isEmpty()) {
+                var ids = changes.stream().map(UsernameIndexRedisService::getUserId).collect(Collectors.toSet());
+                usernameIndexRedisService.mergeIntoRebuild(runId, changes,
+                        userRepository.findUsernameIndexEntriesByIds(ids));
+            }
+            switch (usernameIndexRedisService.completeRebuild(runId)) {
+                case COMPLETED -> {
+                    return true;
+                }
+                case LOCK_LOST -> {
+                    log.warn("Lost the username index rebuild lock, dropping the rebuilt index");
+                    return false;
+                }
+                case CHANGED -> log.debug("Users changed while completing the username index rebuild, merging again");
+            }
+        }
+        log.warn("Users kept changing while completing the username index rebuild, keeping the current index");
+        return false;
+    }
+
+    public List<UserSuggestionResponse> suggestUsers(String prefix, int limit) {
+        var normalizedPrefix = prefix == null ? "" : prefix.strip().toLowerCase(Locale.ROOT);
+        if (!PREFIX_PATTERN.matcher(normalizedPrefix).matches()) {
+            log.debug("Prefix {} cannot match any username", prefix);
+            return List.of();
+        }
+        return usernameIndexRedisService.findByPrefix(normalizedPrefix, Math.clamp(limit, 1, MAX_SUGGESTIONS));
+    }
+}
@@ -1,9 +1,13 @@
 package com.amedvedev.mediaspace.user.service;
 
+import com.amedvedev.mediaspace.auth.PasswordHashingService;
+import com.amedvedev.mediaspace.auth.TokenVersionService;
+import com.amedvedev.mediaspace.etag.EntityVersionRedisService;
 import com.amedvedev.mediaspace.user.User;
 import com.amedvedev.mediaspace.user.UserMapper;
 import com.amedvedev.mediaspace.user.UserRepository;
 import com.amedvedev.mediaspace.user.dto.*;
+import com.amedvedev.mediaspace.user.event.UsernameChangedEvent;
 import com.amedvedev.mediaspace.user.exception.FollowException;
 import com.amedvedev.mediaspace.user.exception.UserIsNotDeletedException;
 import com.amedvedev.mediaspace.user.exception.UserNotFoundException;
@@ -11,13 +15,14 @@ import com.amedvedev.mediaspace.user.exception.UserUpdateException;
 import com.amedvedev.mediaspace.user.follow.FollowRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.authentication.BadCredentialsException;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -27,22 +32,26 @@ public class UserService {
     private final UserRepository userRepository;
     private final UserMapper userMapper;
     private final UserRedisService userRedisService;
+    private final UsernameIndexRedisService usernameIndexRedisService;
+    private final EntityVersionRedisService entityVersionRedisService;
     private final FollowRepository followRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
+    private final TokenVersionService tokenVersionService;
+    private final CurrentUserContext currentUserContext;
+    private final ApplicationEventPublisher eventPublisher;
     
     @Transactional(readOnly = true)
     public User getCurrentUser() {
-        var username = SecurityContextHolder.getContext().getAuthentication().getName();
-        log.debug("Retrieving user from token with username: {}", username);
-
-        return userRepository.findByUsernameIgnoreCase(username).orElseThrow(
-                () -> new UserNotFoundException("Authentication object is invalid or does not contain a username"));
+        return currentUserContext.getUser();
     }
 
+    @Transactional(readOnly = true)
     public UserDto getCurrentUserDto() {
-        var username = SecurityContextHolder.getContext().getAuthentication().getName();
-        log.debug("Getting current user from token with username: {}", username);
-        return getUserDto(username);
+        var id = currentUserContext.getId();
+        log.debug("Getting current user from token with id: {}", id);
+        return getUserDtosByIds(List.of(id)).stream()
+                .findFirst()
+                .orElseThrow(() -> new UserNotFoundException("User not found"));
     }
 
     public UserDto getUserDtoByUsername(String username) {
@@ -50,6 +59,89 @@ public class UserService {
         return getUserDto(username);
     }
 
+    @Transactional(readOnly = true)
+    public List<UserDto> getUserDtosBatch(BatchUsersRequest request) {
+        var ids = Optional.ofNullable(request.getIds()).orElse(List.of());
+        var usernames = Optional.ofNullable(request.getUsernames()).orElse(List.of());
+        log.debug("Getting user dtos in batch for {} ids and {} usernames", ids.size(), usernames.size());
+
+        var userDtos = new LinkedHashSet<>(getUserDtosByIds(ids));
+        userDtos.addAll(getUserDtosByUsernames(usernames));
+        return List.copyOf(userDtos);
+    }
+
+    /**
+     * Returns dtos in the order of the given ids, skipping null ids and ids that do not exist.
+     * Cache misses are loaded with a single IN query and written back in one pipeline.
+     */
+    @Transactional(readOnly = true)
+    public List<UserDto> getUserDtosByIds(Collection<Long> ids) {
+        var distinctIds = ids.stream().filter(Objects::nonNull).collect(Collectors.toCollection(LinkedHashSet::new));
+        if (distinctIds.isEmpty()) {
+            return List.of();
+        }
+
+        var userDtos = userRedisService.getUserDtosByIds(distinctIds);
+        var missingIds = distinctIds.stream().filter(id -> !userDtos.containsKey(id)).toList();
+
+        if (!missingIds.isEmpty()) {
+            log.debug("Fetching {} users missing in cache from database", missingIds.size());
+            var users = userRepository.findAllById(missingIds);
+            var loadedUsers = new ArrayList<User>();
+            users.forEach(user -> {
+                loadedUsers.add(user);
+                userDtos.put(user.getId(), userMapper.toUserDto(user));
+            });
+            userRedisService.cacheUsers(loadedUsers);
+        }
+
+        return distinctIds.stream().map(userDtos::get).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * Returns dtos in the order of the given usernames (case-insensitive), skipping null usernames and usernames
+     * that do not exist.
+     */
+    @Transactional(readOnly = true)
+    public List<UserDto> getUserDtosByUsernames(Collection<String> usernames) {
+        var distinctUsernames = usernames.stream()
+                .filter(Objects::nonNull)
+                .map(username -> username.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (distinctUsernames.isEmpty()) {
+            return List.of();
+        }
+
+        var cachedIds = userRedisService.getUserIdsByUsernames(distinctUsernames);
+        var userDtosByUsername = new HashMap<String, UserDto>();
+        getUserDtosByIds(cachedIds.values())
+                .forEach(userDto -> userDtosByUsername.put(userDto.getUsername().toLowerCase(Locale.ROOT), userDto));
+
+        var missingUsernames = distinctUsernames.stream()
+                .filter(username -> !userDtosByUsername.containsKey(username))
+                .toList();
+
+        if (!missingUsernames.isEmpty()) {
+            log.debug("Fetching {} users by username missing in cache from database", missingUsernames.size());
+            var users = userRepository.findAllByLowerCaseUsernameIn(missingUsernames);
+            users.forEach(user ->
+                    userDtosByUsername.put(user.getUsername().toLowerCase(Locale.ROOT), userMapper.toUserDto(user)));
+            userRedisService.cacheUsers(users);
+        }
+
+        return distinctUsernames.stream().map(userDtosByUsername::get).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * Returns dtos keyed by lower case username, for resolving many references to users by username at once.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, UserDto> getUserDtosByLowerCaseUsername(Collection<String> usernames) {
+        return getUserDtosByUsernames(usernames).stream()
+                .collect(Collectors.toMap(userDto -> userDto.getUsername().toLowerCase(Locale.ROOT),
+                        Function.identity()));
+    }
+
     public User findUserByUsername(String username) {
         log.debug("Fetching user by username from database with username: {}", username);
         return userRepository.findByUsernameIgnoreCase(username)
@@ -71,6 +163,8 @@ public class UserService {
         userRepository.save(follower);
         userRedisService.cacheUserDto(userMapper.toUserDto(follower));
         userRedisService.cacheUserDto(userMapper.toUserDto(followee));
+        usernameIndexRedisService.changeFollowersCount(followee.getId(), 1);
+        bumpFollowVersions(follower, followee);
     }
 
     private void verifyUserIsNotAlreadyFollowed(User follower, User followee) {
@@ -102,6 +196,14 @@ public class UserService {
         userRepository.save(follower);
         userRedisService.cacheUserDto(userMapper.toUserDto(follower));
         userRedisService.cacheUserDto(userMapper.toUserDto(followee));
+        usernameIndexRedisService.changeFollowersCount(followee.getId(), -1);
+        bumpFollowVersions(follower, followee);
+    }
+
+    private void bumpFollowVersions(User follower, User followee) {
+        // Both follow counters changed, and the follower's stories tray gains or loses the followee's stories
+        entityVersionRedisService.bumpProfiles(follower.getUsername(), followee.getUsername());
+        entityVersionRedisService.bumpStoriesFeeds(List.of(follower.getId()));
     }
 
     private void verifyUserIsFollowed(User follower, User followee) {
@@ -143,9 +245,15 @@ public class UserService {
         verifyNewUsernameIsDifferent(newUsername, user);
         verifyNewUsernameIsFree(newUsername, user);
 
+        var oldUsername = user.getUsername();
         user.setUsername(newUsername);
+        user.revokeTokens();
         userRepository.save(user);
         userRedisService.cacheUser(user);
+        usernameIndexRedisService.changeUsername(user.getId(), oldUsername, newUsername);
+        entityVersionRedisService.bumpProfiles(oldUsername, newUsername);
+        tokenVersionService.cacheTokenState(user);
+        eventPublisher.publishEvent(new UsernameChangedEvent(this, user.getId(), oldUsername, newUsername));
 
         log.info("User {} successfully changed username to {}", user.getUsername(), newUsername);
 
@@ -175,8 +283,10 @@ public class UserService {
         log.debug("User {} is changing change password", user.getUsername());
 
         verifyPasswordIsCorrect(changePasswordRequest.getOldPassword(), user);
-        user.setPassword(passwordEncoder.encode(changePasswordRequest.getPassword()));
+        user.setPassword(passwordHashingService.hash(changePasswordRequest.getPassword()));
+        user.revokeTokens();
         userRepository.save(user);
+        tokenVersionService.cacheTokenState(user);
 
         log.info("Password successfully change for user with username: {}", user.getUsername());
 
@@ -191,6 +301,8 @@ public class UserService {
         var savedUser = userRepository.save(user);
         log.debug("Caching user with username: {}", user.getUsername());
         userRedisService.cacheUser(savedUser);
+        usernameIndexRedisService.addUser(savedUser.getId(), savedUser.getUsername());
+        entityVersionRedisService.bumpProfiles(savedUser.getUsername());
     }
 
     @Transactional
@@ -200,8 +312,12 @@ public class UserService {
         log.debug("Deleting user with username: {}", user.getUsername());
 
         user.setDeleted(true);
+        user.revokeTokens();
         userRepository.save(user);
         userRedisService.deleteUser(user);
+        usernameIndexRedisService.removeUser(user.getId(), user.getUsername());
+        entityVersionRedisService.bumpProfiles(user.getUsername());
+        tokenVersionService.cacheTokenState(user);
     }
 
     @Transactional
@@ -215,8 +331,13 @@ public class UserService {
         verifyPasswordIsCorrect(request.getPassword(), user);
 
         user.setDeleted(false);
+        user.revokeTokens();
         userRepository.save(user);
         userRedisService.cacheUser(user);
+        usernameIndexRedisService.addUser(user.getId(), user.getUsername(),
+                followRepository.countFollowersByUserId(user.getId()));
+        entityVersionRedisService.bumpProfiles(user.getUsername());
+        tokenVersionService.cacheTokenState(user);
 
         return RestoreUserResponse.builder()
                 .message("User restored successfully. Please login to continue.")
@@ -224,7 +345,7 @@ public class UserService {
     }
 
     private void verifyPasswordIsCorrect(String password, User user) {
-        if (!passwordEncoder.matches(password, user.getPassword())) {
+        if (!passwordHashingService.matches(password, user.getPassword())) {
             log.warn("User with username: {} attempted to restore with an incorrect password", user.getUsername());
             throw new BadCredentialsException("Bad credentials");
         }
@@ -241,13 +362,17 @@ public class UserService {
         return userRepository.findByUsernameIgnoreCaseAndIncludeSoftDeleted(username).isEmpty();
     }
 
-    public User findByUsernameIgnoreCaseAndIncludeSoftDeleted(String username) {
-        log.info("Fetching user by username including soft deleted with username: {}", username);
-        return userRepository.findByUsernameIgnoreCaseAndIncludeSoftDeleted(username).orElseThrow(() -> {
-                    log.warn("User not found with username: {}", username);
-                    return new UserNotFoundException("User not found");
-                }
-        );
+    public Optional<User> findUserForLogin(String username) {
+        log.debug("Fetching user for login including soft deleted with username: {}", username);
+        return userRepository.findByUsernameIgnoreCaseAndIncludeSoftDeleted(username);
+    }
+
+    @Transactional
+    public void updatePasswordHash(Long userId, String oldPasswordHash, String passwordHash) {
+        log.debug("Updating password hash of user with id: {}", userId);
+        if (userRepository.updatePasswordById(userId, oldPasswordHash, passwordHash) == 0) {
+            log.debug("Password of user with id: {} changed since it was verified, skipping rehash", userId);
+        }
     }
 
     private UserDto getUserDto(String username) {
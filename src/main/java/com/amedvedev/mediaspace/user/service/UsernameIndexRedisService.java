@@ -0,0 +1,305 @@
+package com.amedvedev.mediaspace.user.service;
+
+import com.amedvedev.mediaspace.user.dto.UserSuggestionResponse;
+import com.amedvedev.mediaspace.user.projection.UsernameIndexEntryProjection;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Keeps the index used for username autocomplete. All members of the index have the same score, so Redis orders
+ * them lexicographically and a prefix lookup is a single ZRANGEBYLEX. Members are {@code lowercase:Username:id},
+ * which lets the lookup match case-insensitively and still return the username as it was written.
+ * <p>
+ * Follower counts live in a separate sorted set and are only used to order the matches.
+ * <p>
+ * Writes are applied once the surrounding transaction commits, so a rolled back change never reaches the index.
+ * <p>
+ * A rebuild holds a lock, so only one instance rebuilds at a time, and builds into keys of its own run. Writes made
+ * while the lock is held mark the users they touch, and those users are read from the database again before the
+ * rebuilt index replaces the live one, so no write made during the rebuild is lost with the swap.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UsernameIndexRedisService {
+
+    static final String USERNAMES_KEY = "users:usernames";
+    static final String FOLLOWERS_KEY = "users:followers";
+
+    private static final String REBUILD_SUFFIX = ":rebuild:";
+    private static final String REBUILD_LOCK_KEY = "users:usernames:rebuild_lock";
+    private static final String REBUILD_CHANGES_KEY = "users:usernames:rebuild_changes";
+    private static final String SEPARATOR = ":";
+
+    private static final Duration REBUILD_LOCK_TTL = Duration.ofMinutes(10);
+
+    // Sorts after every character allowed in usernames, so the range from prefix to prefix + this covers all matches
+    private static final String MAX_CHARACTER = "\u00ff";
+
+    // Only this many lexicographic matches are ranked by followers, which bounds the work of very short prefixes
+    private static final int CANDIDATES_LIMIT = 100;
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisScript<List> FIND_BY_PREFIX_SCRIPT = new DefaultRedisScript<>("""
+            local candidates = redis.call('ZRANGEBYLEX', KEYS[1], ARGV[1], ARGV[2], 'LIMIT', 0, tonumber(ARGV[3]))
+            local ranked = {}
+            for i, member in ipairs(candidates) do
+                local id = string.match(member, ':(%d+)$')
+                ranked[i] = { member, tonumber(redis.call('ZSCORE', KEYS[2], id) or 0) }
+            end
+            table.sort(ranked, function(a, b)
+                if a[2] ~= b[2] then
+                    return a[2] > b[2]
+                end
+                return a[1] < b[1]
+            end)
+            local result = {}
+            for i = 1, math.min(#ranked, tonumber(ARGV[4])) do
+                result[i] = ranked[i][1]
+            end
+            return result
+            """, List.class);
+
+    // Changes made from the start of a rebuild on are merged by the rebuild itself
+    private static final RedisScript<Boolean> START_REBUILD_SCRIPT = new DefaultRedisScript<>("""
+            if not redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then
+                return false
+            end
+            redis.call('DEL', KEYS[2])
+            return true
+            """, Boolean.class);
+
+    // KEYS are the usernames, followers, rebuild lock and rebuild changes. ARGV are the member to remove and the member
+    // to add, '' for none, then the user id and how to change their followers: 'set', 'incr', 'rem' or ''
+    private static final RedisScript<Long> WRITE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[3]) == 1 then
+                for i = 1, 3 do
+                    if ARGV[i] ~= '' then
+                        redis.call('SADD', KEYS[4], ARGV[i])
+                    end
+                end
+            end
+            if ARGV[1] ~= '' then
+                redis.call('ZREM', KEYS[1], ARGV[1])
+            end
+            if ARGV[2] ~= '' then
+                redis.call('ZADD', KEYS[1], 0, ARGV[2])
+            end
+            if ARGV[4] == 'set' then
+                redis.call('ZADD', KEYS[2], ARGV[5], ARGV[3])
+            elseif ARGV[4] == 'incr' then
+                redis.call('ZINCRBY', KEYS[2], ARGV[5], ARGV[3])
+            elseif ARGV[4] == 'rem' then
+                redis.call('ZREM', KEYS[2], ARGV[3])
+            end
+            return 1
+            """, Long.class);
+
+    // Renames the rebuilt keys over the live ones, or drops a live key when nothing was rebuilt into it. Returns -1 if
+    // the lock was lost to another run and 0 if users changed since their changes were last merged.
+    private static final RedisScript<Long> COMPLETE_REBUILD_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) ~= ARGV[1] then
+                return -1
+            end
+            if redis.call('SCARD', KEYS[2]) > 0 then
+                return 0
+            end
+            for i = 3, #KEYS, 2 do
+                if redis.call('EXISTS', KEYS[i + 1]) == 1 then
+                    redis.call('RENAME', KEYS[i + 1], KEYS[i])
+                else
+                    redis.call('DEL', KEYS[i])
+                end
+            end
+            redis.call('DEL', KEYS[1])
+            return 1
+            """, Long.class);
+
+    private static final RedisScript<Long> ABORT_REBUILD_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('DEL', KEYS[2], KEYS[3])
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                redis.call('DEL', KEYS[1])
+            end
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public void addUser(Long id, String username) {
+        log.debug("Adding username {} to the index", username);
+        write("", constructMember(id, username), id, "", 0);
+    }
+
+    public void addUser(Long id, String username, long followersCount) {
+        log.debug("Adding username {} with {} followers to the index", username, followersCount);
+        write("", constructMember(id, username), id, "set", followersCount);
+    }
+
+    public void removeUser(Long id, String username) {
+        log.debug("Removing username {} from the index", username);
+        write(constructMember(id, username), "", id, "rem", 0);
+    }
+
+    public void changeUsername(Long id, String oldUsername, String newUsername) {
+        log.debug("Replacing username {} with {} in the index", oldUsername, newUsername);
+        write(constructMember(id, oldUsername), constructMember(id, newUsername), id, "", 0);
+    }
+
+    public void changeFollowersCount(Long id, int delta) {
+        write("", "", id, "incr", delta);
+    }
+
+    private void write(String removedMember, String addedMember, Long id, String followersChange, long followers) {
+        var keys = List.of(USERNAMES_KEY, FOLLOWERS_KEY, REBUILD_LOCK_KEY, REBUILD_CHANGES_KEY);
+        Runnable write = () -> stringRedisTemplate.execute(WRITE_SCRIPT, keys,
+                removedMember, addedMember, id.toString(), followersChange, String.valueOf(followers));
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            write.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                write.run();
+            }
+        });
+    }
+
+    /**
+     * Returns users whose lower-cased username starts with the given prefix, most followed first,
+     * in a single script call.
+     */
+    @SuppressWarnings("unchecked")
+    public List<UserSuggestionResponse> findByPrefix(String prefix, int limit) {
+        log.debug("Looking up usernames starting with: {}", prefix);
+        List<String> members = stringRedisTemplate.execute(FIND_BY_PREFIX_SCRIPT, List.of(USERNAMES_KEY, FOLLOWERS_KEY),
+                "[" + prefix, "[" + prefix + MAX_CHARACTER, String.valueOf(CANDIDATES_LIMIT), String.valueOf(limit));
+        if (members == null) {
+            return List.of();
+        }
+        return members.stream().map(this::parseMember).toList();
+    }
+
+    /**
+     * Takes the rebuild lock, unless another instance is rebuilding the index.
+     *
+     * @return the id of the rebuild run, empty if the lock is taken
+     */
+    public Optional<String> startRebuild() {
+        var runId = UUID.randomUUID().toString();
+        var started = stringRedisTemplate.execute(START_REBUILD_SCRIPT, List.of(REBUILD_LOCK_KEY, REBUILD_CHANGES_KEY),
+                runId, String.valueOf(REBUILD_LOCK_TTL.toMillis()));
+        return Boolean.TRUE.equals(started) ? Optional.of(runId) : Optional.empty();
+    }
+
+    /**
+     * Adds entries to the index being rebuilt. The live index keeps serving lookups until
+     * {@link #completeRebuild(String)}.
+     */
+    public void addToRebuild(String runId, Collection<UsernameIndexEntryProjection> entries) {
+        var usernamesKey = (USERNAMES_KEY + REBUILD_SUFFIX + runId).getBytes();
+        var followersKey = (FOLLOWERS_KEY + REBUILD_SUFFIX + runId).getBytes();
+        stringRedisTemplate.executePipelined((RedisCallback<?>) connection -> {
+            entries.forEach(entry -> {
+                connection.zSetCommands().zAdd(usernamesKey, 0,
+                        constructMember(entry.getId(), entry.getUsername()).getBytes());
+                if (entry.getFollowersCount() > 0) {
+                    connection.zSetCommands().zAdd(followersKey, entry.getFollowersCount(),
+                            entry.getId().toString().getBytes());
+                }
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Takes up to {@code limit} of the members and user ids written to since the rebuild started.
+     */
+    public List<String> popRebuildChanges(int limit) {
+        var changes = stringRedisTemplate.opsForSet().pop(REBUILD_CHANGES_KEY, limit);
+        return changes == null ? List.of() : changes;
+    }
+
+    /**
+     * Replaces whatever the rebuild holds for the changed members and users with their current entries,
+     * users that are missing from {@code entries} are left out.
+     */
+    public void mergeIntoRebuild(String runId, List<String> changes, Collection<UsernameIndexEntryProjection> entries) {
+        log.debug("Merging {} changes made during the rebuild of the username index", changes.size());
+        var usernamesKey = (USERNAMES_KEY + REBUILD_SUFFIX + runId).getBytes();
+        var followersKey = (FOLLOWERS_KEY + REBUILD_SUFFIX + runId).getBytes();
+        stringRedisTemplate.executePipelined((RedisCallback<?>) connection -> {
+            changes.forEach(change -> {
+                connection.zSetCommands().zRem(usernamesKey, change.getBytes());
+                connection.zSetCommands().zRem(followersKey, getUserId(change).toString().getBytes());
+            });
+            return null;
+        });
+        addToRebuild(runId, entries);
+    }
+
+    /**
+     * Replaces the live index with the rebuilt one and releases the lock, unless users were written to since their
+     * changes were last merged.
+     */
+    public RebuildCompletion completeRebuild(String runId) {
+        var result = stringRedisTemplate.execute(COMPLETE_REBUILD_SCRIPT, List.of(
+                REBUILD_LOCK_KEY, REBUILD_CHANGES_KEY,
+                USERNAMES_KEY, USERNAMES_KEY + REBUILD_SUFFIX + runId,
+                FOLLOWERS_KEY, FOLLOWERS_KEY + REBUILD_SUFFIX + runId), runId);
+        if (result == null || result < 0) {
+            return RebuildCompletion.LOCK_LOST;
+        }
+        if (result == 0) {
+            return RebuildCompletion.CHANGED;
+        }
+        log.debug("Replaced username index with the rebuilt one");
+        return RebuildCompletion.COMPLETED;
+    }
+
+    /**
+     * Drops what the run rebuilt and releases the lock if the run still holds it.
+     */
+    public void abortRebuild(String runId) {
+        stringRedisTemplate.execute(ABORT_REBUILD_SCRIPT, List.of(REBUILD_LOCK_KEY,
+                USERNAMES_KEY + REBUILD_SUFFIX + runId, FOLLOWERS_KEY + REBUILD_SUFFIX + runId), runId);
+    }
+
+    /**
+     * Changes of the rebuild are either members or bare user ids, both end with the id.
+     */
+    public static Long getUserId(String change) {
+        return Long.valueOf(change.substring(change.lastIndexOf(SEPARATOR) + 1));
+    }
+
+    private String constructMember(Long id, String username) {
+        return username.toLowerCase(Locale.ROOT) + SEPARATOR + username + SEPARATOR + id;
+    }
+
+    private UserSuggestionResponse parseMember(String member) {
+        var parts = member.split(SEPARATOR);
+        return new UserSuggestionResponse(Long.valueOf(parts[2]), parts[1]);
+    }
+
+    public enum RebuildCompletion {
+        COMPLETED,
+        // Users were written to since their changes were last merged, they have to be merged again
+        CHANGED,
+        // The lock expired and another instance may be rebuilding the index
+        LOCK_LOST
+    }
+}
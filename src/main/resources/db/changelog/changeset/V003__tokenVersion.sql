@@ -0,0 +1 @@
+ALTER TABLE _user ADD COLUMN token_version bigint NOT NULL DEFAULT 0;
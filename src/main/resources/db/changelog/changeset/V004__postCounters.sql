@@ -0,0 +1,6 @@
+ALTER TABLE post ADD COLUMN like_count integer NOT NULL DEFAULT 0;
+ALTER TABLE post ADD COLUMN comment_count integer NOT NULL DEFAULT 0;
+
+UPDATE post p
+SET like_count    = (SELECT count(*) FROM _like l WHERE l.post_id = p.id AND l.is_deleted <> TRUE),
+    comment_count = (SELECT count(*) FROM comment c WHERE c.post_id = p.id AND c.is_deleted <> TRUE);
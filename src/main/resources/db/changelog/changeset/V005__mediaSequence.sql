@@ -0,0 +1,8 @@
+-- Media are created in bulk with a post, so their ids come from a pooled sequence: Hibernate reserves a block
+-- of ids per call and can batch the inserts. The increment must match the allocationSize mapped on Media.
+-- There is no column default, as a plain nextval() would hand out ids from blocks already reserved by Hibernate.
+ALTER TABLE media ALTER COLUMN id DROP IDENTITY;
+
+CREATE SEQUENCE media_id_seq INCREMENT BY 50 OWNED BY media.id;
+
+SELECT setval('media_id_seq', coalesce((SELECT max(id) FROM media) + 50, 1), false);
@@ -0,0 +1,5 @@
+-- Keyset pagination of comment trees walks top-level comments of a post and replies of a comment
+-- in (created_at, id) order
+CREATE INDEX idx_comment_post_top_level ON comment (post_id, created_at, id) WHERE parent_comment_id IS NULL;
+
+CREATE INDEX idx_comment_parent ON comment (parent_comment_id, created_at, id);
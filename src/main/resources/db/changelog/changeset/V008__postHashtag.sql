@@ -0,0 +1,17 @@
+CREATE TABLE post_hashtag
+(
+    post_id BIGINT      NOT NULL,
+    tag     VARCHAR(50) NOT NULL,
+    CONSTRAINT pk_post_hashtag PRIMARY KEY (tag, post_id),
+    CONSTRAINT fk_post_hashtag_post FOREIGN KEY (post_id) REFERENCES post
+);
+
+-- The primary key serves tag timelines, this one serves loading and deleting tags of a post
+CREATE INDEX idx_post_hashtag_post ON post_hashtag (post_id);
+
+-- Same rules as Hashtags.extract, apart from the limit of tags per post
+INSERT INTO post_hashtag (post_id, tag)
+SELECT DISTINCT p.id, lower(m[1])
+FROM post p,
+     regexp_matches(p.description, '(?:^|[^[:alnum:]_#])#([[:alnum:]_]{1,50})(?![[:alnum:]_])', 'g') AS m
+WHERE m[1] ~ '[[:alpha:]]';
@@ -0,0 +1,2 @@
+-- Posts of a user are read in (created_at, id) order, e.g. when a profile is streamed
+CREATE INDEX idx_post_user_created ON post (_user_id, created_at, id);
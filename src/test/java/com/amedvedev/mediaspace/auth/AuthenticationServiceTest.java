@@ -14,14 +14,18 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoSession;
 import org.mockito.quality.Strictness;
-import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.authentication.DisabledException;
+
+import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 class AuthenticationServiceTest {
@@ -33,14 +37,11 @@ class AuthenticationServiceTest {
     private UserService userService;
 
     @Mock
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
 
     @Mock
     private JwtService jwtService;
 
-    @Mock
-    private AuthenticationManager authenticationManager;
-
     MockitoSession mockitoSession;
 
     @BeforeEach
@@ -61,7 +62,7 @@ class AuthenticationServiceTest {
         var request = new RegisterRequest("username", "password");
         Mockito.when(userService.isUsernameFree(request.getUsername()))
                 .thenReturn(true);
-        Mockito.when(passwordEncoder.encode(request.getPassword()))
+        Mockito.when(passwordHashingService.hash(request.getPassword()))
                 .thenReturn("encoded-password");
 
         authenticationService.register(request);
@@ -85,30 +86,71 @@ class AuthenticationServiceTest {
     @Test
     void loginInvalidCredentialsThrowsException() {
         var request = new LoginRequest("username", "password");
+        var user = User.builder().username("username").password("encoded-password").build();
 
-        Mockito.when(authenticationManager.authenticate(Mockito.any(UsernamePasswordAuthenticationToken.class)))
-                .thenThrow(BadCredentialsException.class);
+        Mockito.when(userService.findUserForLogin(request.getUsername())).thenReturn(Optional.of(user));
+        Mockito.when(passwordHashingService.matches(request.getPassword(), "encoded-password")).thenReturn(false);
 
         assertThrows(BadCredentialsException.class, () -> authenticationService.login(request));
+        verify(jwtService, never()).generateToken(any(User.class));
     }
 
+    @Test
+    void loginNonExistingUserVerifiesAgainstDummyHashAndThrowsException() {
+        var request = new LoginRequest("username", "password");
+
+        Mockito.when(userService.findUserForLogin(request.getUsername())).thenReturn(Optional.empty());
+
+        assertThrows(BadCredentialsException.class, () -> authenticationService.login(request));
+        verify(passwordHashingService).matchAgainstDummyHash(request.getPassword());
+    }
+
+    @Test
+    void loginDeletedUserThrowsDisabledException() {
+        var request = new LoginRequest("username", "password");
+        var user = User.builder().username("username").password("encoded-password").isDeleted(true).build();
+
+        Mockito.when(userService.findUserForLogin(request.getUsername())).thenReturn(Optional.of(user));
+
+        assertThrows(DisabledException.class, () -> authenticationService.login(request));
+    }
 
     @Test
     void loginServiceSuccess() {
         var request = new LoginRequest("username", "password");
         stubAuthenticationProcess(request);
+        Mockito.when(passwordHashingService.needsRehash("encoded-password")).thenReturn(false);
+
+        LoginResponse response = authenticationService.login(request);
+
+        assertThat(response.getToken()).isEqualTo("mock-token");
+        verify(passwordHashingService, never()).rehashInBackground(any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void loginRehashesPasswordWhenWorkFactorChanged() {
+        var request = new LoginRequest("username", "password");
+        stubAuthenticationProcess(request);
+        Mockito.when(passwordHashingService.needsRehash("encoded-password")).thenReturn(true);
+        Mockito.doAnswer(invocation -> {
+            invocation.<Consumer<String>>getArgument(1).accept("rehashed-password");
+            return null;
+        }).when(passwordHashingService).rehashInBackground(eq(request.getPassword()), any(Consumer.class));
 
         LoginResponse response = authenticationService.login(request);
 
         assertThat(response.getToken()).isEqualTo("mock-token");
+        verify(userService).updatePasswordHash(1L, "encoded-password", "rehashed-password");
     }
 
     private void stubAuthenticationProcess(LoginRequest request) {
-        Mockito.when(authenticationManager.authenticate(Mockito.any(UsernamePasswordAuthenticationToken.class)))
-                .thenReturn(new UsernamePasswordAuthenticationToken("username", "password"));
-        Mockito.when(userService.findByUsernameIgnoreCaseAndIncludeSoftDeleted(request.getUsername()))
-                .thenReturn(User.builder().username(request.getUsername()).password("encoded-password").build());
+        var user = User.builder().id(1L).username(request.getUsername()).password("encoded-password").build();
+        Mockito.when(userService.findUserForLogin(request.getUsername()))
+                .thenReturn(Optional.of(user));
+        Mockito.when(passwordHashingService.matches(request.getPassword(), "encoded-password"))
+                .thenReturn(true);
         Mockito.when(jwtService.generateToken(Mockito.any(User.class)))
                 .thenReturn("mock-token");
     }
-}
\ No newline at end of file
+}
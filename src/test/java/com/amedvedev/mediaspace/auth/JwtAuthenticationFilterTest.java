@@ -1,5 +1,6 @@
 package com.amedvedev.mediaspace.auth;
 
+import com.amedvedev.mediaspace.auth.dto.TokenState;
 import io.jsonwebtoken.MalformedJwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -15,13 +16,12 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoSession;
 import org.mockito.quality.Strictness;
+import org.springframework.security.authentication.DisabledException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
 import java.io.IOException;
+import java.util.Optional;
 
 import static com.amedvedev.mediaspace.testutil.AbstractIntegrationTest.AUTHORIZATION_HEADER;
 import static com.amedvedev.mediaspace.testutil.AbstractIntegrationTest.BEARER_PREFIX;
@@ -39,7 +39,7 @@ class JwtAuthenticationFilterTest {
     private JwtService jwtService;
 
     @Mock
-    private UserDetailsService userDetailsService;
+    private TokenVersionService tokenVersionService;
 
     @Mock
     private HttpServletRequest request;
@@ -50,8 +50,7 @@ class JwtAuthenticationFilterTest {
     @Mock
     private FilterChain filterChain;
 
-    @Mock
-    private UserDetails userDetails;
+    private final JwtPrincipal principal = JwtPrincipal.builder().id(1L).username("username").tokenVersion(2).build();
 
     MockitoSession mockitoSession;
 
@@ -73,23 +72,22 @@ class JwtAuthenticationFilterTest {
     @Test
     void doFilterInternalValidJwtUserAuthenticatedSuccessfully() throws ServletException, IOException {
         when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn(BEARER_PREFIX + "valid_jwt");
-        when(jwtService.extractUsername("valid_jwt")).thenReturn("username");
-        when(userDetails.isEnabled()).thenReturn(true);
-        when(userDetailsService.loadUserByUsername("username")).thenReturn(userDetails);
-        when(jwtService.isTokenValid("valid_jwt", userDetails)).thenReturn(true);
+        when(jwtService.extractPrincipal("valid_jwt")).thenReturn(Optional.of(principal));
+        when(tokenVersionService.getTokenState(1L)).thenReturn(Optional.of(new TokenState(2, false)));
 
         jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
 
         var authentication = (UsernamePasswordAuthenticationToken) SecurityContextHolder.getContext().getAuthentication();
         assertThat(authentication.getCredentials()).isNull();
-        assertThat(authentication.getPrincipal()).isEqualTo(userDetails);
+        assertThat(authentication.getPrincipal()).isEqualTo(principal);
+        assertThat(authentication.getName()).isEqualTo("username");
         verify(filterChain).doFilter(request, response);
     }
 
     @Test
     void doFilterInternalInvalidJwtUserNotAuthenticated() {
         when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn("Bearer " + "invalid_jwt");
-        when(jwtService.extractUsername("invalid_jwt")).thenThrow(MalformedJwtException.class);
+        when(jwtService.extractPrincipal("invalid_jwt")).thenThrow(MalformedJwtException.class);
 
         assertThatThrownBy(() -> jwtAuthenticationFilter.doFilterInternal(request, response, filterChain))
                 .isInstanceOf(MalformedJwtException.class);
@@ -118,29 +116,62 @@ class JwtAuthenticationFilterTest {
     }
 
     @Test
-    void doFilterInternalUsernameNotFound() throws ServletException, IOException {
+    void doFilterInternalJwtWithoutUserIdClaims() throws ServletException, IOException {
+        when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn("Bearer " + "legacy_jwt");
+        when(jwtService.extractPrincipal("legacy_jwt")).thenReturn(Optional.empty());
+
+        jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
+
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+        verify(tokenVersionService, never()).getTokenState(any());
+        verify(filterChain).doFilter(request, response);
+    }
+
+    @Test
+    void doFilterInternalUserNotFound() throws ServletException, IOException {
+        when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn("Bearer " + "valid_jwt");
+        when(jwtService.extractPrincipal("valid_jwt")).thenReturn(Optional.of(principal));
+        when(tokenVersionService.getTokenState(1L)).thenReturn(Optional.empty());
+
+        jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
+
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+        verify(filterChain).doFilter(request, response);
+    }
+
+    @Test
+    void doFilterInternalRevokedTokenUserNotAuthenticated() throws ServletException, IOException {
         when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn("Bearer " + "valid_jwt");
-        when(jwtService.extractUsername("valid_jwt")).thenReturn("username");
-        when(userDetailsService.loadUserByUsername("username")).thenThrow(new UsernameNotFoundException("User not found"));
+        when(jwtService.extractPrincipal("valid_jwt")).thenReturn(Optional.of(principal));
+        when(tokenVersionService.getTokenState(1L)).thenReturn(Optional.of(new TokenState(3, false)));
 
         jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
 
         assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
-        assertThatThrownBy(() -> userDetailsService.loadUserByUsername("username"))
-                .isInstanceOf(UsernameNotFoundException.class)
-                .hasMessage("User not found");
         verify(filterChain).doFilter(request, response);
     }
 
+    @Test
+    void doFilterInternalDeletedUserThrowsDisabledException() {
+        when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn("Bearer " + "valid_jwt");
+        when(jwtService.extractPrincipal("valid_jwt")).thenReturn(Optional.of(principal));
+        when(tokenVersionService.getTokenState(1L)).thenReturn(Optional.of(new TokenState(3, true)));
+
+        assertThatThrownBy(() -> jwtAuthenticationFilter.doFilterInternal(request, response, filterChain))
+                .isInstanceOf(DisabledException.class);
+
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+    }
+
     @Test
     void doFilterInternalValidJwtAlreadyAuthenticated() throws ServletException, IOException {
         when(request.getHeader(AUTHORIZATION_HEADER)).thenReturn("Bearer " + "valid_jwt");
-        when(jwtService.extractUsername("valid_jwt")).thenReturn("username");
+        when(jwtService.extractPrincipal("valid_jwt")).thenReturn(Optional.of(principal));
         SecurityContextHolder.getContext().setAuthentication(mock(UsernamePasswordAuthenticationToken.class));
 
         jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
 
-        verify(jwtService, never()).isTokenValid(any(), any());
+        verify(tokenVersionService, never()).getTokenState(any());
         verify(filterChain).doFilter(request, response);
     }
 
@@ -1,7 +1,9 @@
 package com.amedvedev.mediaspace.auth;
 
+import com.amedvedev.mediaspace.user.User;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
 import org.junit.jupiter.api.AfterEach;
@@ -17,6 +19,7 @@ import java.security.Key;
 import java.util.Base64;
 import java.util.Date;
 import java.util.Map;
+import java.util.function.Function;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -128,4 +131,51 @@ class JwtServiceTest {
         assertThat(expirationDate).isNotNull();
         assertThat(expirationDate).isAfter(new Date());
     }
+
+    @Test
+    void extractPrincipalReturnsIdAndTokenVersionFromClaims() {
+        var user = User.builder().id(7L).username("testUser").tokenVersion(3).build();
+
+        String token = jwtService.generateToken(user);
+        var principal = jwtService.extractPrincipal(token);
+
+        assertThat(principal).isPresent();
+        assertThat(principal.get().getId()).isEqualTo(7L);
+        assertThat(principal.get().getUsername()).isEqualTo("testUser");
+        assertThat(principal.get().getTokenVersion()).isEqualTo(3L);
+    }
+
+    @Test
+    void extractPrincipalReturnsEmptyForTokenWithoutUserId() {
+        when(userDetails.getUsername()).thenReturn("testUser");
+
+        String token = jwtService.generateToken(userDetails);
+
+        assertThat(jwtService.extractPrincipal(token)).isEmpty();
+    }
+
+    @Test
+    void extractClaimReusesVerifiedClaimsForSameToken() {
+        when(userDetails.getUsername()).thenReturn("testUser");
+
+        String token = jwtService.generateToken(userDetails);
+        Claims firstClaims = jwtService.extractClaim(token, Function.identity());
+        Claims secondClaims = jwtService.extractClaim(token, Function.identity());
+
+        assertThat(secondClaims).isSameAs(firstClaims);
+    }
+
+    @Test
+    void extractClaimDoesNotCacheTamperedToken() {
+        when(userDetails.getUsername()).thenReturn("testUser");
+
+        String token = jwtService.generateToken(userDetails);
+        jwtService.extractUsername(token);
+        int signatureCharIndex = token.lastIndexOf('.') + 5;
+        char replacement = token.charAt(signatureCharIndex) == 'A' ? 'B' : 'A';
+        String tamperedToken = token.substring(0, signatureCharIndex) + replacement + token.substring(signatureCharIndex + 1);
+
+        assertThatThrownBy(() -> jwtService.extractUsername(tamperedToken))
+                .isInstanceOf(JwtException.class);
+    }
 }
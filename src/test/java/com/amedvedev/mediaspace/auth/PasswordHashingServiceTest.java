@@ -0,0 +1,97 @@
+package com.amedvedev.mediaspace.auth;
+
+import com.amedvedev.mediaspace.exception.ServiceOverloadedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHashingServiceTest {
+
+    private PasswordHashingService passwordHashingService;
+
+    @AfterEach
+    void tearDown() {
+        passwordHashingService.shutdown();
+    }
+
+    @Test
+    void hashAndMatchPassword() {
+        passwordHashingService = new PasswordHashingService(new BCryptPasswordEncoder(4), 1, 1);
+
+        var passwordHash = passwordHashingService.hash("password");
+
+        assertThat(passwordHashingService.matches("password", passwordHash)).isTrue();
+        assertThat(passwordHashingService.matches("wrong-password", passwordHash)).isFalse();
+    }
+
+    @Test
+    void needsRehashWhenWorkFactorIsLower() {
+        passwordHashingService = new PasswordHashingService(new BCryptPasswordEncoder(5), 1, 1);
+
+        assertThat(passwordHashingService.needsRehash(new BCryptPasswordEncoder(4).encode("password"))).isTrue();
+        assertThat(passwordHashingService.needsRehash(new BCryptPasswordEncoder(5).encode("password"))).isFalse();
+        assertThat(passwordHashingService.needsRehash(new BCryptPasswordEncoder(6).encode("password"))).isFalse();
+    }
+
+    @Test
+    void failFastWhenPoolAndQueueAreFull() throws InterruptedException {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        passwordHashingService = new PasswordHashingService(new BlockingPasswordEncoder(started, release), 1, 1);
+
+        var running = CompletableFuture.supplyAsync(() -> passwordHashingService.hash("first"));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        var queued = CompletableFuture.supplyAsync(() -> passwordHashingService.hash("second"));
+        waitUntilQueued();
+
+        assertThatThrownBy(() -> passwordHashingService.hash("third"))
+                .isInstanceOf(ServiceOverloadedException.class)
+                .hasMessage("Too many authentication requests, please try again later");
+
+        release.countDown();
+        assertThat(running.join()).isEqualTo("first");
+        assertThat(queued.join()).isEqualTo("second");
+    }
+
+    private void waitUntilQueued() throws InterruptedException {
+        // The second task cannot start before the first one is released, so a short pause is enough to let it queue
+        Thread.sleep(200);
+    }
+
+    private static class BlockingPasswordEncoder implements PasswordEncoder {
+
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        BlockingPasswordEncoder(CountDownLatch started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            if (!"dummy-password".contentEquals(rawPassword)) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return rawPassword.toString();
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return rawPassword.toString().equals(encodedPassword);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.amedvedev.mediaspace.batch;
+
+import com.amedvedev.mediaspace.auth.JwtService;
+import com.amedvedev.mediaspace.batch.dto.BatchRequest;
+import com.amedvedev.mediaspace.batch.dto.BatchSubRequest;
+import com.amedvedev.mediaspace.post.Post;
+import com.amedvedev.mediaspace.post.PostRepository;
+import com.amedvedev.mediaspace.testutil.AbstractIntegrationTest;
+import com.amedvedev.mediaspace.user.User;
+import com.amedvedev.mediaspace.user.UserRepository;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+@Transactional
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class BatchIntegrationTest extends AbstractIntegrationTest {
+
+    public static final String BATCH_ENDPOINT = "/api/batch";
+
+    @LocalServerPort
+    private Integer port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private JwtService jwtService;
+
+    private User user;
+
+    private String token;
+
+    @BeforeEach
+    void setUp() {
+        RestAssured.port = port;
+        RestAssured.basePath = "";
+
+        clearDbAndRedis();
+
+        user = executeInsideTransaction(() ->
+                userRepository.save(User.builder().username("user").password("encoded-password").build()));
+        token = jwtService.generateToken(user);
+    }
+
+    private BatchRequest batchOf(BatchSubRequest... subRequests) {
+        return new BatchRequest(List.of(subRequests));
+    }
+
+    @Test
+    void shouldExecuteAllRequestsAndKeepTheirStatusCodes() {
+        var post = executeInsideTransaction(() ->
+                postRepository.save(Post.builder().user(user).title("batched post").build()));
+
+        given()
+                .contentType(ContentType.JSON)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .body(batchOf(
+                        new BatchSubRequest("/api/users/me", null),
+                        new BatchSubRequest("/api/posts/" + post.getId(), null),
+                        new BatchSubRequest("/api/posts/" + (post.getId() + 1), null),
+                        new BatchSubRequest("/api/feed/trending?limit=5", null)))
+                .when()
+                .post(BATCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("responses.status", contains(200, 200, 404, 200))
+                .body("responses[0].body.username", equalTo("user"))
+                .body("responses[0].headers.ETag[0]", notNullValue())
+                .body("responses[0].headers.Vary", hasItems(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING))
+                .body("responses[1].body.title", equalTo("batched post"))
+                .body("responses[2].body.reason", equalTo("Post not found"))
+                .body("responses[3].body", equalTo(List.of()));
+    }
+
+    @Test
+    void shouldAnswerConditionalSubRequestWithNotModified() {
+        var eTag = given()
+                .contentType(ContentType.JSON)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .body(batchOf(new BatchSubRequest("/api/users/me", null)))
+                .when()
+                .post(BATCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract().jsonPath().getString("responses[0].headers.ETag[0]");
+
+        given()
+                .contentType(ContentType.JSON)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .body(batchOf(new BatchSubRequest("/api/users/me", Map.of(HttpHeaders.IF_NONE_MATCH, eTag))))
+                .when()
+                .post(BATCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("responses[0].status", equalTo(HttpStatus.NOT_MODIFIED.value()))
+                .body("responses[0].body", nullValue());
+    }
+
+    @Test
+    void shouldRejectBatchWithNestedBatchOrNonApiPath() {
+        given()
+                .contentType(ContentType.JSON)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .body(batchOf(new BatchSubRequest("/api/batch", null)))
+                .when()
+                .post(BATCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value());
+
+        given()
+                .contentType(ContentType.JSON)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .body(batchOf(new BatchSubRequest("/swagger", null)))
+                .when()
+                .post(BATCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value());
+    }
+
+    @Test
+    void shouldNotExecuteBatchWithoutAuthentication() {
+        given()
+                .contentType(ContentType.JSON)
+                .body(batchOf(new BatchSubRequest("/api/users/me", null)))
+                .when()
+                .post(BATCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.UNAUTHORIZED.value());
+    }
+}
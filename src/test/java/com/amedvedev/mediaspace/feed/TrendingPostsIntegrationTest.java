@@ -0,0 +1,174 @@
+package com.amedvedev.mediaspace.feed;
+
+import com.amedvedev.mediaspace.auth.JwtService;
+import com.amedvedev.mediaspace.post.Post;
+import com.amedvedev.mediaspace.post.PostRepository;
+import com.amedvedev.mediaspace.post.comment.dto.AddCommentRequest;
+import com.amedvedev.mediaspace.post.dto.ViewPostResponse;
+import com.amedvedev.mediaspace.testutil.AbstractIntegrationTest;
+import com.amedvedev.mediaspace.user.User;
+import com.amedvedev.mediaspace.user.UserRepository;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+@Transactional
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class TrendingPostsIntegrationTest extends AbstractIntegrationTest {
+
+    public static final String TRENDING_ENDPOINT = "/api/feed/trending";
+    public static final String LIKE_ENDPOINT = "/api/posts/{id}/like";
+    public static final String POST_ENDPOINT = "/api/posts/{id}";
+    public static final String COMMENT_ENDPOINT = "/api/comments/posts/{postId}";
+
+    @LocalServerPort
+    private Integer port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private TrendingPostsService trendingPostsService;
+
+    @Autowired
+    private TrendingPostsRedisService trendingPostsRedisService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private User user;
+
+    private String token;
+
+    @BeforeEach
+    void setUp() {
+        RestAssured.port = port;
+        RestAssured.basePath = "";
+
+        clearDbAndRedis();
+
+        user = executeInsideTransaction(() ->
+                userRepository.save(User.builder().username("user").password("encoded-password").build()));
+        token = jwtService.generateToken(user);
+    }
+
+    private Post createPost(String title) {
+        return executeInsideTransaction(() ->
+                postRepository.save(Post.builder().user(user).title(title).build()));
+    }
+
+    private List<ViewPostResponse> getTrendingPosts() {
+        return given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .get(TRENDING_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract().jsonPath().getList(".", ViewPostResponse.class);
+    }
+
+    @Test
+    void shouldRankPostsByLikesAndComments() {
+        var likedPost = createPost("Liked");
+        var commentedPost = createPost("Commented");
+        createPost("Ignored");
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .post(LIKE_ENDPOINT, likedPost.getId())
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .contentType(ContentType.JSON)
+                .body(AddCommentRequest.builder().body("text").build())
+                .post(COMMENT_ENDPOINT, commentedPost.getId())
+                .then()
+                .statusCode(HttpStatus.CREATED.value());
+
+        var trendingPosts = getTrendingPosts();
+
+        assertThat(trendingPosts).extracting(ViewPostResponse::getTitle).containsExactly("Commented", "Liked");
+        assertThat(trendingPosts.get(1).getLikes()).isEqualTo(1);
+        assertThat(trendingPosts.get(1).isLikedByMe()).isTrue();
+
+        trendingPostsService.rescale();
+
+        assertThat(getTrendingPosts()).extracting(ViewPostResponse::getTitle).containsExactly("Commented", "Liked");
+    }
+
+    @Test
+    void shouldRemovePostsFromTrendingWhenUnlikedOrDeleted() {
+        var likedPost = createPost("Liked");
+        var commentedPost = createPost("Commented");
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .post(LIKE_ENDPOINT, likedPost.getId());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .contentType(ContentType.JSON)
+                .body(AddCommentRequest.builder().body("text").build())
+                .post(COMMENT_ENDPOINT, commentedPost.getId());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .delete(LIKE_ENDPOINT, likedPost.getId())
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .delete(POST_ENDPOINT, commentedPost.getId())
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        assertThat(getTrendingPosts()).isEmpty();
+    }
+
+    @Test
+    void shouldWithdrawOnlyDecayedContributionOfUnlike() {
+        var post = createPost("Liked and commented");
+        var lifetimeSeconds = 3600L;
+        var likedAt = 1_000_000L;
+        var commentedAt = likedAt + lifetimeSeconds;
+
+        trendingPostsRedisService.recordEngagement(post.getId(), "like:1", TrendingPostsService.LIKE_WEIGHT,
+                likedAt, lifetimeSeconds, 86400);
+        trendingPostsRedisService.recordEngagement(post.getId(), "comment:1", TrendingPostsService.COMMENT_WEIGHT,
+                commentedAt, lifetimeSeconds, 86400);
+        // A lifetime after the like, a fresh like would be worth e times what the like is worth now
+        trendingPostsRedisService.withdrawEngagement(post.getId(), "like:1", TrendingPostsService.LIKE_WEIGHT,
+                lifetimeSeconds);
+
+        assertThat(trendingPostsRedisService.getTopPostIds(10)).containsExactly(post.getId());
+        assertThat(stringRedisTemplate.opsForZSet().score("trending:posts", post.getId().toString()))
+                .isCloseTo(TrendingPostsService.COMMENT_WEIGHT * Math.E, within(1e-9));
+
+        // Withdrawing again, e.g. a repeated unlike, must not subtract anything
+        trendingPostsRedisService.withdrawEngagement(post.getId(), "like:1", TrendingPostsService.LIKE_WEIGHT,
+                lifetimeSeconds);
+        assertThat(stringRedisTemplate.opsForZSet().score("trending:posts", post.getId().toString()))
+                .isCloseTo(TrendingPostsService.COMMENT_WEIGHT * Math.E, within(1e-9));
+    }
+}
@@ -0,0 +1,189 @@
+package com.amedvedev.mediaspace.post;
+
+import com.amedvedev.mediaspace.auth.JwtService;
+import com.amedvedev.mediaspace.post.comment.Comment;
+import com.amedvedev.mediaspace.post.comment.CommentRepository;
+import com.amedvedev.mediaspace.testutil.AbstractIntegrationTest;
+import com.amedvedev.mediaspace.user.User;
+import com.amedvedev.mediaspace.user.UserRepository;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import io.restassured.response.ValidatableResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+
+@Transactional
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class PostGraphQlIntegrationTest extends AbstractIntegrationTest {
+
+    public static final String GRAPHQL_ENDPOINT = "/graphql";
+
+    @LocalServerPort
+    private Integer port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private JwtService jwtService;
+
+    private User user;
+
+    private String token;
+
+    @BeforeEach
+    void setUp() {
+        RestAssured.port = port;
+        RestAssured.basePath = "";
+
+        clearDbAndRedis();
+
+        user = executeInsideTransaction(() ->
+                userRepository.save(User.builder().username("user").password("encoded-password").build()));
+        token = jwtService.generateToken(user);
+    }
+
+    private ValidatableResponse executeQuery(String query, Map<String, Object> variables) {
+        return given()
+                .contentType(ContentType.JSON)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .body(Map.of("query", query, "variables", variables))
+                .when()
+                .post(GRAPHQL_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value());
+    }
+
+    @Test
+    void shouldResolvePostsWithAuthorsAndComments() {
+        var commenter = executeInsideTransaction(() ->
+                userRepository.save(User.builder().username("commenter").password("encoded-password").build()));
+        var firstPost = executeInsideTransaction(() ->
+                postRepository.save(Post.builder().user(user).title("first post").build()));
+        var secondPost = executeInsideTransaction(() ->
+                postRepository.save(Post.builder().user(user).title("second post").build()));
+        executeInsideTransaction(() ->
+                commentRepository.save(Comment.builder().user(commenter).post(firstPost).body("nice").build()));
+
+        var query = """
+                query ($ids: [ID!]!) {
+                    posts(ids: $ids) {
+                        title
+                        likedByMe
+                        author { username posts { title } }
+                        comments { body author { username } }
+                    }
+                }
+                """;
+        var ids = List.of(secondPost.getId(), secondPost.getId() + 100, firstPost.getId());
+
+        executeQuery(query, Map.of("ids", ids))
+                .body("errors", nullValue())
+                .body("data.posts.title", contains("second post", "first post"))
+                .body("data.posts.author.username", contains("user", "user"))
+                .body("data.posts[0].author.posts.title", contains("second post", "first post"))
+                .body("data.posts[0].comments", empty())
+                .body("data.posts[1].comments.body", contains("nice"))
+                .body("data.posts[1].comments[0].author.username", equalTo("commenter"))
+                .body("data.posts[1].likedByMe", equalTo(false));
+    }
+
+    @Test
+    void shouldResolveFirstPageOfCommentsOfEveryPost() {
+        var firstPost = executeInsideTransaction(() ->
+                postRepository.save(Post.builder().user(user).title("first post").build()));
+        var secondPost = executeInsideTransaction(() ->
+                postRepository.save(Post.builder().user(user).title("second post").build()));
+        executeInsideTransaction(() -> {
+            for (int i = 0; i < 25; i++) {
+                commentRepository.save(Comment.builder().user(user).post(firstPost).body("first " + i).build());
+            }
+            var commented = commentRepository.save(
+                    Comment.builder().user(user).post(secondPost).body("second").build());
+            commentRepository.save(Comment.builder().user(user).parentComment(commented).body("reply").build());
+            return null;
+        });
+
+        var query = """
+                query ($ids: [ID!]!) {
+                    posts(ids: $ids) {
+                        comments { body nestedComments { body } }
+                    }
+                }
+                """;
+
+        executeQuery(query, Map.of("ids", List.of(firstPost.getId(), secondPost.getId())))
+                .body("errors", nullValue())
+                .body("data.posts[0].comments", hasSize(20))
+                .body("data.posts[0].comments[0].body", equalTo("first 0"))
+                .body("data.posts[0].comments[19].body", equalTo("first 19"))
+                .body("data.posts[1].comments.body", contains("second"))
+                .body("data.posts[1].comments[0].nestedComments.body", contains("reply"));
+    }
+
+    @Test
+    void shouldReportMissingPostAsNotFoundError() {
+        executeQuery("query ($id: ID!) { post(id: $id) { title } }", Map.of("id", 1))
+                .body("data.post", nullValue())
+                .body("errors[0].extensions.classification", equalTo("NOT_FOUND"))
+                .body("errors[0].message", equalTo("Post not found"));
+    }
+
+    @Test
+    void shouldRejectTooManyIds() {
+        var ids = LongStream.rangeClosed(1, 101).boxed().toList();
+
+        executeQuery("query ($ids: [ID!]!) { posts(ids: $ids) { title } }", Map.of("ids", ids))
+                .body("errors[0].extensions.classification", equalTo("BAD_REQUEST"));
+    }
+
+    @Test
+    void shouldRejectTooComplexQueryBeforeExecutingIt() {
+        var query = """
+                query ($ids: [ID!]!) {
+                    posts(ids: $ids) {
+                        comments { nestedComments { nestedComments { body author { username } } } }
+                    }
+                }
+                """;
+        var ids = LongStream.rangeClosed(1, 100).boxed().toList();
+
+        executeQuery(query, Map.of("ids", ids))
+                .body("data", nullValue())
+                .body("errors[0].message", containsString("complexity"));
+    }
+
+    @Test
+    void shouldNotExecuteQueryWithoutAuthentication() {
+        given()
+                .contentType(ContentType.JSON)
+                .body(Map.of("query", "{ storiesFeed { username } }"))
+                .when()
+                .post(GRAPHQL_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.UNAUTHORIZED.value());
+    }
+}
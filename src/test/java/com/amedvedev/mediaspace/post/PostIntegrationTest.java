@@ -13,6 +13,8 @@ import com.amedvedev.mediaspace.post.dto.CreatePostRequest;
 import com.amedvedev.mediaspace.post.dto.UserProfilePostResponse;
 import com.amedvedev.mediaspace.post.dto.ViewPostResponse;
 import com.amedvedev.mediaspace.post.like.Like;
+import com.amedvedev.mediaspace.post.like.LikeFlushService;
+import com.amedvedev.mediaspace.post.like.LikeRedisService;
 import com.amedvedev.mediaspace.post.like.LikeId;
 import com.amedvedev.mediaspace.testutil.AbstractIntegrationTest;
 import com.amedvedev.mediaspace.user.User;
@@ -22,21 +24,28 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import io.restassured.RestAssured;
 import io.restassured.http.ContentType;
+import org.hibernate.SessionFactory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 import static io.restassured.RestAssured.given;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
 
 @Transactional
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -46,6 +55,8 @@ public class PostIntegrationTest extends AbstractIntegrationTest {
     public static final String USER_BY_USERNAME_ENDPOINT = "/user/{username}";
     public static final String ID_ENDPOINT = "/{id}";
     public static final String LIKE_ENDPOINT = "/{id}/like";
+    public static final String SEARCH_ENDPOINT = "/search";
+    public static final String STREAM_SUFFIX = "/stream";
 
     @LocalServerPort
     private Integer port;
@@ -65,6 +76,18 @@ public class PostIntegrationTest extends AbstractIntegrationTest {
     @Autowired
     private JwtService jwtService;
 
+    @Autowired
+    private LikeFlushService likeFlushService;
+
+    @Autowired
+    private LikeRedisService likeRedisService;
+
+    @Autowired
+    private PostService postService;
+
+    @Autowired
+    private PostRedisService postRedisService;
+
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
@@ -182,7 +205,6 @@ public class PostIntegrationTest extends AbstractIntegrationTest {
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
 
         var createPostRequest = createPostRequest("Title", "Hello, World!");
-        var expectedViewPostResponse = getViewPostResponseExpected("Title", "Hello, World!", 1L, new Long[]{1L, 2L});
 
         var actualViewPostResponse = given()
                 .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
@@ -196,9 +218,46 @@ public class PostIntegrationTest extends AbstractIntegrationTest {
 
         actualViewPostResponse.setCreatedAt(null);
 
+        var expectedViewPostResponse = getViewPostResponseExpected("Title", "Hello, World!", 1L, getMediaIdsOfPost(1L));
         assertThat(expectedViewPostResponse).isEqualTo(actualViewPostResponse);
     }
 
+    @Test
+    void shouldBatchMediaInsertsWhenCreatingPost() {
+        var mediaUrls = IntStream.rangeClosed(1, 10)
+                .mapToObj(index -> new CreateMediaRequest("https://example.com/image" + index + ".jpg"))
+                .toList();
+        var createPostRequest = CreatePostRequest.builder().title("Title").mediaUrls(mediaUrls).build();
+
+        var statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        try {
+            given()
+                    .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                    .contentType(ContentType.JSON)
+                    .body(createPostRequest)
+                    .when()
+                    .post()
+                    .then()
+                    .statusCode(HttpStatus.CREATED.value());
+
+            // Post insert, media batch, post_media batch, plus the token state lookup and at most two sequence calls
+            assertThat(statistics.getEntityInsertCount()).isEqualTo(21);
+            assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(6);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+
+        assertThat(getMediaIdsOfPost(1L)).hasSize(10);
+    }
+
+    private Long[] getMediaIdsOfPost(Long postId) {
+        return jdbcTemplate.queryForList(
+                "SELECT media_id FROM post_media WHERE post_id = ? ORDER BY position", Long.class, postId)
+                .toArray(Long[]::new);
+    }
+
     @Test
     void shouldReturnPostsOfUser(){
         createPost("Title1", "Hello, World!");
@@ -217,6 +276,49 @@ public class PostIntegrationTest extends AbstractIntegrationTest {
         assertThat(actualPostsList.get(1).getTitle()).isEqualTo("Title2");
     }
 
+    @Test
+    void shouldStreamPostsOfUserAsNdjsonWithPendingLikes() throws Exception {
+        createPost("First", "Hello, World!");
+        var likedPost = createPost("Second", "Hello, World!");
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .put(LIKE_ENDPOINT, likedPost.getId())
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        var lines = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(USER_BY_USERNAME_ENDPOINT + STREAM_SUFFIX, user.getUsername())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .contentType(containsString(MediaType.APPLICATION_NDJSON_VALUE))
+                .extract().asString().lines().toList();
+
+        var posts = new ArrayList<UserProfilePostResponse>();
+        for (var line : lines) {
+            posts.add(new ObjectMapper().readValue(line, UserProfilePostResponse.class));
+        }
+
+        assertThat(posts).extracting(UserProfilePostResponse::getTitle).containsExactly("First", "Second");
+        assertThat(posts).extracting(UserProfilePostResponse::getCoverImage)
+                .containsOnly("https://example.com/image.jpg");
+        assertThat(posts).extracting(UserProfilePostResponse::isLikedByMe).containsExactly(false, true);
+    }
+
+    @Test
+    void shouldNotStreamPostsOfUserWithInvalidUsername() {
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(USER_BY_USERNAME_ENDPOINT + STREAM_SUFFIX, "invalid")
+                .then()
+                .statusCode(HttpStatus.NOT_FOUND.value())
+                .body("reason", equalTo("User not found"));
+    }
+
     @Test
     void shouldNotAccessPostsOfUserWithInvalidUsername() {
         createPost("Title1", "Hello, World!");
@@ -232,9 +334,10 @@ public class PostIntegrationTest extends AbstractIntegrationTest {
 
     @Test
     void shouldReturnPostById() {
-        createPost("Title", "Hello, World!");
+        var post = createPost("Title", "Hello, World!");
+        var mediaIds = post.getPostMediaList().stream().map(postMedia -> postMedia.getMedia().getId()).toArray(Long[]::new);
 
-        var expectedViewPostResponse = getViewPostResponseExpected("Title", "Hello, World!", 1L, new Long[]{1L, 2L});
+        var expectedViewPostResponse = getViewPostResponseExpected("Title", "Hello, World!", 1L, mediaIds);
 
         var actualViewPostResponse = given()
                 .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
@@ -249,6 +352,103 @@ public class PostIntegrationTest extends AbstractIntegrationTest {
         assertThat(expectedViewPostResponse).isEqualTo(actualViewPostResponse);
     }
 
+    @Test
+    void shouldServePostFromCacheUntilItIsDeleted() {
+        var post = createPost("Title", "Hello, World!");
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("title", equalTo("Title"));
+
+        executeInsideTransaction(() ->
+                jdbcTemplate.update("UPDATE post SET title = 'Changed' WHERE id = ?", post.getId()));
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("title", equalTo("Title"));
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .delete(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    void shouldNotCachePostLoadedBeforeCommentsCountChanged() {
+        var post = createPost("Title", "Hello, World!");
+        var viewVersion = postRedisService.getViewVersions(List.of(post.getId())).get(post.getId());
+
+        var staleViewPostResponse = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("commentsCount", equalTo(0))
+                .extract().jsonPath().getObject(".", ViewPostResponse.class);
+
+        executeInsideTransaction(() -> {
+            postService.incrementCommentCount(post.getId());
+            return null;
+        });
+        postRedisService.cachePostView(staleViewPostResponse, viewVersion);
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("commentsCount", equalTo(1));
+    }
+
+    @Test
+    void shouldKeepCachedPostContentWhenCommentsCountChanges() {
+        var post = createPost("Title", "Hello, World!");
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("commentsCount", equalTo(0));
+
+        executeInsideTransaction(() -> {
+            postService.incrementCommentCount(post.getId());
+            postService.incrementCommentCount(post.getId());
+            return null;
+        });
+
+        assertThat(redisTemplate.hasKey("post:" + post.getId() + ":view")).isTrue();
+        assertThat(redisTemplate.opsForValue().get("post:" + post.getId() + ":comments_count")).isEqualTo(2);
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("commentsCount", equalTo(2));
+    }
+
     @Test
     void shouldNotAccessPostByIdWithInvalidId() {
         createPost("Title", "Hello, World!");
@@ -262,6 +462,171 @@ public class PostIntegrationTest extends AbstractIntegrationTest {
                 .body("reason", equalTo("Post not found"));
     }
 
+
+    @Test
+    void shouldSearchPostsByTitleAndDescriptionRankedByRelevance() {
+        var described = createPost("Holiday", "Photos from the mountains trip");
+        var titled = createPost("Mountains at sunrise", "Early morning hike");
+        createPost("City lights", "Night walk downtown");
+
+        var posts = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .queryParam("query", "  Mountains ")
+                .when()
+                .get(SEARCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("nextCursor", equalTo(null))
+                .extract().jsonPath().getList("posts", ViewPostResponse.class);
+
+        assertThat(posts).extracting(ViewPostResponse::getId).containsExactly(titled.getId(), described.getId());
+    }
+
+    @Test
+    void shouldPageThroughSearchResultsWithCursor() {
+        var postIds = LongStream.range(0, 5)
+                .map(index -> createPost("Sunset " + index, "Beach").getId())
+                .boxed()
+                .toList();
+
+        var firstPage = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .queryParam("query", "sunset")
+                .queryParam("size", 3)
+                .when()
+                .get(SEARCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract().jsonPath();
+
+        var secondPage = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .queryParam("query", "sunset")
+                .queryParam("size", 3)
+                .queryParam("cursor", firstPage.getString("nextCursor"))
+                .when()
+                .get(SEARCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("nextCursor", equalTo(null))
+                .extract().jsonPath();
+
+        var foundIds = new ArrayList<>(firstPage.getList("posts.id", Long.class));
+        foundIds.addAll(secondPage.getList("posts.id", Long.class));
+        assertThat(foundIds).containsExactlyElementsOf(postIds.reversed());
+    }
+
+    @Test
+    void shouldNotSearchPostsWithBlankQuery() {
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .queryParam("query", "   ")
+                .when()
+                .get(SEARCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value())
+                .body("reason", equalTo("Search query must not be blank"));
+    }
+    @Test
+    void shouldAnswerConditionalPostRequestWithNotModifiedUntilPostIsLiked() {
+        var post = createPost("Title", "Hello, World!");
+
+        var eTag = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract().header(HttpHeaders.ETAG);
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.NOT_MODIFIED.value());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .put(LIKE_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .header(HttpHeaders.ETAG, not(equalTo(eTag)))
+                .body("likes", equalTo(1))
+                .body("likedByMe", equalTo(true));
+    }
+
+    @Test
+    void shouldNotShareConditionalPostResponsesBetweenViewers() {
+        var post = createPost("Title", "Hello, World!");
+
+        var eTag = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract().header(HttpHeaders.ETAG);
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + jwtService.generateToken(createUser("another-user")))
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value());
+    }
+
+    @Test
+    void shouldResolveLikedByMeOnProfilePostsOfEveryViewer() {
+        var post = createPost("Title", "Hello, World!");
+        var profilePath = RestAssured.baseURI + ":" + port + "/api/users/{username}";
+
+        var eTag = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(profilePath, user.getUsername())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("posts[0].likedByMe", equalTo(false))
+                .extract().header(HttpHeaders.ETAG);
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .put(LIKE_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .when()
+                .get(profilePath, user.getUsername())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .header(HttpHeaders.ETAG, not(equalTo(eTag)))
+                .body("posts[0].likedByMe", equalTo(true));
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + jwtService.generateToken(createUser("another-user")))
+                .when()
+                .get(profilePath, user.getUsername())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("posts[0].likedByMe", equalTo(false));
+    }
+
     @Test
     void shouldLikePost() {
         var post = createPost("Title", "Hello, World!");
@@ -273,6 +638,8 @@ public class PostIntegrationTest extends AbstractIntegrationTest {
                 .then()
                 .statusCode(HttpStatus.NO_CONTENT.value());
 
+        likeFlushService.flush();
+
         var likedPost = postRepository.findById(post.getId()).orElseThrow();
         var expectedLike = Like.builder()
                 .id(new LikeId(user.getId(), post.getId()))
@@ -281,6 +648,142 @@ public class PostIntegrationTest extends AbstractIntegrationTest {
                 .build();
         assertThat(likedPost.getLikes().size()).isEqualTo(1);
         assertThat(likedPost.getLikes()).contains(expectedLike);
+        assertThat(likedPost.getLikeCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldCountLikeOnceWhenLikingPostTwice() {
+        var post = createPost("Title", "Hello, World!");
+
+        for (int i = 0; i < 2; i++) {
+            given()
+                    .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                    .when()
+                    .put(LIKE_ENDPOINT, post.getId())
+                    .then()
+                    .statusCode(HttpStatus.NO_CONTENT.value());
+        }
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("likes", equalTo(1));
+    }
+
+    @Test
+    void shouldPersistOnlyFinalStateWhenLikeIsToggledBeforeFlush() {
+        var post = createPost("Title", "Hello, World!");
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .put(LIKE_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .delete(LIKE_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        likeFlushService.flush();
+
+        var flushedPost = postRepository.findById(post.getId()).orElseThrow();
+        assertThat(flushedPost.getLikes()).isEmpty();
+        assertThat(flushedPost.getLikeCount()).isZero();
+    }
+
+    @Test
+    void shouldShowWhetherPostIsLikedByCurrentUser() {
+        var post = createPost("Title", "Hello, World!");
+        var anotherUserToken = jwtService.generateToken(createUser("another-user"));
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .put(LIKE_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("likedByMe", equalTo(true));
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + anotherUserToken)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("likedByMe", equalTo(false));
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(USER_BY_USERNAME_ENDPOINT, "user")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("[0].likedByMe", equalTo(true));
+    }
+
+    @Test
+    void shouldKeepLikesOfPopularPostInBitmap() {
+        var post = createPost("Title", "Hello, World!");
+        var otherUserIds = LongStream.rangeClosed(1_000, 2_100).boxed().toList();
+        likeRedisService.cacheLikes(post.getId(), otherUserIds);
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .put(LIKE_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        assertThat(redisTemplate.hasKey("post:" + post.getId() + ":likes")).isFalse();
+        assertThat(redisTemplate.hasKey("post:" + post.getId() + ":likes_bitmap")).isTrue();
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("likes", equalTo(otherUserIds.size() + 1))
+                .body("likedByMe", equalTo(true));
+    }
+
+    @Test
+    void shouldNotMergeStaleLoadedLikesIntoCachedLikes() {
+        var post = createPost("Title", "Hello, World!");
+        likeRedisService.cacheLikes(post.getId(), List.of(user.getId()));
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .delete(LIKE_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        // A loader that read the database before the unlike finishes after it
+        likeRedisService.cacheLikes(post.getId(), List.of(user.getId()));
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("likes", equalTo(0))
+                .body("likedByMe", equalTo(false));
     }
 
     @Test
@@ -314,9 +817,12 @@ public class PostIntegrationTest extends AbstractIntegrationTest {
                 .then()
                 .statusCode(HttpStatus.NO_CONTENT.value());
 
+        likeFlushService.flush();
+
         var unlikedPost = postRepository.findById(post.getId()).orElseThrow();
 
         assertThat(unlikedPost.getLikes()).isEmpty();
+        assertThat(unlikedPost.getLikeCount()).isZero();
     }
 
     @Test
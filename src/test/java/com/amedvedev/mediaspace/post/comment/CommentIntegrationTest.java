@@ -5,11 +5,16 @@ import com.amedvedev.mediaspace.post.Post;
 import com.amedvedev.mediaspace.post.PostMapper;
 import com.amedvedev.mediaspace.post.PostRepository;
 import com.amedvedev.mediaspace.post.comment.dto.AddCommentRequest;
+import com.amedvedev.mediaspace.post.comment.dto.CachedComment;
 import com.amedvedev.mediaspace.post.comment.dto.EditCommentRequest;
+import com.amedvedev.mediaspace.post.comment.dto.ThreadCommentResponse;
+import com.amedvedev.mediaspace.post.comment.dto.ViewCommentRepliesResponse;
+import com.amedvedev.mediaspace.post.comment.dto.ViewCommentResponse;
 import com.amedvedev.mediaspace.post.comment.dto.ViewPostCommentsResponse;
 import com.amedvedev.mediaspace.testutil.AbstractIntegrationTest;
 import com.amedvedev.mediaspace.user.User;
 import com.amedvedev.mediaspace.user.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.restassured.RestAssured;
 import io.restassured.http.ContentType;
 import org.junit.jupiter.api.BeforeEach;
@@ -20,10 +25,17 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
 import static io.restassured.RestAssured.given;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 
 @Transactional
@@ -33,6 +45,8 @@ public class CommentIntegrationTest extends AbstractIntegrationTest {
     public static final String COMMENTS_ENDPOINT = "/api/comments";
     public static final String POST_ID_ENDPOINT = "/posts/{postId}";
     public static final String COMMENT_ID_ENDPOINT = "/{commentId}";
+    public static final String REPLIES_ENDPOINT = "/{commentId}/replies";
+    public static final String STREAM_SUFFIX = "/stream";
 
 
     @LocalServerPort
@@ -53,6 +67,12 @@ public class CommentIntegrationTest extends AbstractIntegrationTest {
     @Autowired
     private CommentRepository commentRepository;
 
+    @Autowired
+    private CommentRedisService commentRedisService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     private User user;
     private Post post;
     private String token;
@@ -142,6 +162,7 @@ public class CommentIntegrationTest extends AbstractIntegrationTest {
         var comments = updatedPost.getComments();
         assertThat(comments).hasSize(1);
         assertThat(comments.getFirst().getBody()).isEqualTo("text");
+        assertThat(updatedPost.getCommentCount()).isEqualTo(1);
     }
 
     @ParameterizedTest
@@ -174,7 +195,11 @@ public class CommentIntegrationTest extends AbstractIntegrationTest {
                 .post(COMMENT_ID_ENDPOINT, commentId)
                 .then()
                 .log().all()
-                .statusCode(HttpStatus.CREATED.value());
+                .statusCode(HttpStatus.CREATED.value())
+                .body("id", equalTo(2))
+                .body("body", equalTo("nested text"))
+                .body("author", equalTo("user"))
+                .body("nestedComments.size()", equalTo(0));
 
         var updatedPost = postRepository.findById(post.getId()).orElseThrow();
         var comments = updatedPost.getComments();
@@ -266,7 +291,8 @@ public class CommentIntegrationTest extends AbstractIntegrationTest {
         var comment1 = response.getComments().getFirst();
         var nestedComment = comment1.getNestedComments().getFirst();
 
-        assertThat(response.getComments().size()).isEqualTo(2);
+        assertThat(response.getComments().size()).isEqualTo(1);
+        assertThat(comment1.getRepliesCount()).isEqualTo(1);
 
         assertThat(comment1.getId()).isEqualTo(1L);
         assertThat(comment1.getBody()).isEqualTo("text");
@@ -277,6 +303,246 @@ public class CommentIntegrationTest extends AbstractIntegrationTest {
         assertThat(nestedComment.getAuthor()).isEqualTo("user");
     }
 
+    @Test
+    void shouldPaginateTopLevelCommentsWithCursor() {
+        addCommentsToPost(user, post, "text", "text2", "text3");
+
+        var firstPage = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .queryParam("size", 2)
+                .get(POST_ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract()
+                .as(ViewPostCommentsResponse.class);
+
+        assertThat(firstPage.getComments()).extracting(ViewCommentResponse::getBody).containsExactly("text", "text2");
+        assertThat(firstPage.getNextCursor()).isNotNull();
+
+        var secondPage = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .queryParam("size", 2)
+                .queryParam("cursor", firstPage.getNextCursor())
+                .get(POST_ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract()
+                .as(ViewPostCommentsResponse.class);
+
+        assertThat(secondPage.getComments()).extracting(ViewCommentResponse::getBody).containsExactly("text3");
+        assertThat(secondPage.getNextCursor()).isNull();
+    }
+
+    @Test
+    void shouldLimitNestedCommentsAndLoadMoreReplies() {
+        addCommentsToPost(user, post, "text");
+        addNestedCommentToComment(user, 1L, "reply1", "reply2", "reply3", "reply4", "reply5");
+
+        var response = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .get(POST_ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract()
+                .as(ViewPostCommentsResponse.class);
+
+        var comment = response.getComments().getFirst();
+        assertThat(comment.getRepliesCount()).isEqualTo(5);
+        assertThat(comment.getNestedComments()).extracting(ViewCommentResponse::getBody)
+                .containsExactly("reply1", "reply2", "reply3");
+
+        var lastShownReply = comment.getNestedComments().getLast();
+        var cursor = new CommentCursor(lastShownReply.getWrittenAt(), lastShownReply.getId()).encode();
+
+        var replies = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .queryParam("cursor", cursor)
+                .get(REPLIES_ENDPOINT, comment.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract()
+                .as(ViewCommentRepliesResponse.class);
+
+        assertThat(replies.getCommentId()).isEqualTo(comment.getId());
+        assertThat(replies.getReplies()).extracting(ViewCommentResponse::getBody).containsExactly("reply4", "reply5");
+        assertThat(replies.getNextCursor()).isNull();
+    }
+
+    @Test
+    void shouldNotLoadRepliesIfCommentDoesNotExist() {
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .get(REPLIES_ENDPOINT, 1)
+                .then()
+                .statusCode(HttpStatus.NOT_FOUND.value())
+                .body("reason", equalTo("Comment not found"));
+    }
+
+    @Test
+    void shouldRejectInvalidCommentsCursor() {
+        addCommentsToPost(user, post, "text");
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .queryParam("cursor", "not-a-cursor")
+                .get(POST_ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value())
+                .body("reason", equalTo("Invalid comments cursor"));
+    }
+
+    @Test
+    void shouldServeFirstPageOfCommentsFromCacheAndApplyChangesInPlace() {
+        addCommentsToPost(user, post, "text", "text2");
+        getCommentsOfPost();
+
+        executeInsideTransaction(() -> jdbcTemplate.update("UPDATE comment SET body = 'changed' WHERE id = 1"));
+        assertThat(getCommentsOfPost().getComments()).extracting(ViewCommentResponse::getBody)
+                .containsExactly("text", "text2");
+
+        given()
+                .contentType(ContentType.JSON)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .body(AddCommentRequest.builder().body("reply").build())
+                .post(COMMENT_ID_ENDPOINT, 2)
+                .then()
+                .statusCode(HttpStatus.CREATED.value());
+
+        given()
+                .contentType(ContentType.JSON)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .body(EditCommentRequest.builder().updatedBody("edited text2").build())
+                .patch(COMMENT_ID_ENDPOINT, 2)
+                .then()
+                .statusCode(HttpStatus.OK.value());
+
+        var comments = getCommentsOfPost().getComments();
+        assertThat(comments).extracting(ViewCommentResponse::getBody).containsExactly("text", "edited text2");
+        assertThat(comments.get(1).getRepliesCount()).isEqualTo(1);
+        assertThat(comments.get(1).getNestedComments()).extracting(ViewCommentResponse::getBody)
+                .containsExactly("reply");
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .delete(COMMENT_ID_ENDPOINT, 2)
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        assertThat(getCommentsOfPost().getComments()).extracting(ViewCommentResponse::getBody)
+                .containsExactly("text");
+    }
+
+    @Test
+    void shouldNotCacheFirstPageOfCommentsLoadedBeforeOrDuringChange() {
+        addCommentsToPost(user, post, "text");
+        var stalePage = List.of(new CachedComment(1L, null, "text", user.getUsername(), LocalDateTime.now(), 0, 0));
+
+        executeInsideTransaction(() -> {
+            commentRedisService.beginFirstPageChange(post.getId());
+            var version = commentRedisService.getFirstPageVersions(List.of(post.getId())).get(post.getId());
+            commentRedisService.cacheFirstPage(post.getId(), stalePage, version);
+            return null;
+        });
+        assertThat(commentRedisService.getFirstPage(post.getId())).isEmpty();
+
+        var version = commentRedisService.getFirstPageVersions(List.of(post.getId())).get(post.getId());
+        given()
+                .contentType(ContentType.JSON)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .body(AddCommentRequest.builder().body("text2").build())
+                .post(POST_ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.CREATED.value());
+        commentRedisService.cacheFirstPage(post.getId(), stalePage, version);
+
+        assertThat(getCommentsOfPost().getComments()).extracting(ViewCommentResponse::getBody)
+                .containsExactly("text", "text2");
+    }
+
+    private ViewPostCommentsResponse getCommentsOfPost() {
+        return given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .get(POST_ID_ENDPOINT, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract()
+                .as(ViewPostCommentsResponse.class);
+    }
+
+    @Test
+    void shouldStreamWholeThreadOfPostAsNdjson() throws Exception {
+        addCommentsToPost(user, post, "first", "second");
+        addNestedCommentToComment(user, 1L, "reply");
+
+        var lines = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .get(POST_ID_ENDPOINT + STREAM_SUFFIX, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .contentType(containsString(MediaType.APPLICATION_NDJSON_VALUE))
+                .extract().asString().lines().toList();
+
+        var comments = new ArrayList<ThreadCommentResponse>();
+        for (var line : lines) {
+            comments.add(objectMapper.readValue(line, ThreadCommentResponse.class));
+        }
+
+        assertThat(comments).extracting(ThreadCommentResponse::getBody).containsExactly("first", "reply", "second");
+        assertThat(comments).extracting(ThreadCommentResponse::getParentId).containsExactly(null, 1L, null);
+        assertThat(comments).extracting(ThreadCommentResponse::getDepth).containsExactly(0, 1, 0);
+    }
+
+    @Test
+    void shouldStreamEveryReplyWithinItsOwnThread() throws Exception {
+        addCommentsToPost(user, post, "first", "second");
+        addNestedCommentToComment(user, 1L, "reply to first");
+        addNestedCommentToComment(user, 2L, "reply to second");
+        addNestedCommentToComment(user, 3L, "reply to reply");
+
+        var lines = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .get(POST_ID_ENDPOINT + STREAM_SUFFIX, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract().asString().lines().toList();
+
+        var comments = new ArrayList<ThreadCommentResponse>();
+        for (var line : lines) {
+            comments.add(objectMapper.readValue(line, ThreadCommentResponse.class));
+        }
+
+        assertThat(comments).extracting(ThreadCommentResponse::getBody)
+                .containsExactly("first", "reply to first", "reply to reply", "second", "reply to second");
+        assertThat(comments).extracting(ThreadCommentResponse::getDepth).containsExactly(0, 1, 2, 0, 1);
+    }
+
+    @Test
+    void shouldStreamThreadsOfPostBeyondOneChunk() {
+        var bodies = IntStream.range(0, 150).mapToObj(i -> "comment-" + i).toArray(String[]::new);
+        addCommentsToPost(user, post, bodies);
+
+        var lines = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .get(POST_ID_ENDPOINT + STREAM_SUFFIX, post.getId())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract().asString().lines().toList();
+
+        assertThat(lines).hasSize(150);
+        assertThat(lines.getFirst()).contains("comment-0\"");
+        assertThat(lines.getLast()).contains("comment-149\"");
+    }
+
+    @Test
+    void shouldNotStreamCommentsIfPostDoesNotExist() {
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .get(POST_ID_ENDPOINT + STREAM_SUFFIX, 999)
+                .then()
+                .statusCode(HttpStatus.NOT_FOUND.value())
+                .body("reason", equalTo("Post not found"));
+    }
+
     @Test
     void shouldNotViewNestedCommentsIfCommentDoesNotExist() {
         addCommentsToPost(user, post, "text");
@@ -506,6 +772,7 @@ public class CommentIntegrationTest extends AbstractIntegrationTest {
 
         var updatedPost = postRepository.findById(post.getId()).orElseThrow();
         assertThat(updatedPost.getComments()).isEmpty();
+        assertThat(updatedPost.getCommentCount()).isZero();
     }
 
     @Test
@@ -0,0 +1,213 @@
+package com.amedvedev.mediaspace.post.hashtag;
+
+import com.amedvedev.mediaspace.auth.JwtService;
+import com.amedvedev.mediaspace.post.Post;
+import com.amedvedev.mediaspace.post.PostRepository;
+import com.amedvedev.mediaspace.post.dto.CreatePostRequest;
+import com.amedvedev.mediaspace.testutil.AbstractIntegrationTest;
+import com.amedvedev.mediaspace.user.User;
+import com.amedvedev.mediaspace.user.UserRepository;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Set;
+
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+@Transactional
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class HashtagIntegrationTest extends AbstractIntegrationTest {
+
+    public static final String POSTS_ENDPOINT = "/api/posts";
+    public static final String TAG_ENDPOINT = "/api/posts/tags/{tag}";
+    public static final String TRENDING_TAGS_ENDPOINT = "/api/feed/trending/tags";
+
+    @LocalServerPort
+    private Integer port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private HashtagRedisService hashtagRedisService;
+
+    private User user;
+
+    private String token;
+
+    @BeforeEach
+    void setUp() {
+        RestAssured.port = port;
+        RestAssured.basePath = "";
+
+        clearDbAndRedis();
+
+        user = executeInsideTransaction(() ->
+                userRepository.save(User.builder().username("user").password("encoded-password").build()));
+        token = jwtService.generateToken(user);
+    }
+
+    private Long createPost(String description) {
+        var request = CreatePostRequest.builder().title("Title").description(description).mediaUrls(List.of()).build();
+        return given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .contentType(ContentType.JSON)
+                .body(request)
+                .post(POSTS_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.CREATED.value())
+                .extract().jsonPath().getLong("id");
+    }
+
+    @Test
+    void shouldStoreHashtagsOfCreatedPost() {
+        var postId = createPost("#Sunset at the #beach, #123 is not a tag");
+
+        var tags = jdbcTemplate.queryForList(
+                "SELECT tag FROM post_hashtag WHERE post_id = ? ORDER BY tag", String.class, postId);
+
+        assertThat(tags).containsExactly("beach", "sunset");
+    }
+
+    @Test
+    void shouldServePostsWithHashtagNewestFirstAndAppendNewPosts() {
+        var firstPostId = createPost("#Sunset at the #beach");
+        var secondPostId = createPost("Another #sunset");
+        createPost("Just the #beach");
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .get(TAG_ENDPOINT, "#SUNSET")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("tag", equalTo("sunset"))
+                .body("posts.id", contains(secondPostId.intValue(), firstPostId.intValue()))
+                .body("nextCursor", equalTo(null));
+
+        assertThat(stringRedisTemplate.hasKey("hashtag:sunset:posts")).isTrue();
+        var thirdPostId = createPost("Best #sunset so far");
+
+        var firstPage = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .queryParam("size", 2)
+                .get(TAG_ENDPOINT, "sunset")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("posts.id", contains(thirdPostId.intValue(), secondPostId.intValue()))
+                .extract().jsonPath();
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .queryParam("size", 2)
+                .queryParam("cursor", firstPage.getString("nextCursor"))
+                .get(TAG_ENDPOINT, "sunset")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("posts.id", contains(firstPostId.intValue()))
+                .body("nextCursor", equalTo(null));
+    }
+
+    @Test
+    void shouldNotCacheTimelineLoadedBeforePostWithHashtagWasRecorded() {
+        var firstPostId = createPost("First #sunset");
+        var version = hashtagRedisService.getTimelineVersion("sunset");
+        var staleTimeline = postRepository.findIdsByHashtag("sunset", Long.MAX_VALUE, HashtagRedisService.TIMELINE_SIZE);
+
+        var secondPostId = createPost("Second #sunset");
+        hashtagRedisService.cacheTimeline("sunset", staleTimeline, version);
+
+        assertThat(stringRedisTemplate.hasKey("hashtag:sunset:posts")).isFalse();
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .get(TAG_ENDPOINT, "sunset")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("posts.id", contains(secondPostId.intValue(), firstPostId.intValue()));
+    }
+
+    @Test
+    void shouldLoadPostsWithHashtagFromDatabaseWhenNotCached() {
+        var post = executeInsideTransaction(() -> postRepository.save(
+                Post.builder().user(user).title("Title").hashtags(Set.of("sunset")).build()));
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .get(TAG_ENDPOINT, "sunset")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("posts.id", contains(post.getId().intValue()));
+    }
+
+    @Test
+    void shouldSkipDeletedPostsWithHashtag() {
+        var firstPostId = createPost("#sunset");
+        var secondPostId = createPost("#sunset");
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .get(TAG_ENDPOINT, "sunset")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("posts.id", contains(secondPostId.intValue(), firstPostId.intValue()));
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .delete(POSTS_ENDPOINT + "/{id}", secondPostId)
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .get(TAG_ENDPOINT, "sunset")
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("posts.id", contains(firstPostId.intValue()));
+    }
+
+    @Test
+    void shouldRankTrendingHashtagsByRecentPosts() {
+        createPost("#sunset #beach");
+        createPost("#sunset");
+        createPost("#sunset #mountains #beach");
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .queryParam("limit", 2)
+                .get(TRENDING_TAGS_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("tag", contains("sunset", "beach"))
+                .body("postsCount", contains(3, 2));
+    }
+
+    @Test
+    void shouldNotServePostsOfInvalidHashtag() {
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .get(TAG_ENDPOINT, "123")
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value())
+                .body("reason", equalTo("Invalid hashtag"));
+    }
+}
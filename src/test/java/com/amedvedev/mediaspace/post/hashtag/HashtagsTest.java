@@ -0,0 +1,45 @@
+package com.amedvedev.mediaspace.post.hashtag;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HashtagsTest {
+
+    @Test
+    void extractsDistinctLowerCasedTagsInOrder() {
+        var tags = Hashtags.extract("#Sunset at the #beach, again a #sunset! #\u00c9t\u00e9_2024");
+
+        assertThat(tags).containsExactly("sunset", "beach", "\u00e9t\u00e9_2024");
+    }
+
+    @Test
+    void ignoresNumbersEmbeddedHashesAndTooLongTags() {
+        var tooLong = "a".repeat(Hashtags.MAX_LENGTH + 1);
+
+        var tags = Hashtags.extract("#123 mail#me ##double #" + tooLong + " # #ok");
+
+        assertThat(tags).containsExactly("ok");
+    }
+
+    @Test
+    void limitsTagsPerPost() {
+        var text = IntStream.range(0, Hashtags.MAX_PER_POST + 5)
+                .mapToObj(index -> "#tag" + index)
+                .collect(Collectors.joining(" "));
+
+        assertThat(Hashtags.extract(text)).hasSize(Hashtags.MAX_PER_POST);
+    }
+
+    @Test
+    void normalizesTagsGivenByClients() {
+        assertThat(Hashtags.normalize(" #Sunset ")).isEqualTo(Optional.of("sunset"));
+        assertThat(Hashtags.normalize("beach")).isEqualTo(Optional.of("beach"));
+        assertThat(Hashtags.normalize("123")).isEmpty();
+        assertThat(Hashtags.normalize("two words")).isEmpty();
+    }
+}
@@ -0,0 +1,63 @@
+package com.amedvedev.mediaspace.post.like;
+
+import com.amedvedev.mediaspace.post.Post;
+import com.amedvedev.mediaspace.post.PostRepository;
+import com.amedvedev.mediaspace.testutil.AbstractIntegrationTest;
+import com.amedvedev.mediaspace.user.User;
+import com.amedvedev.mediaspace.user.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The scheduled flush is pushed out of the way, so that entries are only consumed where the test says
+@SpringBootTest
+@TestPropertySource(properties = {"likes.flush.interval-ms=3600000", "likes.flush.claim-min-idle-ms=0"})
+class LikeFlushIntegrationTest extends AbstractIntegrationTest {
+
+    private static final String CONSUMER_GROUP = "likes-flusher";
+
+    @Autowired
+    private LikeFlushService likeFlushService;
+
+    @Autowired
+    private LikeRedisService likeRedisService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @BeforeEach
+    void setUp() {
+        clearDbAndRedis();
+    }
+
+    @Test
+    void shouldPersistChangesAbandonedByStoppedConsumer() {
+        var user = userRepository.save(User.builder().username("user").password("encoded-password").build());
+        var post = postRepository.save(Post.builder().user(user).title("Title").build());
+
+        likeRedisService.createPendingChangesGroup(CONSUMER_GROUP);
+        likeRedisService.cacheLikes(post.getId(), List.of());
+        likeRedisService.like(post.getId(), user.getId());
+
+        var delivered = likeRedisService.readPendingChanges(
+                Consumer.from(CONSUMER_GROUP, "stopped-instance"), 10, ReadOffset.lastConsumed());
+        assertThat(delivered).hasSize(1);
+
+        assertThat(likeFlushService.flush()).isEqualTo(1);
+
+        var likedPost = postRepository.findById(post.getId()).orElseThrow();
+        assertThat(likedPost.getLikeCount()).isEqualTo(1);
+        assertThat(likeFlushService.flush()).isZero();
+    }
+}
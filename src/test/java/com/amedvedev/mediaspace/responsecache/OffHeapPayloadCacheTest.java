@@ -0,0 +1,89 @@
+package com.amedvedev.mediaspace.responsecache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffHeapPayloadCacheTest {
+
+    private static final Duration TTL = Duration.ofMinutes(1);
+
+    @Test
+    void storeAndReadPayload() {
+        var cache = new OffHeapPayloadCache(2048, 1024, 256);
+        var payload = payload(100, 'a');
+
+        cache.put("key", payload, TTL);
+
+        assertThat(cache.get("key")).hasValueSatisfying(value -> assertThat(value).isEqualTo(payload));
+        assertThat(cache.get("missing")).isEmpty();
+        assertThat(cache.getStats()).isEqualTo(new OffHeapCacheStats(1, 1, 0, 0, 1, 100, 1024, 2048));
+    }
+
+    @Test
+    void replacePayloadOfSameKey() {
+        var cache = new OffHeapPayloadCache(2048, 1024, 256);
+
+        cache.put("key", payload(100, 'a'), TTL);
+        cache.put("key", payload(300, 'b'), TTL);
+
+        assertThat(cache.get("key")).hasValueSatisfying(value -> assertThat(value).isEqualTo(payload(300, 'b')));
+        assertThat(cache.getStats().entries()).isEqualTo(1);
+        assertThat(cache.getStats().storedBytes()).isEqualTo(300);
+    }
+
+    @Test
+    void evictPayloadNotReadSinceClockHandPassedWhenCapacityIsUsed() {
+        // A single slab of four 256-byte chunks
+        var cache = new OffHeapPayloadCache(1024, 1024, 256);
+        for (var i = 0; i < 4; i++) {
+            cache.put("key" + i, payload(200, (char) ('a' + i)), TTL);
+        }
+        cache.get("key0");
+        cache.get("key2");
+
+        cache.put("key4", payload(200, 'e'), TTL);
+
+        assertThat(cache.get("key1")).isEmpty();
+        assertThat(cache.get("key0")).isPresent();
+        assertThat(cache.get("key2")).isPresent();
+        assertThat(cache.get("key3")).isPresent();
+        assertThat(cache.get("key4")).hasValueSatisfying(value -> assertThat(value).isEqualTo(payload(200, 'e')));
+        assertThat(cache.getStats().evictions()).isEqualTo(1);
+        assertThat(cache.getStats().allocatedBytes()).isEqualTo(1024);
+    }
+
+    @Test
+    void rejectPayloadsLargerThanSlabOrWithoutMemoryForTheirSizeClass() {
+        var cache = new OffHeapPayloadCache(1024, 1024, 256);
+        cache.put("small", payload(200, 'a'), TTL);
+
+        cache.put("larger-than-slab", payload(2000, 'b'), TTL);
+        cache.put("no-memory-left", payload(600, 'c'), TTL);
+
+        assertThat(cache.get("larger-than-slab")).isEmpty();
+        assertThat(cache.get("no-memory-left")).isEmpty();
+        assertThat(cache.get("small")).isPresent();
+        assertThat(cache.getStats().rejections()).isEqualTo(2);
+    }
+
+    @Test
+    void doNotReturnExpiredPayload() {
+        var cache = new OffHeapPayloadCache(1024, 1024, 256);
+
+        cache.put("key", payload(100, 'a'), Duration.ofMillis(-1));
+
+        assertThat(cache.get("key")).isEmpty();
+        assertThat(cache.getStats().entries()).isZero();
+        assertThat(cache.getStats().storedBytes()).isZero();
+    }
+
+    private static byte[] payload(int length, char value) {
+        var payload = new byte[length];
+        Arrays.fill(payload, (byte) value);
+        return payload;
+    }
+}
@@ -4,6 +4,7 @@ import com.amedvedev.mediaspace.auth.JwtService;
 import com.amedvedev.mediaspace.feed.StoryFeedRedisService;
 import com.amedvedev.mediaspace.media.dto.CreateMediaRequest;
 import com.amedvedev.mediaspace.story.dto.CreateStoryRequest;
+import com.amedvedev.mediaspace.story.dto.StoriesFeedChangesResponse;
 import com.amedvedev.mediaspace.story.dto.StoriesFeedEntry;
 import com.amedvedev.mediaspace.story.dto.StoryDto;
 import com.amedvedev.mediaspace.story.service.StoryRedisService;
@@ -24,6 +25,7 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static io.restassured.RestAssured.given;
@@ -133,6 +135,18 @@ public class StoryFeedIntegrationTest extends AbstractIntegrationTest {
                 .statusCode(HttpStatus.NO_CONTENT.value());
     }
     
+    private StoriesFeedChangesResponse getStoriesFeedChanges(String token, long since) {
+        return given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .queryParam("since", since)
+                .when()
+                .get(STORIES_FEED_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract()
+                .as(StoriesFeedChangesResponse.class);
+    }
+
     private void waitForAsyncStoryCache() {
         await()
                 .atMost(5, TimeUnit.SECONDS)
@@ -415,4 +429,63 @@ public class StoryFeedIntegrationTest extends AbstractIntegrationTest {
 
         assertThat(feed2).isEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    void getStoriesFeedChangesSincePreviousVersion() {
+        followUserWithRequest(token1, user2);
+        followUserWithRequest(token1, user3);
+
+        var snapshot = getStoriesFeedChanges(token1, 0);
+
+        assertThat(snapshot.isSnapshot()).isTrue();
+        assertThat(snapshot.getAdded()).isEmpty();
+
+        createStoryForUser(token2);
+        createStoryForUser(token3);
+
+        waitForAsyncStoryCache();
+
+        var changes = getStoriesFeedChanges(token1, snapshot.getVersion());
+
+        assertThat(changes.isSnapshot()).isFalse();
+        assertThat(changes.getVersion()).isGreaterThan(snapshot.getVersion());
+        assertThat(changes.getAdded()).extracting(StoriesFeedEntry::getUsername)
+                .containsExactlyInAnyOrder(user2.getUsername(), user3.getUsername());
+        assertThat(changes.getRemoved()).isEmpty();
+
+        deleteStoryForUser(token2, 1L);
+
+        var changesAfterDelete = getStoriesFeedChanges(token1, changes.getVersion());
+
+        assertThat(changesAfterDelete.isSnapshot()).isFalse();
+        assertThat(changesAfterDelete.getAdded()).isEmpty();
+        assertThat(changesAfterDelete.getRemoved()).extracting(StoriesFeedEntry::getUsername)
+                .containsExactly(user2.getUsername());
+
+        var noChanges = getStoriesFeedChanges(token1, changesAfterDelete.getVersion());
+
+        assertThat(noChanges.isSnapshot()).isFalse();
+        assertThat(noChanges.getVersion()).isEqualTo(changesAfterDelete.getVersion());
+        assertThat(noChanges.getAdded()).isEmpty();
+        assertThat(noChanges.getRemoved()).isEmpty();
+    }
+
+    @Test
+    void getStoriesFeedSnapshotWhenChangesAreNoLongerLogged() {
+        followUserWithRequest(token1, user2);
+        var snapshot = getStoriesFeedChanges(token1, 0);
+
+        var feedEntry = StoriesFeedEntry.builder().username(user2.getUsername()).build();
+        for (int i = 0; i < StoryFeedRedisService.CHANGE_LOG_SIZE; i++) {
+            storyFeedRedisService.cacheFeedEntryToFollowersFeeds(user2.getId(), feedEntry, List.of(user1.getId()));
+            storyFeedRedisService.deleteFeedEntryFromFollowersFeeds(user2.getId(), feedEntry, List.of(user1.getId()));
+        }
+
+        var changes = getStoriesFeedChanges(token1, snapshot.getVersion());
+
+        assertThat(changes.isSnapshot()).isTrue();
+        assertThat(changes.getVersion()).isGreaterThan(snapshot.getVersion());
+        assertThat(changes.getAdded()).isEmpty();
+        assertThat(changes.getRemoved()).isEmpty();
+    }
+}
@@ -1,5 +1,6 @@
 package com.amedvedev.mediaspace.testutil;
 
+import com.amedvedev.mediaspace.auth.TokenVersionService;
 import com.redis.testcontainers.RedisContainer;
 import jakarta.persistence.EntityManager;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,7 +23,9 @@ public abstract class AbstractIntegrationTest {
 
     public static final String AUTHORIZATION_HEADER = "Authorization";
     public static final String BEARER_PREFIX = "Bearer ";
-    public static final String CLEAR_DB = "TRUNCATE story, comment, post, media, _user RESTART IDENTITY CASCADE";
+    // Media ids come from a pooled sequence whose blocks are cached by Hibernate, so it must not be restarted
+    public static final String CLEAR_DB =
+            "TRUNCATE story, comment, post, _user RESTART IDENTITY CASCADE; TRUNCATE media CASCADE";
 
     @Autowired
     protected JdbcTemplate jdbcTemplate;
@@ -36,6 +39,8 @@ public abstract class AbstractIntegrationTest {
     @Autowired
     protected RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired
+    protected TokenVersionService tokenVersionService;
 
     protected static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(DockerImageName.parse("postgres:latest"))
                 .withUsername("postgres")
@@ -96,5 +101,8 @@ public abstract class AbstractIntegrationTest {
             connection.serverCommands().flushDb();
             return null;
         });
+
+        // Ids are reused after RESTART IDENTITY, so token states cached for previous users must not survive
+        tokenVersionService.clearLocalCache();
     }
 }
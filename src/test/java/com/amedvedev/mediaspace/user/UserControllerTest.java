@@ -1,11 +1,14 @@
 package com.amedvedev.mediaspace.user;
 
 import com.amedvedev.mediaspace.auth.JwtAuthenticationFilter;
+import com.amedvedev.mediaspace.etag.ETagService;
+import com.amedvedev.mediaspace.responsecache.ResponseBytesCache;
 import com.amedvedev.mediaspace.exception.handler.GlobalExceptionHandler;
 import com.amedvedev.mediaspace.user.exception.UserNotFoundException;
 import com.amedvedev.mediaspace.user.dto.ChangeUsernameRequest;
 import com.amedvedev.mediaspace.user.dto.UpdateUserResponse;
 import com.amedvedev.mediaspace.user.service.UserProfileService;
+import com.amedvedev.mediaspace.user.service.UserSearchService;
 import com.amedvedev.mediaspace.user.service.UserService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
@@ -34,6 +37,15 @@ class UserControllerTest {
     @MockBean
     private UserProfileService userProfileService;
 
+    @MockBean
+    private UserSearchService userSearchService;
+
+    @MockBean
+    private ETagService eTagService;
+
+    @MockBean
+    private ResponseBytesCache responseBytesCache;
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -46,7 +58,8 @@ class UserControllerTest {
 
     @BeforeEach
     void setUp() {
-        mockMvc = MockMvcBuilders.standaloneSetup(new UserController(userService, userProfileService))
+        mockMvc = MockMvcBuilders.standaloneSetup(new UserController(userService, userProfileService, userSearchService,
+                        eTagService, responseBytesCache))
                 .setControllerAdvice(new GlobalExceptionHandler())
                 .build();
     }
@@ -3,10 +3,16 @@ package com.amedvedev.mediaspace.user;
 import com.amedvedev.mediaspace.auth.JwtService;
 import com.amedvedev.mediaspace.auth.dto.LoginRequest;
 import com.amedvedev.mediaspace.testutil.AbstractIntegrationTest;
+import com.amedvedev.mediaspace.user.dto.BatchUsersRequest;
 import com.amedvedev.mediaspace.user.dto.RestoreUserRequest;
 import com.amedvedev.mediaspace.user.dto.ChangePasswordRequest;
 import com.amedvedev.mediaspace.user.dto.ChangeUsernameRequest;
+import com.amedvedev.mediaspace.user.service.UserSearchService;
+import com.amedvedev.mediaspace.user.service.UsernameIndexRedisService;
+import com.amedvedev.mediaspace.user.service.UsernameIndexRedisService.RebuildCompletion;
 import io.restassured.RestAssured;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import io.restassured.http.ContentType;
 import org.hibernate.Hibernate;
 import org.junit.jupiter.api.BeforeEach;
@@ -18,16 +24,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Stream;
 
 import static io.restassured.RestAssured.given;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 public class UserIntegrationTest extends AbstractIntegrationTest {
@@ -38,6 +52,9 @@ public class UserIntegrationTest extends AbstractIntegrationTest {
     public static final String USERNAME_ENDPOINT = "/username";
     public static final String PASSWORD_ENDPOINT = "/password";
     public static final String RESTORE_ENDPOINT = "/restore";
+    public static final String BATCH_ENDPOINT = "/batch";
+    public static final String SEARCH_ENDPOINT = "/search";
+    public static final String PROFILE_ENDPOINT = "/{username}";
     @LocalServerPort
     private Integer port;
 
@@ -53,6 +70,12 @@ public class UserIntegrationTest extends AbstractIntegrationTest {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired
+    private UserSearchService userSearchService;
+
+    @Autowired
+    private UsernameIndexRedisService usernameIndexRedisService;
+
     private User user;
 
     private String token;
@@ -109,6 +132,132 @@ public class UserIntegrationTest extends AbstractIntegrationTest {
                 .body("username", equalTo(user.getUsername()));
     }
 
+    @Test
+    void shouldAnswerConditionalProfileRequestWithNotModifiedUntilProfileChanges() {
+        var userToFollow = createUser("user-to-follow");
+
+        var eTag = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(PROFILE_ENDPOINT, userToFollow.getUsername())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract().header(HttpHeaders.ETAG);
+
+        assertThat(eTag).startsWith("W/");
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .when()
+                .get(PROFILE_ENDPOINT, userToFollow.getUsername())
+                .then()
+                .statusCode(HttpStatus.NOT_MODIFIED.value())
+                .header(HttpHeaders.ETAG, equalTo(eTag));
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .post(FOLLOW_ENDPOINT, userToFollow.getUsername())
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .when()
+                .get(PROFILE_ENDPOINT, userToFollow.getUsername())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .header(HttpHeaders.ETAG, not(equalTo(eTag)))
+                .body("followersCount", equalTo(1));
+    }
+
+    @Test
+    void shouldNotAnswerConditionalRequestForMissingProfileWithNotModified() {
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .header(HttpHeaders.IF_NONE_MATCH, "*")
+                .when()
+                .get(PROFILE_ENDPOINT, "missing-user")
+                .then()
+                .statusCode(HttpStatus.NOT_FOUND.value())
+                .header(HttpHeaders.ETAG, nullValue());
+
+        assertThat(redisTemplate.hasKey("username:missing-user:profile_version")).isFalse();
+    }
+
+    @Test
+    void shouldServeCachedProfileBytesWithAndWithoutGzip() {
+        var profileOwner = createUser("profile-owner");
+
+        var eTag = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(PROFILE_ENDPOINT, profileOwner.getUsername())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .body("username", equalTo(profileOwner.getUsername()))
+                .extract().header(HttpHeaders.ETAG);
+
+        assertThat(redisTemplate.hasKey(
+                "response:profile:" + profileOwner.getUsername() + ":" + user.getId() + ":" + eTag)).isTrue();
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .header(HttpHeaders.ACCEPT_ENCODING, "identity")
+                .when()
+                .get(PROFILE_ENDPOINT, profileOwner.getUsername())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .header(HttpHeaders.CONTENT_ENCODING, nullValue())
+                .header(HttpHeaders.ETAG, equalTo(eTag))
+                .body("username", equalTo(profileOwner.getUsername()));
+    }
+
+    @Test
+    void shouldNegotiateBinaryFormatsWithAcceptHeader() throws IOException {
+        var profileOwner = createUser("profile-owner");
+        userSearchService.rebuildIndex();
+
+        var cborProfile = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .accept(MediaType.APPLICATION_CBOR_VALUE)
+                .when()
+                .get(PROFILE_ENDPOINT, profileOwner.getUsername())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .contentType(MediaType.APPLICATION_CBOR_VALUE)
+                .extract().asByteArray();
+
+        assertThat(new CBORMapper().readTree(cborProfile).get("username").asText())
+                .isEqualTo(profileOwner.getUsername());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(PROFILE_ENDPOINT, profileOwner.getUsername())
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .contentType(ContentType.JSON)
+                .body("username", equalTo(profileOwner.getUsername()));
+
+        var smileSuggestions = given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .accept("application/x-jackson-smile")
+                .queryParam("prefix", "profile")
+                .when()
+                .get(SEARCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .contentType("application/x-jackson-smile")
+                .extract().asByteArray();
+
+        assertThat(new SmileMapper().readTree(smileSuggestions).get(0).get("username").asText())
+                .isEqualTo(profileOwner.getUsername());
+    }
+
     @Test
     @Transactional(propagation = Propagation.SUPPORTS)
     void shouldFollowUser() {
@@ -278,6 +427,66 @@ public class UserIntegrationTest extends AbstractIntegrationTest {
                 .statusCode(HttpStatus.OK.value());
     }
 
+    @Test
+    void shouldRevokeIssuedTokensAfterPasswordChange() {
+        var changePasswordRequest = ChangePasswordRequest.builder()
+                .oldPassword("password")
+                .password("new-password")
+                .build();
+
+        given()
+                .contentType(ContentType.JSON)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .body(changePasswordRequest)
+                .when()
+                .patch(PASSWORD_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(ME_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.UNAUTHORIZED.value())
+                .body("reason", equalTo("Full authentication is required to access this resource"));
+
+        var updatedUser = userRepository.findById(user.getId()).orElseThrow();
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + jwtService.generateToken(updatedUser))
+                .when()
+                .get(ME_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value());
+    }
+
+    @Test
+    void shouldNotCacheOlderTokenStateOverNewerOne() {
+        var staleUser = User.builder().id(user.getId()).username("user").tokenVersion(user.getTokenVersion()).build();
+        var changePasswordRequest = ChangePasswordRequest.builder()
+                .oldPassword("password")
+                .password("new-password")
+                .build();
+
+        given()
+                .contentType(ContentType.JSON)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .body(changePasswordRequest)
+                .when()
+                .patch(PASSWORD_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value());
+
+        tokenVersionService.cacheTokenState(staleUser);
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .get(ME_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.UNAUTHORIZED.value());
+    }
+
     @ParameterizedTest
     @MethodSource("getArgumentsForShouldNotChangePasswordNotMatchingPattern")
     void shouldNotChangePasswordNotMatchingPattern(ChangePasswordRequest changeUsernameRequest, String expectedErrorMessage) {
@@ -484,4 +693,178 @@ public class UserIntegrationTest extends AbstractIntegrationTest {
                 .statusCode(HttpStatus.NOT_FOUND.value())
                 .body("reason", equalTo("User not found"));
     }
+
+    @Test
+    void shouldGetUsersInBatchPreservingRequestOrder() {
+        var firstUser = createUser("first-user");
+        var secondUser = createUser("second-user");
+        var batchRequest = BatchUsersRequest.builder()
+                .ids(List.of(secondUser.getId(), -1L, user.getId()))
+                .usernames(List.of("FIRST-USER", "second-user", "non-existing-username"))
+                .build();
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .contentType(ContentType.JSON)
+                .body(batchRequest)
+                .when()
+                .post(BATCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("username", contains("second-user", "user", "first-user"));
+
+        assertThat(redisTemplate.hasKey("user:" + firstUser.getId())).isTrue();
+        assertThat(redisTemplate.hasKey("username_to_id:" + firstUser.getUsername())).isTrue();
+    }
+
+    @Test
+    void shouldCacheUsernameMappingUnderLowerCaseName() {
+        createUser("Mixed-Case-User");
+        var batchRequest = BatchUsersRequest.builder().usernames(List.of("mixed-case-user")).build();
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .contentType(ContentType.JSON)
+                .body(batchRequest)
+                .when()
+                .post(BATCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("username", contains("Mixed-Case-User"));
+
+        assertThat(redisTemplate.hasKey("username_to_id:mixed-case-user")).isTrue();
+        assertThat(redisTemplate.hasKey("username_to_id:Mixed-Case-User")).isFalse();
+    }
+
+    @Test
+    void shouldNotGetUsersInBatchWithNullElements() {
+        var batchRequest = BatchUsersRequest.builder()
+                .ids(Arrays.asList(user.getId(), null))
+                .usernames(Arrays.asList("user", null))
+                .build();
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .contentType(ContentType.JSON)
+                .body(batchRequest)
+                .when()
+                .post(BATCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value());
+    }
+
+    @Test
+    void shouldNotGetUsersInBatchWhenTooManyRequested() {
+        var ids = Stream.iterate(1L, id -> id + 1).limit(101).toList();
+        var batchRequest = BatchUsersRequest.builder().ids(ids).build();
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .contentType(ContentType.JSON)
+                .body(batchRequest)
+                .when()
+                .post(BATCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.BAD_REQUEST.value());
+    }
+
+    @Test
+    void shouldSuggestUsersByPrefixMostFollowedFirst() {
+        createUser("alice");
+        createUser("Alicia");
+        createUser("albert");
+        createUser("bob");
+        userSearchService.rebuildIndex();
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .when()
+                .post(FOLLOW_ENDPOINT, "Alicia")
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .queryParam("prefix", "AL")
+                .when()
+                .get(SEARCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("username", contains("Alicia", "albert", "alice"));
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .queryParam("prefix", "ali")
+                .queryParam("limit", 1)
+                .when()
+                .get(SEARCH_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .body("username", contains("Alicia"));
+    }
+
+    @Test
+    void shouldKeepUsernameSuggestionsInSyncWithUserChanges() {
+        var otherUser = createUser("charlie");
+        var otherToken = jwtService.generateToken(otherUser);
+        userSearchService.rebuildIndex();
+
+        given()
+                .contentType(ContentType.JSON)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .body(ChangeUsernameRequest.builder().username("new-username").build())
+                .when()
+                .patch(USERNAME_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value());
+
+        given()
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + otherToken)
+                .when()
+                .delete()
+                .then()
+                .statusCode(HttpStatus.NO_CONTENT.value());
+
+        assertThat(userSearchService.suggestUsers("user", 10)).isEmpty();
+        assertThat(userSearchService.suggestUsers("new", 10)).extracting("username").containsExactly("new-username");
+        assertThat(userSearchService.suggestUsers("charlie", 10)).isEmpty();
+
+        given()
+                .contentType(ContentType.JSON)
+                .body(RestoreUserRequest.builder().username("charlie").password("password").build())
+                .when()
+                .put(RESTORE_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value());
+
+        assertThat(userSearchService.suggestUsers("CHAR", 10)).extracting("username").containsExactly("charlie");
+    }
+
+    @Test
+    void shouldMergeUsernameChangedDuringRebuildIntoRebuiltIndex() {
+        var runId = usernameIndexRedisService.startRebuild().orElseThrow();
+        usernameIndexRedisService.addToRebuild(runId, userRepository.findUsernameIndexEntries(0L, 100));
+        assertThat(usernameIndexRedisService.startRebuild()).isEmpty();
+
+        given()
+                .contentType(ContentType.JSON)
+                .header(AUTHORIZATION_HEADER, BEARER_PREFIX + token)
+                .body(ChangeUsernameRequest.builder().username("renamed-user").build())
+                .when()
+                .patch(USERNAME_ENDPOINT)
+                .then()
+                .statusCode(HttpStatus.OK.value());
+
+        assertThat(usernameIndexRedisService.completeRebuild(runId)).isEqualTo(RebuildCompletion.CHANGED);
+
+        var changes = usernameIndexRedisService.popRebuildChanges(100);
+        var ids = changes.stream().map(UsernameIndexRedisService::getUserId).distinct().toList();
+        usernameIndexRedisService.mergeIntoRebuild(runId, changes, userRepository.findUsernameIndexEntriesByIds(ids));
+        assertThat(usernameIndexRedisService.completeRebuild(runId)).isEqualTo(RebuildCompletion.COMPLETED);
+
+        assertThat(userSearchService.suggestUsers("user", 10)).isEmpty();
+        assertThat(userSearchService.suggestUsers("renamed", 10)).extracting("username")
+                .containsExactly("renamed-user");
+        assertThat(usernameIndexRedisService.startRebuild()).isPresent();
+    }
 }
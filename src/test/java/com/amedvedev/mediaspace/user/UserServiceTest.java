@@ -1,10 +1,16 @@
 package com.amedvedev.mediaspace.user;
 
+import com.amedvedev.mediaspace.auth.PasswordHashingService;
+import com.amedvedev.mediaspace.auth.TokenVersionService;
+import com.amedvedev.mediaspace.etag.EntityVersionRedisService;
 import com.amedvedev.mediaspace.user.dto.ChangePasswordRequest;
 import com.amedvedev.mediaspace.user.dto.ChangeUsernameRequest;
+import com.amedvedev.mediaspace.user.event.UsernameChangedEvent;
 import com.amedvedev.mediaspace.user.exception.UserUpdateException;
+import com.amedvedev.mediaspace.user.service.CurrentUserContext;
 import com.amedvedev.mediaspace.user.service.UserRedisService;
 import com.amedvedev.mediaspace.user.service.UserService;
+import com.amedvedev.mediaspace.user.service.UsernameIndexRedisService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,10 +19,8 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoSession;
 import org.mockito.quality.Strictness;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.context.SecurityContext;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.Optional;
 
@@ -32,17 +36,29 @@ public class UserServiceTest {
     private UserRepository userRepository;
 
     @Mock
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
 
     @Mock
-    private SecurityContextHolder securityContextHolder;
+    private UserRedisService userRedisService;
 
     @Mock
-    private UserRedisService userRedisService;
+    private UsernameIndexRedisService usernameIndexRedisService;
+
+    @Mock
+    private EntityVersionRedisService entityVersionRedisService;
 
     @Mock
     private UserMapper userMapper;
 
+    @Mock
+    private TokenVersionService tokenVersionService;
+
+    @Mock
+    private CurrentUserContext currentUserContext;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     private MockitoSession mockitoSession;
 
     @BeforeEach
@@ -58,12 +74,8 @@ public class UserServiceTest {
         mockitoSession.finishMocking();
     }
 
-    private void mockAuthentication(String oldUser) {
-        var authentication = mock(UsernamePasswordAuthenticationToken.class);
-        var securityContext = mock(SecurityContext.class);
-        SecurityContextHolder.setContext(securityContext);
-        when(securityContext.getAuthentication()).thenReturn(authentication);
-        when(authentication.getName()).thenReturn(oldUser);
+    private void mockCurrentUser(User user) {
+        when(currentUserContext.getUser()).thenReturn(user);
     }
 
     @Test
@@ -73,8 +85,7 @@ public class UserServiceTest {
         var changeUsernameRequest = new ChangeUsernameRequest(newUsername);
         var existingUser = User.builder().username(oldUsername).build();
 
-        mockAuthentication(oldUsername);
-        when(userRepository.findByUsernameIgnoreCase(anyString())).thenReturn(Optional.of(existingUser));
+        mockCurrentUser(existingUser);
         when(userRepository.findByUsernameIgnoreCaseAndIncludeSoftDeleted(newUsername)).thenReturn(Optional.empty());
 
 
@@ -82,6 +93,10 @@ public class UserServiceTest {
 
 
         verify(userRepository).save(argThat(user -> user.getUsername().equals(newUsername)));
+        verify(tokenVersionService).cacheTokenState(argThat(user -> user.getTokenVersion() == 1));
+        verify(eventPublisher).publishEvent(argThat((ApplicationEvent event) ->
+                event instanceof UsernameChangedEvent changed && changed.getNewUsername().equals(newUsername)));
+        verify(entityVersionRedisService).bumpProfiles(oldUsername, newUsername);
     }
 
     @Test
@@ -91,18 +106,18 @@ public class UserServiceTest {
         var changePasswordRequest = new ChangePasswordRequest("oldPassword", newPassword);
         var existingUser = User.builder().username(username).build();
 
-        mockAuthentication(username);
+        mockCurrentUser(existingUser);
 
-        when(passwordEncoder.matches(any(), any())).thenReturn(true);
-        when(passwordEncoder.encode(newPassword)).thenReturn("encodedPassword");
-        when(userRepository.findByUsernameIgnoreCase(username)).thenReturn(Optional.of(existingUser));
+        when(passwordHashingService.matches(any(), any())).thenReturn(true);
+        when(passwordHashingService.hash(newPassword)).thenReturn("encodedPassword");
 
 
         userService.changePassword(changePasswordRequest);
 
 
         verify(userRepository).save(argThat(user -> user.getPassword().equals("encodedPassword")));
-        verify(passwordEncoder).encode(newPassword);
+        verify(passwordHashingService).hash(newPassword);
+        verify(tokenVersionService).cacheTokenState(argThat(user -> user.getTokenVersion() == 1));
     }
 
     @Test
@@ -111,8 +126,7 @@ public class UserServiceTest {
         var changeUsernameRequest = new ChangeUsernameRequest(username);
         var existingUser = User.builder().username(username).build();
 
-        mockAuthentication(username);
-        when(userRepository.findByUsernameIgnoreCase(anyString())).thenReturn(Optional.of(existingUser));
+        mockCurrentUser(existingUser);
 
         assertThatThrownBy(() -> userService.changeUsername(changeUsernameRequest))
                 .isInstanceOf(UserUpdateException.class)
@@ -129,9 +143,8 @@ public class UserServiceTest {
         var existingUser = User.builder().username(oldUsername).build();
         var userWithTakenUsername = User.builder().username(newUsername).build();
 
-        mockAuthentication("oldUsername");
+        mockCurrentUser(existingUser);
 
-        when(userRepository.findByUsernameIgnoreCase("oldUsername")).thenReturn(Optional.of(existingUser));
         when(userRepository.findByUsernameIgnoreCaseAndIncludeSoftDeleted(newUsername)).thenReturn(Optional.of(userWithTakenUsername));
 
 